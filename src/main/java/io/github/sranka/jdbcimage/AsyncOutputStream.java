@@ -0,0 +1,154 @@
+package io.github.sranka.jdbcimage;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Output stream that hands written data over to a separate writer thread, which then writes
+ * to the wrapped stream. Data are passed in blocks through a bounded ring of reusable buffers,
+ * so that the producer (JDBC fetch and encoding) runs in parallel with the consumer
+ * (compression and file I/O) and the memory used is constant.
+ */
+public class AsyncOutputStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 64;
+    public static final int DEFAULT_BLOCK_COUNT = 4;
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final OutputStream out;
+    // buffers ready to be filled
+    private final BlockingQueue<Block> free;
+    // buffers ready to be written, an empty block marks the end of data
+    private final BlockingQueue<Block> filled;
+    private final Thread writer;
+    private volatile Throwable failure;
+    private Block current;
+    private boolean closed;
+
+    public AsyncOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_COUNT);
+    }
+
+    public AsyncOutputStream(OutputStream out, int blockSize, int blockCount) {
+        this.out = out;
+        this.free = new ArrayBlockingQueue<>(blockCount);
+        this.filled = new ArrayBlockingQueue<>(blockCount + 1);
+        for (int i = 1; i < blockCount; i++) {
+            free.add(new Block(blockSize));
+        }
+        this.current = new Block(blockSize);
+        this.writer = new Thread(this::writeBlocks, "jdbcimage-writer-" + threadCounter.incrementAndGet());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Writes filled blocks in the writer thread until the end of data.
+     */
+    private void writeBlocks() {
+        try {
+            for (; ; ) {
+                Block block = filled.take();
+                if (block.length == 0) {
+                    break;
+                }
+                try {
+                    if (failure == null) {
+                        out.write(block.data, 0, block.length);
+                    }
+                } catch (Throwable e) {
+                    // keep on recycling the blocks, so that the producer is not blocked
+                    failure = e;
+                }
+                block.length = 0;
+                free.put(block);
+            }
+        } catch (InterruptedException e) {
+            failure = e;
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable e = failure;
+        if (e != null) {
+            // always a new instance, the failure can be reported by both write and close
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private void handOver() throws IOException {
+        checkFailure();
+        try {
+            filled.put(current);
+            current = free.take();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (current.length == current.data.length) {
+            handOver();
+        }
+        current.data[current.length++] = (byte) b;
+    }
+
+    @SuppressWarnings("NullableProblems")
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (current.length == current.data.length) {
+                handOver();
+            }
+            int count = Math.min(len, current.data.length - current.length);
+            System.arraycopy(b, off, current.data, current.length, count);
+            current.length += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Hands over the buffered data to the writer thread, it does not wait for the data to be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (current.length > 0) {
+            handOver();
+        }
+    }
+
+    /**
+     * Waits for all data to be written and closes the wrapped stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (current.length > 0 && failure == null) {
+                filled.put(current);
+            }
+            filled.put(new Block(0)); // end of data
+            writer.join();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } finally {
+            out.close();
+        }
+        checkFailure();
+    }
+
+    private static class Block {
+        final byte[] data;
+        int length;
+
+        Block(int size) {
+            data = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.sranka.jdbcimage;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Producer that fills row batches of the wrapped producer in a separate decoder thread.
+ * Batches are passed through a bounded ring of reusable batches, so that decoding
+ * of the next rows runs in parallel with the consumer (binding and executing statements)
+ * and the memory used is bounded.
+ * <p>
+ * The decoder does not get the connection of the consumer, LOB values are thus
+ * produced as streams and never created in the database by the decoder thread.
+ */
+public class AsyncResultProducer implements ResultProducer {
+    public static final int DEFAULT_BATCH_COUNT = 4;
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final ResultProducer producer;
+    private final int batchCount;
+    // batches ready to be filled
+    private BlockingQueue<RowBatch> free;
+    // filled batches, the end batch marks the end of data
+    private BlockingQueue<RowBatch> filled;
+    private RowBatch end;
+    private Thread decoder;
+    private volatile Throwable failure;
+    private boolean finished;
+    // batch that is consumed row by row
+    private RowBatch current;
+    private int position;
+
+    public AsyncResultProducer(ResultProducer producer) {
+        this(producer, DEFAULT_BATCH_COUNT);
+    }
+
+    public AsyncResultProducer(ResultProducer producer, int batchCount) {
+        this.producer = producer;
+        this.batchCount = batchCount;
+    }
+
+    @Override
+    public RowData start() {
+        RowData row = producer.start();
+        // the decoder has its own info without connection
+        ResultSetInfo decoderInfo = new ResultSetInfo();
+        decoderInfo.columns = row.info.columns;
+        decoderInfo.types = row.info.types;
+        free = new ArrayBlockingQueue<>(batchCount);
+        filled = new ArrayBlockingQueue<>(batchCount + 1);
+        for (int i = 0; i < batchCount; i++) {
+            free.add(new RowBatch(decoderInfo, RowBatch.DEFAULT_CAPACITY));
+        }
+        end = new RowBatch(decoderInfo, 0);
+        decoder = new Thread(this::decodeBatches, "jdbcimage-decoder-" + threadCounter.incrementAndGet());
+        decoder.setDaemon(true);
+        decoder.start();
+        return row;
+    }
+
+    /**
+     * Fills batches in the decoder thread until the end of data.
+     */
+    private void decodeBatches() {
+        try {
+            for (; ; ) {
+                RowBatch batch = free.take();
+                if (!producer.fillBatch(batch)) {
+                    break;
+                }
+                filled.put(batch);
+            }
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            // there is always a room for the end batch
+            filled.add(end);
+        }
+    }
+
+    /**
+     * Takes the next filled batch.
+     *
+     * @return batch or null at the end of data
+     */
+    private RowBatch takeBatch() {
+        if (finished) return null;
+        RowBatch batch;
+        try {
+            batch = filled.take();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        if (batch == end) {
+            finished = true;
+            Throwable e = failure;
+            if (e != null) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            return null;
+        }
+        return batch;
+    }
+
+    @Override
+    public boolean fillData(RowData row) {
+        if (current != null && position == current.size) {
+            free.add(current);
+            current = null;
+        }
+        if (current == null) {
+            current = takeBatch();
+            if (current == null) return false;
+            position = 0;
+        }
+        current.getRow(position++, row);
+        return true;
+    }
+
+    @Override
+    public boolean fillBatch(RowBatch batch) {
+        RowBatch next = takeBatch();
+        if (next == null) {
+            batch.clear();
+            return false;
+        }
+        // the consumed rows go back to the decoder in exchange
+        batch.swap(next);
+        free.add(next);
+        return true;
+    }
+
+    /**
+     * Stops the decoder thread and closes the wrapped producer.
+     */
+    @Override
+    public void close() {
+        try {
+            if (decoder != null) {
+                decoder.interrupt();
+                decoder.join();
+            }
+        } catch (InterruptedException e) {
+            LoggedUtils.ignore("Interrupted while waiting for the decoder!", e);
+        } finally {
+            producer.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.sranka.jdbcimage;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Bounded pool of LOB chunk buffers shared by serializers and chunked streams, so that copying
+ * BLOB/CLOB values does not allocate a new buffer for every value. Only buffers of the chunk size
+ * are pooled, other buffers are left to the garbage collector.
+ */
+public final class ChunkPool {
+    // size of a BLOB chunk in bytes
+    public static final int BYTE_CHUNK_SIZE = 1024 * 64;
+    // size of a CLOB chunk in characters
+    public static final int CHAR_CHUNK_SIZE = 1024 * 32;
+    // maximum count of pooled buffers of each kind
+    private static final int CAPACITY = Integer.parseInt(System.getProperty("chunk.pool", "64"));
+
+    private static final ArrayBlockingQueue<byte[]> BYTES = new ArrayBlockingQueue<>(Math.max(1, CAPACITY));
+    private static final ArrayBlockingQueue<char[]> CHARS = new ArrayBlockingQueue<>(Math.max(1, CAPACITY));
+
+    private ChunkPool() {
+    }
+
+    /**
+     * Gets a byte buffer of {@link #BYTE_CHUNK_SIZE}, either a released one or a new one.
+     *
+     * @return buffer
+     */
+    public static byte[] acquireBytes() {
+        byte[] retVal = BYTES.poll();
+        return retVal != null ? retVal : new byte[BYTE_CHUNK_SIZE];
+    }
+
+    /**
+     * Returns a byte buffer to the pool, the buffer must not be used by the caller anymore.
+     *
+     * @param buffer buffer, ignored unless it has the chunk size
+     */
+    public static void release(byte[] buffer) {
+        if (buffer != null && buffer.length == BYTE_CHUNK_SIZE) {
+            BYTES.offer(buffer);
+        }
+    }
+
+    /**
+     * Gets a char buffer of {@link #CHAR_CHUNK_SIZE}, either a released one or a new one.
+     *
+     * @return buffer
+     */
+    public static char[] acquireChars() {
+        char[] retVal = CHARS.poll();
+        return retVal != null ? retVal : new char[CHAR_CHUNK_SIZE];
+    }
+
+    /**
+     * Returns a char buffer to the pool, the buffer must not be used by the caller anymore.
+     *
+     * @param buffer buffer, ignored unless it has the chunk size
+     */
+    public static void release(char[] buffer) {
+        if (buffer != null && buffer.length == CHAR_CHUNK_SIZE) {
+            CHARS.offer(buffer);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.util.List;
 
 /**
  * Implementation of an input stream that operates over chunks by byte[].
+ * Pooled chunks are released to {@link ChunkPool} once the stream is fully read or closed.
  */
 @SuppressWarnings("DuplicatedCode")
 public class ChunkedInputStream extends InputStream {
@@ -16,8 +17,22 @@ public class ChunkedInputStream extends InputStream {
     private boolean finished;
     private byte[] currentChunk;
     private int pos;
+    // chunks to release when finished, null if not pooled
+    private List<byte[]> pooledChunks;
 
     public ChunkedInputStream(List<byte[]> chunks, long totalLength) {
+        this(chunks, totalLength, false);
+    }
+
+    /**
+     * Creates a stream over chunks.
+     *
+     * @param chunks      chunks
+     * @param totalLength total length or a non-positive value to compute it
+     * @param pooled      true to release the chunks to {@link ChunkPool} once the stream is read or closed
+     */
+    public ChunkedInputStream(List<byte[]> chunks, long totalLength, boolean pooled) {
+        if (pooled) pooledChunks = chunks;
         if (chunks == null || chunks.isEmpty()) {
             finished = true;
         } else {
@@ -52,7 +67,7 @@ public class ChunkedInputStream extends InputStream {
                 currentChunk = chunks.next();
                 if (currentChunk == null) currentChunk = EMPTY_CHUNK;
             } else {
-                finished = true;
+                finish();
                 return false;
             }
         }
@@ -60,6 +75,14 @@ public class ChunkedInputStream extends InputStream {
         return true;
     }
 
+    private void finish() {
+        finished = true;
+        if (pooledChunks != null) {
+            pooledChunks.forEach(ChunkPool::release);
+            pooledChunks = null;
+        }
+    }
+
     @Override
     public int read() throws IOException {
         if (finished) return -1;
@@ -88,4 +111,9 @@ public class ChunkedInputStream extends InputStream {
         }
         return len - remaining;
     }
+
+    @Override
+    public void close() {
+        if (pooledChunks != null) finish();
+    }
 }
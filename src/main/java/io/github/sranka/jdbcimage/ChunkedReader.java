@@ -8,6 +8,7 @@ import java.util.List;
 
 /**
  * Implementation of a reader that operates over chunks of char[].
+ * Pooled chunks are released to {@link ChunkPool} once the reader is fully read or closed.
  */
 public class ChunkedReader extends Reader {
     private static final char[] EMPTY_CHUNK = new char[0];
@@ -16,12 +17,26 @@ public class ChunkedReader extends Reader {
     private boolean finished;
     private char[] currentChunk;
     private int pos;
+    // chunks to release when finished, null if not pooled
+    private List<char[]> pooledChunks;
 
     public ChunkedReader(char[] chunk) {
         this(Collections.singletonList(chunk), chunk.length);
     }
 
     public ChunkedReader(List<char[]> chunks, long totalLength) {
+        this(chunks, totalLength, false);
+    }
+
+    /**
+     * Creates a reader over chunks.
+     *
+     * @param chunks      chunks
+     * @param totalLength total length or a non-positive value to compute it
+     * @param pooled      true to release the chunks to {@link ChunkPool} once the reader is read or closed
+     */
+    public ChunkedReader(List<char[]> chunks, long totalLength, boolean pooled) {
+        if (pooled) pooledChunks = chunks;
         if (chunks == null || chunks.isEmpty()) {
             finished = true;
         } else {
@@ -57,7 +72,7 @@ public class ChunkedReader extends Reader {
                 currentChunk = chunks.next();
                 if (currentChunk == null) currentChunk = EMPTY_CHUNK;
             } else {
-                finished = true;
+                finish();
                 return false;
             }
         }
@@ -65,6 +80,14 @@ public class ChunkedReader extends Reader {
         return true;
     }
 
+    private void finish() {
+        finished = true;
+        if (pooledChunks != null) {
+            pooledChunks.forEach(ChunkPool::release);
+            pooledChunks = null;
+        }
+    }
+
     @Override
     public int read() throws IOException {
         if (finished) return -1;
@@ -107,7 +130,7 @@ public class ChunkedReader extends Reader {
                     break;
                 }
             }
-            finished = true;
+            finish();
             return buffer.toString();
         }
     }
@@ -116,5 +139,6 @@ public class ChunkedReader extends Reader {
     public void close() throws IOException {
         // clean up
         chunks = null;
+        if (pooledChunks != null) finish();
     }
 }
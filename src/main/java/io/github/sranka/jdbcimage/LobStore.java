@@ -0,0 +1,321 @@
+package io.github.sranka.jdbcimage;
+
+import io.github.sranka.jdbcimage.codec.Codec;
+import io.github.sranka.jdbcimage.codec.Codecs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Store of large LOB values that are written out of line of a table file, the table file then contains
+ * references to entries of the store. An entry is a codec stream (see {@link Codecs}) of the LOB data,
+ * CLOB data are stored in UTF-16BE. Entries are keyed by a SHA-256 hash of their data, so that a LOB value
+ * that repeats in a table file is stored once. Entries are read at random positions, so that a LOB value
+ * is decompressed only when it is imported.
+ */
+public class LobStore implements Closeable {
+    // suffix of a store file, a store of table file TABLE is TABLE.lobs
+    public static final String SUFFIX = ".lobs";
+    // LOBs with more bytes (or characters) are written to a LOB store during export, negative to keep LOBs in table files
+    public static long STORE_BYTES = Long.parseLong(System.getProperty("lob.store", "-1"));
+
+    private final File file;
+    private final FileChannel channel;
+    private final boolean deleteOnClose;
+    // set when writing
+    private final Codec codec;
+    private final Map<ByteBuffer, Entry> entries = new HashMap<>();
+    private MessageDigest digest;
+
+    private LobStore(File file, FileChannel channel, Codec codec, boolean deleteOnClose) {
+        this.file = file;
+        this.channel = channel;
+        this.codec = codec;
+        this.deleteOnClose = deleteOnClose;
+    }
+
+    /**
+     * Creates a new store to write LOBs to.
+     *
+     * @param file  store file
+     * @param codec codec to compress entries
+     * @return store
+     */
+    @SuppressWarnings("resource")
+    public static LobStore create(File file, Codec codec) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.truncate(0);
+        return new LobStore(file, channel, codec, false);
+    }
+
+    /**
+     * Opens a store to read LOBs from.
+     *
+     * @param file          store file
+     * @param deleteOnClose true to delete the file when the store is closed
+     * @return store
+     */
+    @SuppressWarnings("resource")
+    public static LobStore open(File file, boolean deleteOnClose) throws IOException {
+        return new LobStore(file, new RandomAccessFile(file, "r").getChannel(), null, deleteOnClose);
+    }
+
+    /**
+     * Copies a store to a temporary file in the supplied directory and opens it, the file is deleted when
+     * the store is closed. It is used to read a store out of a zip file.
+     *
+     * @param in        store data
+     * @param directory directory of the temporary file
+     * @return store
+     */
+    public static LobStore extract(InputStream in, File directory) throws IOException {
+        File file = File.createTempFile("lobs", ".tmp", directory);
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                byte[] buffer = ChunkPool.acquireBytes();
+                try {
+                    int count;
+                    while ((count = in.read(buffer)) >= 0) {
+                        out.write(buffer, 0, count);
+                    }
+                } finally {
+                    ChunkPool.release(buffer);
+                }
+            }
+            return open(file, true);
+        } catch (IOException | RuntimeException e) {
+            SpilledInputStream.deleteFile(file);
+            throw e;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Checks whether an entry has been written to the store.
+     *
+     * @return true if the store has no entries
+     */
+    public boolean isEmpty() throws IOException {
+        return channel.size() == 0;
+    }
+
+    /**
+     * Starts writing of a new entry, the caller writes the entry data and then calls
+     * {@link EntryOutputStream#finish()}. Only one entry can be written at a time.
+     *
+     * @return stream to write entry data to
+     */
+    public EntryOutputStream newEntry() throws IOException {
+        if (codec == null) {
+            throw new IllegalStateException("LOB store " + file + " is read-only");
+        }
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return new EntryOutputStream(channel.size());
+    }
+
+    /**
+     * Opens a stream of entry data, the entry is read and decompressed once the stream is read.
+     *
+     * @param offset       offset of the entry in the store
+     * @param storedLength length of the compressed entry
+     * @return stream of the entry data
+     */
+    public InputStream openEntry(long offset, long storedLength) {
+        return new EntryInputStream(offset, storedLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            if (deleteOnClose) {
+                SpilledInputStream.deleteFile(file);
+            }
+        }
+    }
+
+    /**
+     * Entry of the store.
+     */
+    public static class Entry {
+        public final long offset;
+        public final long storedLength;
+        // length of uncompressed data in bytes
+        public final long length;
+
+        Entry(long offset, long storedLength, long length) {
+            this.offset = offset;
+            this.storedLength = storedLength;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Writes data of an entry to the end of the store.
+     */
+    public class EntryOutputStream extends OutputStream {
+        private final long offset;
+        private final OutputStream out;
+        private long length;
+        private Entry entry;
+
+        EntryOutputStream(long offset) throws IOException {
+            this.offset = offset;
+            channel.position(offset);
+            digest.reset();
+            // the compressor must not close the channel
+            OutputStream stored = new BufferedOutputStream(Channels.newOutputStream(channel), ChunkPool.BYTE_CHUNK_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            Codecs.writeHeader(stored, codec);
+            this.out = codec.compress(stored, null, 0);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @SuppressWarnings("NullableProblems")
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            digest.update(b, off, len);
+            out.write(b, off, len);
+            length += len;
+        }
+
+        /**
+         * Finishes the entry. When the store already contains the same data, the entry
+         * is removed and the existing entry is returned.
+         *
+         * @return stored entry
+         */
+        public Entry finish() throws IOException {
+            if (entry != null) return entry;
+            out.close();
+            ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+            Entry existing = entries.get(hash);
+            if (existing != null && existing.length == length) {
+                channel.truncate(offset);
+                entry = existing;
+            } else {
+                entry = new Entry(offset, channel.position() - offset, length);
+                entries.put(hash, entry);
+            }
+            return entry;
+        }
+
+        /**
+         * Removes the entry unless it is finished.
+         */
+        @Override
+        public void close() throws IOException {
+            if (entry == null) {
+                LoggedUtils.close(out);
+                channel.truncate(offset);
+            }
+        }
+    }
+
+    /**
+     * Reads data of an entry, the entry is opened once it is read.
+     */
+    private class EntryInputStream extends InputStream {
+        private final long offset;
+        private final long storedLength;
+        private InputStream in;
+        private boolean closed;
+
+        EntryInputStream(long offset, long storedLength) {
+            this.offset = offset;
+            this.storedLength = storedLength;
+        }
+
+        private InputStream getInput() throws IOException {
+            if (in == null && !closed) {
+                in = Codecs.decompress(new BufferedInputStream(new RangeInputStream(offset, storedLength), ChunkPool.BYTE_CHUNK_SIZE));
+            }
+            return in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            InputStream input = getInput();
+            return input == null ? -1 : input.read();
+        }
+
+        @SuppressWarnings("NullableProblems")
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            InputStream input = getInput();
+            return input == null ? -1 : input.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            if (in != null) {
+                in.close();
+                in = null;
+            }
+        }
+    }
+
+    /**
+     * Reads a range of the store file, positional reads of the channel can be used by multiple threads.
+     */
+    private class RangeInputStream extends InputStream {
+        private long position;
+        private final long end;
+
+        RangeInputStream(long offset, long length) {
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @SuppressWarnings("NullableProblems")
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) return -1;
+            int count = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (count < 0) {
+                throw new IOException("Unexpected end of LOB store " + file);
+            }
+            position += count;
+            return count;
+        }
+    }
+}
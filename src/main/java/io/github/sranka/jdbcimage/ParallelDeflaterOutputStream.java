@@ -0,0 +1,182 @@
+package io.github.sranka.jdbcimage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream that compresses data in independent blocks on a worker pool (the way pigz does)
+ * and writes the compressed blocks in order. The result is a standard zlib stream, it is
+ * thus read by {@link java.util.zip.InflaterInputStream} the same way as the output
+ * of {@link java.util.zip.DeflaterOutputStream}.
+ * <p>
+ * Every block is deflated with the last 32KB of the previous block as a preset dictionary,
+ * so that the compression ratio stays close to the single-threaded one. All blocks but the last
+ * one end with a sync flush, which aligns them on a byte boundary so that they can be concatenated.
+ */
+public class ParallelDeflaterOutputStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 128;
+    private static final int DICTIONARY_SIZE = 1024 * 32;
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int level;
+    private final int blockSize;
+    private final int maxPending;
+    // compressed blocks in the order in which they are written
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final Adler32 checksum = new Adler32();
+    private byte[] previous; // previous block, the source of a dictionary
+    private byte[] buffer;
+    private int length;
+    private boolean closed;
+
+    /**
+     * Creates a new stream.
+     *
+     * @param out        stream to write compressed data to
+     * @param executor   executor that compresses the blocks
+     * @param threads    number of blocks that are compressed at the same time
+     * @param level      compression level
+     * @param blockSize  size of uncompressed blocks, at least 32KB
+     * @throws IOException when the zlib header cannot be written
+     */
+    public ParallelDeflaterOutputStream(OutputStream out, ExecutorService executor, int threads, int level, int blockSize) throws IOException {
+        if (blockSize < DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("Block size must be at least " + DICTIONARY_SIZE);
+        }
+        this.out = out;
+        this.executor = executor;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.maxPending = Math.max(1, threads) * 2;
+        this.buffer = new byte[blockSize];
+        // zlib header: deflate with 32K window, no preset dictionary, check bits
+        out.write(0x78);
+        out.write(0x9C);
+    }
+
+    public ParallelDeflaterOutputStream(OutputStream out, ExecutorService executor, int threads) throws IOException {
+        this(out, executor, threads, Deflater.DEFAULT_COMPRESSION, DEFAULT_BLOCK_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == blockSize) {
+            submit(false);
+        }
+        buffer[length++] = (byte) b;
+    }
+
+    @SuppressWarnings("NullableProblems")
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (length == blockSize) {
+                submit(false);
+            }
+            int count = Math.min(len, blockSize - length);
+            System.arraycopy(b, off, buffer, length, count);
+            length += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Submits the current block for compression and writes the blocks that exceed the limit of pending blocks.
+     */
+    private void submit(boolean last) throws IOException {
+        final byte[] data = buffer;
+        final int dataLength = length;
+        final byte[] dictionary = previous;
+        checksum.update(data, 0, dataLength);
+        pending.add(executor.submit(() -> deflate(dictionary, data, dataLength, last)));
+        previous = data;
+        buffer = last ? null : new byte[blockSize];
+        length = 0;
+        while (pending.size() > maxPending) {
+            writeBlock();
+        }
+    }
+
+    private byte[] deflate(byte[] dictionary, byte[] data, int dataLength, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+            }
+            deflater.setInput(data, 0, dataLength);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(dataLength / 2 + 64);
+            byte[] buf = new byte[1024 * 16];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buf);
+                    compressed.write(buf, 0, count);
+                }
+            } else {
+                int count;
+                do {
+                    count = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buf, 0, count);
+                } while (count == buf.length);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        Future<byte[]> block = pending.poll();
+        try {
+            //noinspection ConstantConditions
+            out.write(block.get());
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes the blocks that are already compressed, it does not end the current block.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    /**
+     * Compresses the rest of data, writes the zlib trailer and closes the wrapped stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            submit(true);
+            while (!pending.isEmpty()) {
+                writeBlock();
+            }
+            long adler = checksum.getValue();
+            out.write((int) (adler >>> 24));
+            out.write((int) (adler >>> 16));
+            out.write((int) (adler >>> 8));
+            out.write((int) adler);
+        } finally {
+            pending.forEach(x -> x.cancel(false));
+            out.close();
+        }
+    }
+}
@@ -19,6 +19,22 @@ public interface ResultProducer {
      */
     boolean fillData(RowData row);
 
+    /**
+     * Invoked in order to fill the next rows into the batch supplied. The default implementation
+     * adapts {@link #fillData(RowData)}, producers override it to fill column vectors directly.
+     *
+     * @param batch batch to fill in, its rows are replaced
+     * @return false if no data can be filled
+     */
+    default boolean fillBatch(RowBatch batch) {
+        batch.clear();
+        RowData row = batch.getRowToken();
+        while (!batch.isFull() && fillData(row)) {
+            batch.addRow(row.values);
+        }
+        return batch.size > 0;
+    }
+
     /**
      * Called to inform about finished processing.
      */
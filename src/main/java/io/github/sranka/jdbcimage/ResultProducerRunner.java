@@ -18,8 +18,16 @@ public class ResultProducerRunner {
             // read header (version)
             RowData token = producer.start();
             consumer.onStart(token.info);
-            while (producer.fillData(token)) {
-                consumer.accept(token);
+            if (consumer instanceof RowBatchConsumer) {
+                RowBatchConsumer batchConsumer = (RowBatchConsumer) consumer;
+                RowBatch batch = new RowBatch(token.info, RowBatch.DEFAULT_CAPACITY);
+                while (producer.fillBatch(batch)) {
+                    batchConsumer.acceptBatch(batch);
+                }
+            } else {
+                while (producer.fillData(token)) {
+                    consumer.accept(token);
+                }
             }
             // read item
             return consumer.onFinish();
@@ -0,0 +1,291 @@
+package io.github.sranka.jdbcimage;
+
+import io.github.sranka.jdbcimage.main.Oracle;
+
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Represents a batch of rows of a table, stored column by column. Numeric and boolean
+ * columns are kept in primitive arrays, values of other columns are kept as objects
+ * (the same objects as in {@link RowData#values}). Null values are marked in a null bitmap
+ * of every column.
+ * This class is mutable, it is used as a token during processing.
+ */
+public class RowBatch {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public static final byte KIND_OBJECT = 0;
+    public static final byte KIND_LONG = 1;
+    public static final byte KIND_INT = 2;
+    public static final byte KIND_SHORT = 3;
+    public static final byte KIND_DOUBLE = 4;
+    public static final byte KIND_FLOAT = 5;
+    public static final byte KIND_BOOLEAN = 6;
+
+    /**
+     * about columns
+     */
+    public final ResultSetInfo info;
+    /**
+     * maximum number of rows in the batch
+     */
+    public final int capacity;
+    /**
+     * kind of vector of every column, see KIND_* constants
+     */
+    public final byte[] kinds;
+    /**
+     * column vectors, only the vector of the column kind is not null
+     */
+    public long[][] longs;
+    public int[][] ints;
+    public short[][] shorts;
+    public double[][] doubles;
+    public float[][] floats;
+    public boolean[][] booleans;
+    public Object[][] objects;
+    /**
+     * null bitmaps of columns, a set bit represents a null value
+     */
+    public byte[][] nulls;
+    /**
+     * number of rows in the batch
+     */
+    public int size;
+    // row token used to adapt row-oriented producers and consumers
+    private RowData row;
+
+    public RowBatch(ResultSetInfo info, int capacity) {
+        this.info = info;
+        this.capacity = capacity;
+        int columns = info.types.length;
+        this.kinds = new byte[columns];
+        this.longs = new long[columns][];
+        this.ints = new int[columns][];
+        this.shorts = new short[columns][];
+        this.doubles = new double[columns][];
+        this.floats = new float[columns][];
+        this.booleans = new boolean[columns][];
+        this.objects = new Object[columns][];
+        this.nulls = new byte[columns][(capacity + 7) / 8];
+        for (int i = 0; i < columns; i++) {
+            kinds[i] = toKind(info.types[i]);
+            switch (kinds[i]) {
+                case KIND_LONG:
+                    longs[i] = new long[capacity];
+                    break;
+                case KIND_INT:
+                    ints[i] = new int[capacity];
+                    break;
+                case KIND_SHORT:
+                    shorts[i] = new short[capacity];
+                    break;
+                case KIND_DOUBLE:
+                    doubles[i] = new double[capacity];
+                    break;
+                case KIND_FLOAT:
+                    floats[i] = new float[capacity];
+                    break;
+                case KIND_BOOLEAN:
+                    booleans[i] = new boolean[capacity];
+                    break;
+                default:
+                    objects[i] = new Object[capacity];
+            }
+        }
+    }
+
+    /**
+     * Gets the kind of vector that holds values of the supplied SQL type.
+     *
+     * @param sqlType SQL type
+     * @return kind
+     */
+    public static byte toKind(int sqlType) {
+        switch (sqlType) {
+            case Types.BIGINT:
+                return KIND_LONG;
+            case Types.INTEGER:
+                return KIND_INT;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+                return KIND_SHORT;
+            case Types.DOUBLE:
+            case Oracle.Types.BINARY_DOUBLE:
+                return KIND_DOUBLE;
+            case Types.REAL:
+            case Types.FLOAT:
+                return KIND_FLOAT;
+            case Types.BOOLEAN:
+            case Types.BIT:
+                return KIND_BOOLEAN;
+            default:
+                return KIND_OBJECT;
+        }
+    }
+
+    /**
+     * Removes all rows, rows are then added in order using the setters.
+     */
+    public void clear() {
+        int nullBytes = (size + 7) / 8;
+        for (int i = 0; i < nulls.length; i++) {
+            Arrays.fill(nulls[i], 0, nullBytes, (byte) 0);
+            if (objects[i] != null) {
+                // release references
+                Arrays.fill(objects[i], 0, size, null);
+            }
+        }
+        size = 0;
+    }
+
+    public boolean isFull() {
+        return size >= capacity;
+    }
+
+    public boolean isNull(int column, int row) {
+        return (nulls[column][row >> 3] & (1 << (row & 7))) != 0;
+    }
+
+    public void setNull(int column, int row) {
+        nulls[column][row >> 3] |= (byte) (1 << (row & 7));
+    }
+
+    /**
+     * Gets a value of a column, primitive values are boxed.
+     *
+     * @param column column index, starting at 0
+     * @param row    row index, starting at 0
+     * @return value or null
+     */
+    public Object getObject(int column, int row) {
+        if (isNull(column, row)) return null;
+        switch (kinds[column]) {
+            case KIND_LONG:
+                return longs[column][row];
+            case KIND_INT:
+                return ints[column][row];
+            case KIND_SHORT:
+                return shorts[column][row];
+            case KIND_DOUBLE:
+                return doubles[column][row];
+            case KIND_FLOAT:
+                return floats[column][row];
+            case KIND_BOOLEAN:
+                return booleans[column][row];
+            default:
+                return objects[column][row];
+        }
+    }
+
+    /**
+     * Sets a value of a column, primitive values are unboxed.
+     *
+     * @param column column index, starting at 0
+     * @param row    row index, starting at 0
+     * @param value  value or null
+     */
+    public void setObject(int column, int row, Object value) {
+        if (value == null) {
+            setNull(column, row);
+            return;
+        }
+        switch (kinds[column]) {
+            case KIND_LONG:
+                longs[column][row] = (Long) value;
+                break;
+            case KIND_INT:
+                ints[column][row] = (Integer) value;
+                break;
+            case KIND_SHORT:
+                shorts[column][row] = (Short) value;
+                break;
+            case KIND_DOUBLE:
+                doubles[column][row] = (Double) value;
+                break;
+            case KIND_FLOAT:
+                floats[column][row] = (Float) value;
+                break;
+            case KIND_BOOLEAN:
+                booleans[column][row] = (Boolean) value;
+                break;
+            default:
+                objects[column][row] = value;
+        }
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param values values of the row
+     */
+    public void addRow(Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            setObject(i, size, values[i]);
+        }
+        size++;
+    }
+
+    /**
+     * Copies a row to the supplied row data.
+     *
+     * @param row    row index, starting at 0
+     * @param target row to fill in
+     */
+    public void getRow(int row, RowData target) {
+        for (int i = 0; i < target.values.length; i++) {
+            target.values[i] = getObject(i, row);
+        }
+    }
+
+    /**
+     * Exchanges rows with another batch of the same columns and capacity, no data are copied.
+     *
+     * @param other batch to exchange rows with
+     */
+    public void swap(RowBatch other) {
+        if (other.capacity != capacity || !Arrays.equals(other.kinds, kinds)) {
+            throw new IllegalArgumentException("Batches of different shape cannot be swapped!");
+        }
+        long[][] longs = this.longs;
+        this.longs = other.longs;
+        other.longs = longs;
+        int[][] ints = this.ints;
+        this.ints = other.ints;
+        other.ints = ints;
+        short[][] shorts = this.shorts;
+        this.shorts = other.shorts;
+        other.shorts = shorts;
+        double[][] doubles = this.doubles;
+        this.doubles = other.doubles;
+        other.doubles = doubles;
+        float[][] floats = this.floats;
+        this.floats = other.floats;
+        other.floats = floats;
+        boolean[][] booleans = this.booleans;
+        this.booleans = other.booleans;
+        other.booleans = booleans;
+        Object[][] objects = this.objects;
+        this.objects = other.objects;
+        other.objects = objects;
+        byte[][] nulls = this.nulls;
+        this.nulls = other.nulls;
+        other.nulls = nulls;
+        int size = this.size;
+        this.size = other.size;
+        other.size = size;
+    }
+
+    /**
+     * Gets a row token of this batch.
+     *
+     * @return row data
+     */
+    RowData getRowToken() {
+        if (row == null) {
+            row = new RowData(info);
+        }
+        return row;
+    }
+}
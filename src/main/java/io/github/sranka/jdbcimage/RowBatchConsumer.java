@@ -0,0 +1,20 @@
+package io.github.sranka.jdbcimage;
+
+/**
+ * Consumer of rows that is able to process a batch of rows at once. The {@link ResultProducerRunner}
+ * passes batches to such a consumer instead of single rows.
+ */
+public interface RowBatchConsumer extends ResultConsumer<RowData> {
+    /**
+     * Called to process rows of a batch. The default implementation adapts {@link #accept(Object)}.
+     *
+     * @param batch rows to process
+     */
+    default void acceptBatch(RowBatch batch) {
+        RowData row = batch.getRowToken();
+        for (int i = 0; i < batch.size; i++) {
+            batch.getRow(i, row);
+            accept(row);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.sranka.jdbcimage;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream of LOB data that were spilled to a temporary file during import, so that large LOBs
+ * do not occupy memory. The file is deleted once the stream is fully read or closed.
+ * It also streams LOB data of a known length out of a {@link LobStore}.
+ */
+public class SpilledInputStream extends InputStream {
+    // LOBs with more bytes are spilled to a temporary file during import
+    public static long SPILL_BYTES = Long.parseLong(System.getProperty("lob.spill", String.valueOf(1024 * 1024)));
+    // directory of spilled LOBs, null to use the default temporary directory
+    public static volatile File DIRECTORY = null;
+
+    private final File file;
+    private final long length;
+    private InputStream in;
+
+    /**
+     * Opens a spilled file.
+     *
+     * @param file   file to read, it is deleted when the stream is closed
+     * @param length length of the file
+     */
+    public SpilledInputStream(File file, long length) throws IOException {
+        this.file = file;
+        this.length = length;
+        this.in = new BufferedInputStream(new FileInputStream(file), 1024 * 64);
+    }
+
+    /**
+     * Wraps a stream of LOB data, such as an entry of a {@link LobStore}.
+     *
+     * @param in     stream to read, it is closed when this stream is closed
+     * @param length length of the data
+     */
+    public SpilledInputStream(InputStream in, long length) {
+        this.file = null;
+        this.length = length;
+        this.in = in;
+    }
+
+    /**
+     * Creates a new temporary file to spill LOB data to.
+     *
+     * @return file
+     */
+    public static File createFile() throws IOException {
+        File directory = DIRECTORY;
+        return File.createTempFile("lob", ".tmp", directory != null && directory.isDirectory() ? directory : null);
+    }
+
+    /**
+     * Deletes a spilled file.
+     *
+     * @param file file to delete
+     */
+    public static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            LoggedUtils.ignore("Unable to delete " + file, null);
+        }
+    }
+
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (in == null) return -1;
+        int retVal = in.read();
+        if (retVal < 0) close();
+        return retVal;
+    }
+
+    @SuppressWarnings("NullableProblems")
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (in == null) return -1;
+        int retVal = in.read(b, off, len);
+        if (retVal < 0) close();
+        return retVal;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return in == null ? 0 : in.available();
+    }
+
+    @Override
+    public void close() {
+        if (in != null) {
+            LoggedUtils.close(in);
+            in = null;
+            if (file != null) deleteFile(file);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.sranka.jdbcimage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader of CLOB data that were spilled to a temporary file in UTF-16BE during import.
+ * The file is deleted once the reader is fully read or closed.
+ * It also reads CLOB data out of a {@link LobStore}, where they are stored in UTF-16BE, too.
+ */
+public class SpilledReader extends Reader {
+    private final long length;
+    private Reader in;
+
+    /**
+     * Opens a spilled file.
+     *
+     * @param file   file with UTF-16BE characters, it is deleted when the reader is closed
+     * @param length count of characters
+     */
+    public SpilledReader(File file, long length) throws IOException {
+        this.length = length;
+        this.in = new InputStreamReader(new SpilledInputStream(file, length * 2), StandardCharsets.UTF_16BE);
+    }
+
+    /**
+     * Wraps a stream of CLOB data, such as an entry of a {@link LobStore}.
+     *
+     * @param in     stream of UTF-16BE characters, it is closed when the reader is closed
+     * @param length count of characters
+     */
+    public SpilledReader(InputStream in, long length) {
+        this.length = length;
+        this.in = new InputStreamReader(new SpilledInputStream(in, length * 2), StandardCharsets.UTF_16BE);
+    }
+
+    public long length() {
+        return length;
+    }
+
+    @SuppressWarnings("NullableProblems")
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (in == null) return -1;
+        int retVal = in.read(cbuf, off, len);
+        if (retVal < 0) close();
+        return retVal;
+    }
+
+    public String readAsString() {
+        StringBuilder buffer = new StringBuilder((int) length);
+        char[] chunk = new char[1024 * 8];
+        int count;
+        try {
+            while ((count = read(chunk, 0, chunk.length)) >= 0) {
+                buffer.append(chunk, 0, count);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            close();
+        }
+        return buffer.toString();
+    }
+
+    @Override
+    public void close() {
+        if (in != null) {
+            LoggedUtils.close(in);
+            in = null;
+        }
+    }
+}
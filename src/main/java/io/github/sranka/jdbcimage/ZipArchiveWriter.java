@@ -0,0 +1,230 @@
+package io.github.sranka.jdbcimage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes entries of a zip archive concurrently. Every entry is buffered in memory up to a limit.
+ * When the limit is exceeded, the entry is streamed directly into the archive if no other entry
+ * is streamed at the moment, otherwise it is spilled into a file in a spill directory.
+ * Closed entries that are not in the archive yet are queued and written by the next thread
+ * that owns the archive, so that no writer waits for another one. Queued entries are kept in memory
+ * up to the same limit in total, other queued entries are spilled.
+ */
+public class ZipArchiveWriter implements Closeable {
+    public static final int DEFAULT_MEMORY_LIMIT = 1024 * 1024 * 8;
+
+    private final File zipFile;
+    private final OutputStream fileOut;
+    private final ZipOutputStream zos;
+    private final File spillDirectory;
+    private final int memoryLimit;
+    // permits writing to the archive
+    private final Semaphore zipLock = new Semaphore(1);
+    private final ConcurrentLinkedQueue<EntryOutputStream> pending = new ConcurrentLinkedQueue<>();
+    // bytes of queued entries that are buffered in memory
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final Set<String> discarded = ConcurrentHashMap.newKeySet();
+
+    public ZipArchiveWriter(File zipFile, File spillDirectory, int memoryLimit) throws IOException {
+        this.zipFile = zipFile;
+        this.fileOut = new FileOutputStream(zipFile);
+        this.zos = new ZipOutputStream(new BufferedOutputStream(fileOut, 1024 * 64));
+        // entries are compressed already
+        this.zos.setLevel(Deflater.NO_COMPRESSION);
+        this.spillDirectory = spillDirectory;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Creates an output stream of a new archive entry, the entry is written to the archive when the stream is closed.
+     *
+     * @param name entry name
+     * @return stream to write entry data to
+     */
+    public OutputStream newEntry(String name) {
+        return new EntryOutputStream(name);
+    }
+
+    /**
+     * Marks an entry to be left out of the archive. It has to be called before the entry stream is closed,
+     * it has no effect on entries that are already streamed into the archive.
+     *
+     * @param name entry name
+     */
+    public void discard(String name) {
+        discarded.add(name);
+    }
+
+    /**
+     * Writes queued entries if no other thread writes to the archive.
+     */
+    private void drain() throws IOException {
+        while (!pending.isEmpty() && zipLock.tryAcquire()) {
+            try {
+                EntryOutputStream entry;
+                while ((entry = pending.poll()) != null) {
+                    entry.writeTo(zos);
+                }
+            } finally {
+                zipLock.release();
+            }
+        }
+    }
+
+    /**
+     * Writes remaining entries and the archive central directory.
+     */
+    @Override
+    public void close() throws IOException {
+        zipLock.acquireUninterruptibly();
+        try {
+            EntryOutputStream entry;
+            while ((entry = pending.poll()) != null) {
+                entry.writeTo(zos);
+            }
+            zos.close();
+        } finally {
+            zipLock.release();
+        }
+    }
+
+    /**
+     * Abandons the archive after a failure, the archive file is closed without being finished and deleted,
+     * spilled entries are deleted.
+     */
+    public void abort() {
+        LoggedUtils.close(fileOut);
+        if (zipFile.exists() && !zipFile.delete()) {
+            LoggedUtils.ignore("Unable to delete " + zipFile, null);
+        }
+        EntryOutputStream entry;
+        while ((entry = pending.poll()) != null) {
+            if (entry.spillFile != null) {
+                entry.deleteSpillFile();
+            }
+        }
+    }
+
+    private class EntryOutputStream extends OutputStream {
+        private final String name;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024 * 64);
+        private File spillFile;
+        private OutputStream spill;
+        private boolean direct;
+        private boolean closed;
+
+        EntryOutputStream(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @SuppressWarnings("NullableProblems")
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (direct) {
+                zos.write(b, off, len);
+            } else if (spill != null) {
+                spill.write(b, off, len);
+            } else if (buffer.size() + len <= memoryLimit) {
+                buffer.write(b, off, len);
+            } else {
+                if (zipLock.tryAcquire()) {
+                    // stream directly into the archive until closed
+                    direct = true;
+                    zos.putNextEntry(new ZipEntry(name));
+                    buffer.writeTo(zos);
+                } else {
+                    spillBuffer();
+                }
+                buffer = null;
+                write(b, off, len);
+            }
+        }
+
+        private void spillBuffer() throws IOException {
+            spillFile = new File(spillDirectory, name);
+            spill = new BufferedOutputStream(new FileOutputStream(spillFile), 1024 * 64);
+            buffer.writeTo(spill);
+        }
+
+        /**
+         * Writes a buffered or spilled entry to the archive, the caller owns the archive.
+         */
+        void writeTo(ZipOutputStream zos) throws IOException {
+            zos.putNextEntry(new ZipEntry(name));
+            if (spillFile != null) {
+                try (InputStream in = new FileInputStream(spillFile)) {
+                    byte[] buf = new byte[1024 * 64];
+                    int count;
+                    while ((count = in.read(buf)) >= 0) {
+                        zos.write(buf, 0, count);
+                    }
+                }
+                deleteSpillFile();
+            } else {
+                buffer.writeTo(zos);
+                pendingBytes.addAndGet(-buffer.size());
+                buffer = null;
+            }
+            zos.closeEntry();
+        }
+
+        private void deleteSpillFile() {
+            if (!spillFile.delete()) {
+                LoggedUtils.ignore("Unable to delete " + spillFile, null);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            if (direct) {
+                try {
+                    zos.closeEntry();
+                } finally {
+                    zipLock.release();
+                }
+            } else {
+                if (spill != null) {
+                    spill.close();
+                }
+                if (discarded.contains(name)) {
+                    if (spillFile != null) {
+                        deleteSpillFile();
+                    }
+                    return;
+                }
+                if (spill == null && pendingBytes.addAndGet(buffer.size()) > memoryLimit) {
+                    // too many entries wait for the archive, the entry is spilled instead of buffered
+                    pendingBytes.addAndGet(-buffer.size());
+                    spillBuffer();
+                    buffer = null;
+                    spill.close();
+                }
+                pending.add(this);
+            }
+            drain();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.sranka.jdbcimage.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Compression codec of table files. The codec id is recorded in the header of a table file,
+ * see {@link Codecs}.
+ */
+public interface Codec {
+    /**
+     * Gets a codec id that is written to the table file header.
+     *
+     * @return id in range 0..255
+     */
+    int getId();
+
+    /**
+     * Gets a codec name, as used in the tool_codec property.
+     *
+     * @return name
+     */
+    String getName();
+
+    /**
+     * Wraps the supplied stream to compress data written to it.
+     *
+     * @param out      stream with compressed data
+     * @param executor executor that can be used to compress blocks in parallel, null to compress in the caller thread
+     * @param threads  number of threads available in the executor
+     * @return stream to write uncompressed data to
+     * @throws IOException I/O error
+     */
+    OutputStream compress(OutputStream out, ExecutorService executor, int threads) throws IOException;
+
+    /**
+     * Wraps the supplied stream to decompress data read from it.
+     *
+     * @param in stream with compressed data
+     * @return stream with uncompressed data
+     * @throws IOException I/O error
+     */
+    InputStream decompress(InputStream in) throws IOException;
+}
@@ -0,0 +1,101 @@
+package io.github.sranka.jdbcimage.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Registry of table file codecs. A table file written by a codec starts with a header
+ * that consists of {@link #MAGIC} bytes followed by a codec id byte. Table files without
+ * such a header are zlib streams, the magic cannot be confused with a zlib header.
+ */
+public class Codecs {
+    /**
+     * Header bytes that precede the codec id.
+     */
+    public static final byte[] MAGIC = {'J', 'I', 'C'};
+    private static final int HEADER_LENGTH = MAGIC.length + 1;
+
+    /**
+     * Gets a codec by its name, the name can be followed by a colon and a compression level,
+     * for example "deflate:1".
+     *
+     * @param spec codec specification
+     * @return codec
+     */
+    public static Codec getCodec(String spec) {
+        String name = spec.trim();
+        String level = null;
+        int sep = name.indexOf(':');
+        if (sep > 0) {
+            level = name.substring(sep + 1).trim();
+            name = name.substring(0, sep).trim();
+        }
+        switch (name.toLowerCase()) {
+            case NoneCodec.NAME:
+                return new NoneCodec();
+            case DeflateCodec.NAME:
+                return level == null ? new DeflateCodec() : new DeflateCodec(Integer.parseInt(level));
+            case Lz4Codec.NAME:
+                return new Lz4Codec();
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + spec);
+        }
+    }
+
+    /**
+     * Gets a codec that reads data identified by the supplied id.
+     *
+     * @param id codec id
+     * @return codec
+     */
+    public static Codec getCodec(int id) {
+        switch (id) {
+            case NoneCodec.ID:
+                return new NoneCodec();
+            case DeflateCodec.ID:
+                return new DeflateCodec();
+            case Lz4Codec.ID:
+                return new Lz4Codec();
+            default:
+                throw new IllegalArgumentException("Unknown codec id: " + id);
+        }
+    }
+
+    /**
+     * Writes a header that identifies the codec.
+     *
+     * @param out   output stream
+     * @param codec codec
+     * @throws IOException I/O error
+     */
+    public static void writeHeader(OutputStream out, Codec codec) throws IOException {
+        out.write(MAGIC);
+        out.write(codec.getId());
+    }
+
+    /**
+     * Detects a codec from the stream header and returns a stream with decompressed data.
+     * Streams without the header are read as zlib streams.
+     *
+     * @param in input stream
+     * @return decompressed stream
+     * @throws IOException I/O error
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        PushbackInputStream pin = new PushbackInputStream(in, HEADER_LENGTH);
+        byte[] header = new byte[HEADER_LENGTH];
+        int length = 0;
+        int count;
+        while (length < HEADER_LENGTH && (count = pin.read(header, length, HEADER_LENGTH - length)) >= 0) {
+            length += count;
+        }
+        if (length == HEADER_LENGTH && header[0] == MAGIC[0] && header[1] == MAGIC[1] && header[2] == MAGIC[2]) {
+            return getCodec(header[MAGIC.length] & 0xFF).decompress(pin);
+        }
+        pin.unread(header, 0, length);
+        return new InflaterInputStream(pin);
+    }
+}
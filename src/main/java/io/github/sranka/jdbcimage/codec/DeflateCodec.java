@@ -0,0 +1,78 @@
+package io.github.sranka.jdbcimage.codec;
+
+import io.github.sranka.jdbcimage.ParallelDeflaterOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Codec that writes a zlib stream compressed with the configured level.
+ */
+public class DeflateCodec implements Codec {
+    public static final int ID = 1;
+    public static final String NAME = "deflate";
+
+    private final int level;
+
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a codec.
+     *
+     * @param level compression level 0-9, or -1 for the default level
+     */
+    public DeflateCodec(int level) {
+        if (level < -1 || level > 9) {
+            throw new IllegalArgumentException("Invalid deflate level: " + level);
+        }
+        this.level = level;
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out, ExecutorService executor, int threads) throws IOException {
+        if (executor != null && threads > 0) {
+            return new ParallelDeflaterOutputStream(out, executor, threads, level, ParallelDeflaterOutputStream.DEFAULT_BLOCK_SIZE);
+        }
+        if (level == Deflater.DEFAULT_COMPRESSION) {
+            return new DeflaterOutputStream(out);
+        }
+        // the deflater is not ended by DeflaterOutputStream when supplied
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(out, deflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        return new InflaterInputStream(in);
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.sranka.jdbcimage.codec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Codec that stores data uncompressed.
+ */
+public class NoneCodec implements Codec {
+    public static final int ID = 0;
+    public static final String NAME = "none";
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out, ExecutorService executor, int threads) {
+        return new BufferedOutputStream(out, 1024 * 64);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        return new BufferedInputStream(in, 1024 * 64);
+    }
+}
@@ -3,9 +3,12 @@ package io.github.sranka.jdbcimage.db;
 import io.github.sranka.jdbcimage.ChunkedInputStream;
 import io.github.sranka.jdbcimage.ChunkedReader;
 import io.github.sranka.jdbcimage.LoggedUtils;
-import io.github.sranka.jdbcimage.ResultConsumer;
 import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowBatch;
+import io.github.sranka.jdbcimage.RowBatchConsumer;
 import io.github.sranka.jdbcimage.RowData;
+import io.github.sranka.jdbcimage.SpilledInputStream;
+import io.github.sranka.jdbcimage.SpilledReader;
 import io.github.sranka.jdbcimage.main.DBFacade;
 import io.github.sranka.jdbcimage.main.DBFacade.ColumnInfo;
 import io.github.sranka.jdbcimage.main.Mssql;
@@ -13,6 +16,8 @@ import io.github.sranka.jdbcimage.main.Oracle;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
@@ -26,31 +31,81 @@ import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Consumer;
 
 /**
  * Import pushed data into a database.
+ * Rows are inserted in JDBC batches. Unless a fixed batch size is configured, the size of the next batch
+ * is derived from the bytes and the execution time of the previous one, so that batches of tiny rows
+ * grow and batches of large (LOB) rows shrink. The transaction is committed after the executed batches
+ * exceed {@link #COMMIT_ROWS} rows or {@link #COMMIT_BYTES} bytes.
+ * When the database supports a direct-path insert hint, batches of a fixed large size are inserted
+ * using the hint and every batch is committed, the table cannot be accessed again in the same transaction.
+ * When {@link #INSERT_ROWS} is set and the database reports its bind parameter limit, rows are inserted by
+ * multi-row <code>INSERT ... VALUES (...),(...)</code> statements, which helps drivers that send every row
+ * of a batch in a separate round trip. Rows that do not fill the last statement are inserted one by one.
  */
-public class DbImportResultConsumer implements ResultConsumer<RowData> {
+public class DbImportResultConsumer implements RowBatchConsumer {
     private static final Log log = LogFactory.getLog(DbImportResultConsumer.class);
-    public static int BATCH_SIZE = Integer.parseInt(System.getProperty("batch.size", "100"));
+    // fixed batch size, 0 to size batches adaptively
+    public static int BATCH_SIZE = Integer.parseInt(System.getProperty("batch.size", "0"));
+    // size of the first adaptive batch
+    public static int INITIAL_BATCH_SIZE = 100;
+    public static int MIN_BATCH_SIZE = 10;
+    public static int MAX_BATCH_SIZE = 10000;
+    // approximate bytes of bound values in an adaptive batch
+    public static long BATCH_BYTES = Long.parseLong(System.getProperty("batch.bytes", String.valueOf(2 * 1024 * 1024)));
+    // target execution time of an adaptive batch in milliseconds
+    public static long BATCH_MILLIS = Long.parseLong(System.getProperty("batch.millis", "500"));
+    // a transaction is committed when the executed batches exceed the rows or bytes
+    public static long COMMIT_ROWS = Long.parseLong(System.getProperty("commit.rows", "50000"));
+    public static long COMMIT_BYTES = Long.parseLong(System.getProperty("commit.bytes", String.valueOf(32 * 1024 * 1024)));
+    // rows inserted by a single multi-row INSERT statement, 0 or 1 to insert a row per statement
+    public static int INSERT_ROWS = Integer.parseInt(System.getProperty("insert.rows", "0"));
+    // SQL Server limits a VALUES list to 1000 rows
+    public static int MAX_INSERT_ROWS = 1000;
+    // estimated size of a value of unknown size, such as a LOB stream
+    private static final int UNKNOWN_VALUE_SIZE = 1024 * 4;
 
     private final String tableName;
     private final Connection con;
     private final DBFacade db;
     private final Map<String, ColumnInfo> actualColumns;
+    // direct-path insert hint, null to insert conventionally
+    private final String directPathHint;
     // state
     int batchPosition; // current batch position
+    long batchBytes; // estimated bytes of values bound in the current batch
     long processedRows = -1;
+    private final boolean adaptive;
+    private int batchSize;
+    private long uncommittedRows;
+    private long uncommittedBytes;
+    private long executedBatches;
+    private long commits;
     private Consumer<ResultSetInfo> notifyOnStartFn = (r) -> {
     };
     // initialize in on start
     private PreparedStatement stmt = null;
+    // statements inserting a specific number of rows, prepared on demand
+    private final Map<Integer, PreparedStatement> statements = new HashMap<>();
+    private String insertPrefix;
+    private String rowPlaceholders;
+    private int boundColumns;
+    private int rowsPerStatement = 1;
+    // rows that do not fill a multi-row statement yet
+    private Object[][] pendingRows;
+    private int pendingCount;
     private ResultSetInfo info;
     // mapping of input positions to SQL statement positions
     private Integer[] placeholderPositions;
     private ColumnInfo[] columnInfos;
+    // SQL types supported by the database
+    private int[] supportedTypes;
+    // kinds of batch vectors that are bound without conversion
+    private byte[] directKinds;
 
     /**
      * Creates database importer.
@@ -66,6 +121,10 @@ public class DbImportResultConsumer implements ResultConsumer<RowData> {
         this.con = connection;
         this.db = db;
         this.actualColumns = actualColumns;
+        this.directPathHint = db.getDirectPathInsertHint();
+        // direct-path inserts are sized by rows, small batches would create many small segments
+        this.adaptive = BATCH_SIZE <= 0 && directPathHint == null;
+        this.batchSize = BATCH_SIZE > 0 ? BATCH_SIZE : directPathHint != null ? MAX_BATCH_SIZE : INITIAL_BATCH_SIZE;
     }
 
     public void setNotifyOnStartFn(Consumer<ResultSetInfo> consumer) {
@@ -81,16 +140,26 @@ public class DbImportResultConsumer implements ResultConsumer<RowData> {
         }
         // initialize batch position
         batchPosition = 0;
+        batchBytes = 0;
         processedRows = 0;
 
         this.info = info;
         String[] columns = info.columns;
         this.placeholderPositions = new Integer[columns.length];
         this.columnInfos = new ColumnInfo[columns.length];
+        this.supportedTypes = new int[columns.length];
+        this.directKinds = new byte[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            supportedTypes[i] = db.toSupportedSqlType(info.types[i]);
+            byte kind = RowBatch.toKind(info.types[i]);
+            directKinds[i] = kind == RowBatch.toKind(supportedTypes[i]) ? kind : RowBatch.KIND_OBJECT;
+        }
 
         // create SQL and placeholder positions
         StringBuilder insertSQL = new StringBuilder(200);
-        insertSQL.append("INSERT INTO ").append(db.escapeTableName(tableName)).append(" (");
+        insertSQL.append("INSERT ");
+        if (directPathHint != null) insertSQL.append(directPathHint).append(' ');
+        insertSQL.append("INTO ").append(db.escapeTableName(tableName)).append(" (");
         int pos = 1;
         for (int i = 0; i < columns.length; i++) {
             ColumnInfo columnInfo = actualColumns.get(columns[i].toLowerCase());
@@ -108,157 +177,481 @@ public class DbImportResultConsumer implements ResultConsumer<RowData> {
             log.debug("No columns available for import!");
             return; // no columns to write
         }
-        insertSQL.append(") VALUES (");
-        for (int i = 0; i < pos - 2; i++) insertSQL.append("?,");
-        insertSQL.append("?)");
+        insertSQL.append(") VALUES ");
+        insertPrefix = insertSQL.toString();
+        StringBuilder placeholders = new StringBuilder("(");
+        for (int i = 0; i < pos - 2; i++) placeholders.append("?,");
+        rowPlaceholders = placeholders.append("?)").toString();
+        boundColumns = pos - 1;
+        // every value of a multi-row statement is a bind parameter
+        int maxBindParameters = db.getMaxBindParameters();
+        if (INSERT_ROWS > 1 && maxBindParameters > 0) {
+            rowsPerStatement = Math.max(1, Math.min(Math.min(INSERT_ROWS, MAX_INSERT_ROWS), maxBindParameters / boundColumns));
+        }
+        if (rowsPerStatement > 1) {
+            pendingRows = new Object[rowsPerStatement][];
+        }
 
         // prepare statement
         try {
-            stmt = con.prepareStatement(insertSQL.toString());
+            stmt = getStatement(rowsPerStatement);
         } catch (SQLException e) {
             LoggedUtils.ignore("Unable to prepare statement!", e);
             throw new RuntimeException(e);
         }
     }
 
-    @SuppressWarnings("SpellCheckingInspection")
+    /**
+     * Gets a prepared statement that inserts the specified number of rows.
+     *
+     * @param rows rows of the statement
+     * @return cached statement
+     */
+    private PreparedStatement getStatement(int rows) throws SQLException {
+        PreparedStatement retVal = statements.get(rows);
+        if (retVal == null) {
+            StringBuilder sql = new StringBuilder(insertPrefix.length() + rows * (rowPlaceholders.length() + 1));
+            sql.append(insertPrefix);
+            for (int i = 0; i < rows; i++) {
+                if (i != 0) sql.append(',');
+                sql.append(rowPlaceholders);
+            }
+            retVal = con.prepareStatement(sql.toString());
+            statements.put(rows, retVal);
+        }
+        return retVal;
+    }
+
     @Override
     public void accept(RowData t) {
         if (stmt == null) return; // nothing to do
+        if (pendingRows != null) {
+            addPendingRow(t.values.clone());
+            return;
+        }
         try {
             for (int i = 0; i < placeholderPositions.length; i++) {
                 Integer pos = placeholderPositions[i];
                 if (pos != null) { // data not ignored
-                    Object value = t.values[i];
-                    int type = db.toSupportedSqlType(info.types[i]);
-                    if (value == null) {
-                        stmt.setNull(pos, type);
-                    } else {
-                        value = db.toSupportedValue(type, columnInfos[i], value);
-                        switch (type) {
-                            case Types.BIGINT:
-                                stmt.setLong(pos, (Long) value);
-                                break;
-                            case Types.BINARY:
-                                stmt.setBytes(pos, (byte[]) value);
-                                break;
-                            case Types.BOOLEAN:
-                            case Types.BIT:
-                                stmt.setBoolean(pos, (Boolean) value);
-                                break;
-                            case Types.CHAR:
-                            case Types.VARCHAR:
-                                stmt.setString(pos, (String) value);
-                                break;
-                            case Types.NCHAR:
-                            case Types.NVARCHAR:
-                                stmt.setNString(pos, (String) value);
-                                break;
-                            case Types.DATE:
-                                stmt.setDate(pos, (Date) value);
-                                break;
-                            case Types.TIME:
-                                stmt.setTime(pos, (Time) value);
-                                break;
-                            case Types.TIMESTAMP:
-                            case Mssql.Types.DATETIMEOFFSET:
-                                if (value instanceof Timestamp){
-                                    stmt.setTimestamp(pos, (Timestamp) value);
-                                } else {
-                                    stmt.setString(pos, (String) value);
-                                }
-                                break;
-                            case Types.DECIMAL:
-                            case Types.NUMERIC:
-                                stmt.setBigDecimal(pos, (BigDecimal) value);
-                                break;
-                            case Types.DOUBLE:
-                            case Oracle.Types.BINARY_DOUBLE:
-                                stmt.setDouble(pos, (Double) value);
-                                break;
-                            case Types.INTEGER:
-                                stmt.setInt(pos, (Integer) value);
-                                break;
-                            case Types.TINYINT:
-                            case Types.SMALLINT:
-                                stmt.setShort(pos, (Short) value);
-                                break;
-                            case Types.REAL:
-                            case Types.FLOAT:
-                                stmt.setFloat(pos, (Float) value);
-                                break;
-                            case Types.VARBINARY:
-                            case Types.LONGVARBINARY:
-                            case Types.BLOB:
-                                if (value instanceof InputStream) {
-                                    if (value instanceof ChunkedInputStream) {
-                                        stmt.setBinaryStream(pos, (InputStream) value, ((ChunkedInputStream) value).length());
-                                    } else {
-                                        stmt.setBinaryStream(pos, (InputStream) value);
-                                    }
-                                } else if (value instanceof Blob) {
-                                    stmt.setBlob(pos, (Blob) value);
-                                } else if (value instanceof byte[]) {
-                                    stmt.setBytes(pos, (byte[]) value);
-                                } else {
-                                    throw new IllegalStateException("Unexpected value found for blob: " + value);
-                                }
-                                break;
-                            case Types.LONGVARCHAR:
-                            case Types.CLOB:
-                            case Types.LONGNVARCHAR:
-                            case Types.NCLOB:
-                                if (value instanceof Reader) {
-                                    value = db.convertCharacterStreamInput((Reader) value);
-                                    if (value instanceof ChunkedReader) {
-                                        stmt.setCharacterStream(pos, (Reader) value, ((ChunkedReader) value).length());
-                                    } else if (value instanceof Reader) {
-                                        stmt.setCharacterStream(pos, (Reader) value);
-                                    } else if (value instanceof CharSequence) {
-                                        stmt.setString(pos, value.toString());
-                                    } else {
-                                        throw new IllegalStateException("Unexpected value found for clob: " + value);
-                                    }
-                                } else if (value instanceof Clob) {
-                                    if (type == Types.LONGNVARCHAR || type == Types.NCLOB) {
-                                        stmt.setNClob(pos, (NClob) value);
-                                    } else {
-                                        stmt.setClob(pos, (Clob) value);
-                                    }
-                                } else {
-                                    throw new IllegalStateException("Unexpected value found for clob: " + value);
-                                }
-                                break;
-                            case Mssql.Types.SQL_VARIANT:
-                                stmt.setObject(pos, value);
-                                break;
-                            case Types.OTHER:
-                                if (value instanceof String) {
-                                    // requires stringtype=unspecified in postgres connection string
-                                    stmt.setString(pos, (String) value);
-                                    break;
-                                }
-                                throw new IllegalStateException("Unable to set SQL type: " + type + " for value: " + value);
-                            default:
-                                throw new IllegalStateException("Unable to set SQL type: " + type + " for value: " + value);
-                        }
+                    setValue(stmt, pos, i, t.values[i]);
+                }
+            }
+            addRow();
+        } catch (SQLException e) {
+            LoggedUtils.ignore("Unable to rollback!", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void acceptBatch(RowBatch batch) {
+        if (stmt == null) return; // nothing to do
+        if (pendingRows != null) {
+            for (int row = 0; row < batch.size; row++) {
+                Object[] values = new Object[placeholderPositions.length];
+                for (int i = 0; i < values.length; i++) {
+                    if (placeholderPositions[i] != null) values[i] = batch.getObject(i, row);
+                }
+                addPendingRow(values);
+            }
+            return;
+        }
+        try {
+            for (int row = 0; row < batch.size; row++) {
+                for (int i = 0; i < placeholderPositions.length; i++) {
+                    Integer pos = placeholderPositions[i];
+                    if (pos == null) continue; // data ignored
+                    if (batch.isNull(i, row)) {
+                        stmt.setNull(pos, supportedTypes[i]);
+                        continue;
+                    }
+                    // primitive values are bound without boxing
+                    switch (directKinds[i]) {
+                        case RowBatch.KIND_LONG:
+                            stmt.setLong(pos, batch.longs[i][row]);
+                            batchBytes += 8;
+                            break;
+                        case RowBatch.KIND_INT:
+                            stmt.setInt(pos, batch.ints[i][row]);
+                            batchBytes += 8;
+                            break;
+                        case RowBatch.KIND_SHORT:
+                            stmt.setShort(pos, batch.shorts[i][row]);
+                            batchBytes += 8;
+                            break;
+                        case RowBatch.KIND_DOUBLE:
+                            stmt.setDouble(pos, batch.doubles[i][row]);
+                            batchBytes += 8;
+                            break;
+                        case RowBatch.KIND_FLOAT:
+                            stmt.setFloat(pos, batch.floats[i][row]);
+                            batchBytes += 8;
+                            break;
+                        case RowBatch.KIND_BOOLEAN:
+                            stmt.setBoolean(pos, batch.booleans[i][row]);
+                            batchBytes += 8;
+                            break;
+                        default:
+                            setValue(stmt, pos, i, batch.getObject(i, row));
                     }
                 }
+                addRow();
             }
+        } catch (SQLException e) {
+            LoggedUtils.ignore("Unable to rollback!", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Adds the bound row to the batch, the batch is executed when full.
+     */
+    private void addRow() throws SQLException {
+        stmt.addBatch();
+        batchPosition++;
+        processedRows++;
+        if (batchPosition >= batchSize || (adaptive && batchBytes >= BATCH_BYTES)
+                || (directPathHint != null && batchBytes >= COMMIT_BYTES)) {
+            executeBatch();
+        }
+    }
+
+    /**
+     * Adds a row to the rows of the next multi-row statement, the statement is added to the batch
+     * once it is full.
+     *
+     * @param values row values, not reused by the caller
+     */
+    private void addPendingRow(Object[] values) {
+        pendingRows[pendingCount++] = values;
+        processedRows++;
+        if (pendingCount < rowsPerStatement) return;
+        try {
+            bindPendingRows(stmt, 0, pendingCount);
             stmt.addBatch();
-            batchPosition++;
-            if (batchPosition >= BATCH_SIZE) {
-                stmt.executeBatch();
-                con.commit();
-                batchPosition = 0;
+            batchPosition += pendingCount;
+            pendingCount = 0;
+            if (batchPosition >= batchSize || (adaptive && batchBytes >= BATCH_BYTES)
+                    || (directPathHint != null && batchBytes >= COMMIT_BYTES)) {
+                executeBatch();
             }
-            processedRows++;
         } catch (SQLException e) {
             LoggedUtils.ignore("Unable to rollback!", e);
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Binds pending rows to consecutive row placeholders of a statement.
+     *
+     * @param statement statement to bind to
+     * @param from      index of the first pending row
+     * @param count     number of rows to bind
+     */
+    private void bindPendingRows(PreparedStatement statement, int from, int count) throws SQLException {
+        for (int row = 0; row < count; row++) {
+            Object[] values = pendingRows[from + row];
+            pendingRows[from + row] = null;
+            int offset = row * boundColumns;
+            for (int i = 0; i < placeholderPositions.length; i++) {
+                Integer pos = placeholderPositions[i];
+                if (pos != null) {
+                    setValue(statement, offset + pos, i, values[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the pending rows that do not fill a multi-row statement using a single-row statement.
+     */
+    private void executePendingRows() throws SQLException {
+        PreparedStatement single = getStatement(1);
+        for (int row = 0; row < pendingCount; row++) {
+            bindPendingRows(single, row, 1);
+            single.addBatch();
+        }
+        single.executeBatch();
+        executedBatches++;
+        uncommittedRows += pendingCount;
+        uncommittedBytes += batchBytes;
+        batchBytes = 0;
+        pendingCount = 0;
+    }
+
+    /**
+     * Executes the current batch, adjusts the size of the next batch and commits
+     * the transaction when it exceeds the commit interval or when the batch is a direct-path insert.
+     */
+    private void executeBatch() throws SQLException {
+        long start = System.nanoTime();
+        stmt.executeBatch();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        executedBatches++;
+        if (adaptive) {
+            adjustBatchSize(batchPosition, batchBytes, millis);
+        }
+        uncommittedRows += batchPosition;
+        uncommittedBytes += batchBytes;
+        batchPosition = 0;
+        batchBytes = 0;
+        if (directPathHint != null || uncommittedRows >= COMMIT_ROWS || uncommittedBytes >= COMMIT_BYTES) {
+            commit();
+        }
+    }
+
+    /**
+     * Sizes the next batch from the bytes and the execution time of an executed batch,
+     * the batch size at most doubles at once.
+     *
+     * @param rows   rows of the executed batch
+     * @param bytes  estimated bytes of the executed batch
+     * @param millis execution time of the executed batch
+     */
+    private void adjustBatchSize(int rows, long bytes, long millis) {
+        double factor = 2;
+        if (bytes > 0) {
+            factor = Math.min(factor, (double) BATCH_BYTES / bytes);
+        }
+        if (millis > 0) {
+            factor = Math.min(factor, (double) BATCH_MILLIS / millis);
+        }
+        batchSize = (int) Math.max(MIN_BATCH_SIZE, Math.min(MAX_BATCH_SIZE, (long) (rows * factor)));
+    }
+
+    private void commit() throws SQLException {
+        con.commit();
+        commits++;
+        uncommittedRows = 0;
+        uncommittedBytes = 0;
+    }
+
+    /**
+     * Gets the size of the next batch, it is the last size chosen when sizing batches adaptively.
+     *
+     * @return rows in a batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Gets the average count of rows in executed batches.
+     *
+     * @return rows in a batch
+     */
+    public long getAverageBatchSize() {
+        return executedBatches == 0 ? 0 : (processedRows - batchPosition) / executedBatches;
+    }
+
+    /**
+     * Gets the number of committed transactions.
+     *
+     * @return commit count
+     */
+    public long getCommits() {
+        return commits;
+    }
+
+    /**
+     * Estimates the size of a bound value.
+     */
+    static long estimateValueSize(Object value) throws SQLException {
+        if (value instanceof String) {
+            return ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof ChunkedInputStream) {
+            return ((ChunkedInputStream) value).length();
+        } else if (value instanceof ChunkedReader) {
+            return ((ChunkedReader) value).length();
+        } else if (value instanceof SpilledInputStream) {
+            return ((SpilledInputStream) value).length();
+        } else if (value instanceof SpilledReader) {
+            return ((SpilledReader) value).length();
+        } else if (value instanceof Blob) {
+            return ((Blob) value).length();
+        } else if (value instanceof Clob) {
+            return ((Clob) value).length();
+        } else if (value instanceof InputStream || value instanceof Reader) {
+            return UNKNOWN_VALUE_SIZE;
+        }
+        return 16;
+    }
+
+    /**
+     * Reads a LOB stream or reader into memory, the buffer is sized by the length of chunked and spilled values.
+     *
+     * @param value imported value
+     * @return bytes of a stream, string of a reader, other values as they are
+     */
+    static Object materialize(Object value) throws IOException {
+        if (value instanceof InputStream) {
+            InputStream in = (InputStream) value;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(initialCapacity(value));
+            byte[] chunk = new byte[1024 * 8];
+            int count;
+            while ((count = in.read(chunk)) >= 0) {
+                bytes.write(chunk, 0, count);
+            }
+            return bytes.toByteArray();
+        } else if (value instanceof Reader) {
+            Reader in = (Reader) value;
+            StringBuilder sb = new StringBuilder(initialCapacity(value));
+            char[] chunk = new char[1024 * 8];
+            int count;
+            while ((count = in.read(chunk)) >= 0) {
+                sb.append(chunk, 0, count);
+            }
+            return sb.toString();
+        }
+        return value;
+    }
+
+    private static int initialCapacity(Object value) {
+        long length = -1;
+        if (value instanceof ChunkedInputStream) {
+            length = ((ChunkedInputStream) value).length();
+        } else if (value instanceof SpilledInputStream) {
+            length = ((SpilledInputStream) value).length();
+        } else if (value instanceof ChunkedReader) {
+            length = ((ChunkedReader) value).length();
+        } else if (value instanceof SpilledReader) {
+            length = ((SpilledReader) value).length();
+        }
+        return length >= 0 && length < Integer.MAX_VALUE - 8 ? (int) length : 1024 * 8;
+    }
+
+    /**
+     * Binds a value of a column.
+     *
+     * @param stmt  statement to bind to
+     * @param pos   placeholder position
+     * @param i     column index
+     * @param value value to bind
+     */
+    @SuppressWarnings("SpellCheckingInspection")
+    private void setValue(PreparedStatement stmt, int pos, int i, Object value) throws SQLException {
+        int type = supportedTypes[i];
+        if (value == null) {
+            stmt.setNull(pos, type);
+            return;
+        }
+        batchBytes += estimateValueSize(value);
+        value = db.toSupportedValue(type, columnInfos[i], value);
+        switch (type) {
+            case Types.BIGINT:
+                stmt.setLong(pos, (Long) value);
+                break;
+            case Types.BINARY:
+                stmt.setBytes(pos, (byte[]) value);
+                break;
+            case Types.BOOLEAN:
+            case Types.BIT:
+                stmt.setBoolean(pos, (Boolean) value);
+                break;
+            case Types.CHAR:
+            case Types.VARCHAR:
+                stmt.setString(pos, (String) value);
+                break;
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+                stmt.setNString(pos, (String) value);
+                break;
+            case Types.DATE:
+                stmt.setDate(pos, (Date) value);
+                break;
+            case Types.TIME:
+                stmt.setTime(pos, (Time) value);
+                break;
+            case Types.TIMESTAMP:
+            case Mssql.Types.DATETIMEOFFSET:
+                if (value instanceof Timestamp){
+                    stmt.setTimestamp(pos, (Timestamp) value);
+                } else {
+                    stmt.setString(pos, (String) value);
+                }
+                break;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                stmt.setBigDecimal(pos, (BigDecimal) value);
+                break;
+            case Types.DOUBLE:
+            case Oracle.Types.BINARY_DOUBLE:
+                stmt.setDouble(pos, (Double) value);
+                break;
+            case Types.INTEGER:
+                stmt.setInt(pos, (Integer) value);
+                break;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+                stmt.setShort(pos, (Short) value);
+                break;
+            case Types.REAL:
+            case Types.FLOAT:
+                stmt.setFloat(pos, (Float) value);
+                break;
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                if (value instanceof InputStream) {
+                    if (value instanceof ChunkedInputStream) {
+                        stmt.setBinaryStream(pos, (InputStream) value, ((ChunkedInputStream) value).length());
+                    } else if (value instanceof SpilledInputStream) {
+                        stmt.setBinaryStream(pos, (InputStream) value, ((SpilledInputStream) value).length());
+                    } else {
+                        stmt.setBinaryStream(pos, (InputStream) value);
+                    }
+                } else if (value instanceof Blob) {
+                    stmt.setBlob(pos, (Blob) value);
+                } else if (value instanceof byte[]) {
+                    stmt.setBytes(pos, (byte[]) value);
+                } else {
+                    throw new IllegalStateException("Unexpected value found for blob: " + value);
+                }
+                break;
+            case Types.LONGVARCHAR:
+            case Types.CLOB:
+            case Types.LONGNVARCHAR:
+            case Types.NCLOB:
+                if (value instanceof Reader) {
+                    value = db.convertCharacterStreamInput((Reader) value);
+                    if (value instanceof ChunkedReader) {
+                        stmt.setCharacterStream(pos, (Reader) value, ((ChunkedReader) value).length());
+                    } else if (value instanceof SpilledReader) {
+                        stmt.setCharacterStream(pos, (Reader) value, ((SpilledReader) value).length());
+                    } else if (value instanceof Reader) {
+                        stmt.setCharacterStream(pos, (Reader) value);
+                    } else if (value instanceof CharSequence) {
+                        stmt.setString(pos, value.toString());
+                    } else {
+                        throw new IllegalStateException("Unexpected value found for clob: " + value);
+                    }
+                } else if (value instanceof Clob) {
+                    if (type == Types.LONGNVARCHAR || type == Types.NCLOB) {
+                        stmt.setNClob(pos, (NClob) value);
+                    } else {
+                        stmt.setClob(pos, (Clob) value);
+                    }
+                } else {
+                    throw new IllegalStateException("Unexpected value found for clob: " + value);
+                }
+                break;
+            case Mssql.Types.SQL_VARIANT:
+                stmt.setObject(pos, value);
+                break;
+            case Types.OTHER:
+                if (value instanceof String) {
+                    // requires stringtype=unspecified in postgres connection string
+                    stmt.setString(pos, (String) value);
+                    break;
+                }
+                throw new IllegalStateException("Unable to set SQL type: " + type + " for value: " + value);
+            default:
+                throw new IllegalStateException("Unable to set SQL type: " + type + " for value: " + value);
+        }
+    }
+
 
     @Override
     public long onFinish() {
@@ -268,11 +661,24 @@ public class DbImportResultConsumer implements ResultConsumer<RowData> {
 
     @Override
     public void onFailure(Exception ex) {
+        // rows of the failed transaction are neither executed nor committed when closing the statements
+        for (PreparedStatement statement : statements.values()) {
+            try {
+                statement.clearBatch();
+            } catch (SQLException e) {
+                LoggedUtils.ignore("Unable to clear batch!", e);
+            }
+        }
         try {
             con.rollback();
         } catch (SQLException e) {
             LoggedUtils.ignore("Unable to rollback!", e);
         }
+        batchPosition = 0;
+        batchBytes = 0;
+        pendingCount = 0;
+        uncommittedRows = 0;
+        uncommittedBytes = 0;
         closeStatement();
     }
 
@@ -281,11 +687,19 @@ public class DbImportResultConsumer implements ResultConsumer<RowData> {
             if (stmt != null) {
                 try {
                     if (batchPosition != 0) {
-                        stmt.executeBatch();
-                        con.commit();
+                        executeBatch();
+                    }
+                    if (pendingCount != 0) {
+                        executePendingRows();
+                    }
+                    if (uncommittedRows != 0) {
+                        commit();
                     }
                 } finally {
-                    stmt.close();
+                    for (PreparedStatement statement : statements.values()) {
+                        LoggedUtils.close(statement);
+                    }
+                    statements.clear();
                     stmt = null;
                 }
             }
@@ -0,0 +1,347 @@
+package io.github.sranka.jdbcimage.db;
+
+import io.github.sranka.jdbcimage.LoggedUtils;
+import io.github.sranka.jdbcimage.ResultConsumer;
+import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowData;
+import io.github.sranka.jdbcimage.main.DBFacade;
+import io.github.sranka.jdbcimage.main.DBFacade.ColumnInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Imports pushed data into a MariaDB/MySQL table using <code>LOAD DATA LOCAL INFILE</code>. Rows are encoded
+ * as escaped tab-separated lines into a memory buffer, which is then streamed to the server as the local file
+ * of the statement, there is no temporary file. Binary values are encoded in hex and decoded by the server.
+ * Every {@link DbImportResultConsumer#COMMIT_ROWS} rows or {@link DbImportResultConsumer#COMMIT_BYTES} bytes
+ * are loaded by a single statement and committed. Unique checks and binary logging are disabled in the session
+ * during the import, where permitted.
+ */
+public class MariaDbLoadDataResultConsumer implements ResultConsumer<RowData> {
+    // statement classes that accept a local infile stream
+    private static final String[] INFILE_STATEMENTS = {"org.mariadb.jdbc.Statement", "com.mysql.cj.jdbc.JdbcStatement"};
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private final String tableName;
+    private final Connection con;
+    private final DBFacade db;
+    private final Map<String, ColumnInfo> actualColumns;
+    private final Consumer<ResultSetInfo> notifyOnStartFn;
+    // encoded rows that are not loaded yet
+    private final Buffer buffer = new Buffer();
+    // initialized in onStart
+    private String loadSql;
+    private int[] columnIndexes;
+    private ColumnInfo[] columnInfos;
+    private int[] types;
+    private boolean[] binary;
+    // state
+    private long bufferedRows;
+    private long processedRows = -1;
+    private boolean sessionChanged;
+
+    /**
+     * Creates MariaDB importer.
+     *
+     * @param tableName       table to insert to
+     * @param connection      connection to write rows to
+     * @param db              used to escape table and column names and to convert values
+     * @param actualColumns   actual columns, a key is lower case of the name
+     * @param notifyOnStartFn called when the import of table data starts
+     */
+    public MariaDbLoadDataResultConsumer(String tableName, Connection connection, DBFacade db, Map<String, ColumnInfo> actualColumns,
+                                         Consumer<ResultSetInfo> notifyOnStartFn) {
+        this.tableName = tableName;
+        this.con = connection;
+        this.db = db;
+        this.actualColumns = actualColumns;
+        this.notifyOnStartFn = notifyOnStartFn;
+    }
+
+    @Override
+    public void onStart(ResultSetInfo info) {
+        notifyOnStartFn.accept(info);
+        this.processedRows = 0;
+        int count = 0;
+        for (String column : info.columns) {
+            if (actualColumns.containsKey(column.toLowerCase())) count++;
+        }
+        columnIndexes = new int[count];
+        columnInfos = new ColumnInfo[count];
+        types = new int[count];
+        binary = new boolean[count];
+        StringBuilder columns = new StringBuilder();
+        StringBuilder setters = new StringBuilder();
+        int pos = 0;
+        for (int i = 0; i < info.columns.length; i++) {
+            ColumnInfo columnInfo = actualColumns.get(info.columns[i].toLowerCase());
+            if (columnInfo != null) {
+                columnIndexes[pos] = i;
+                columnInfos[pos] = columnInfo;
+                types[pos] = db.toSupportedSqlType(info.types[i]);
+                binary[pos] = isBinary(types[pos]);
+                if (pos != 0) columns.append(',');
+                // hex encoded values are decoded, BIT values are not loaded from text directly
+                String setter = binary[pos] ? "UNHEX(@v" + pos + ")"
+                        : "BIT".equals(columnInfo.getDbType()) ? "CAST(@v" + pos + " AS UNSIGNED)" : null;
+                if (setter != null) {
+                    columns.append("@v").append(pos);
+                    setters.append(setters.length() == 0 ? " SET " : ",");
+                    setters.append(db.escapeColumnName(columnInfo.getName())).append('=').append(setter);
+                } else {
+                    columns.append(db.escapeColumnName(columnInfo.getName()));
+                }
+                pos++;
+            }
+        }
+        loadSql = "LOAD DATA LOCAL INFILE 'jdbcimage.tsv' INTO TABLE " + db.escapeTableName(tableName)
+                + " CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n'"
+                + " (" + columns + ")" + setters;
+        sessionChanged = true;
+        setSession(0);
+    }
+
+    private static boolean isBinary(int type) {
+        switch (type) {
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Sets unique checks and binary logging of the session, binary logging requires a privilege.
+     */
+    private void setSession(int value) {
+        for (String sql : new String[]{"SET unique_checks=" + value, "SET sql_log_bin=" + value}) {
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute(sql);
+            } catch (SQLException e) {
+                LoggedUtils.ignore("Unable to execute " + sql, e);
+            }
+        }
+    }
+
+    @Override
+    public void accept(RowData t) {
+        if (columnIndexes.length == 0) return; // no columns to write
+        try {
+            for (int i = 0; i < columnIndexes.length; i++) {
+                if (i != 0) buffer.write('\t');
+                Object value = t.values[columnIndexes[i]];
+                if (value == null) {
+                    buffer.write('\\');
+                    buffer.write('N');
+                } else {
+                    writeValue(i, db.toSupportedValue(types[i], columnInfos[i], value));
+                }
+            }
+            buffer.write('\n');
+            bufferedRows++;
+            processedRows++;
+            if (bufferedRows >= DbImportResultConsumer.COMMIT_ROWS || buffer.size() >= DbImportResultConsumer.COMMIT_BYTES) {
+                load();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (SQLException e) {
+            LoggedUtils.ignore("Unable to load data!", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeValue(int i, Object value) throws IOException {
+        if (binary[i]) {
+            if (value instanceof byte[]) {
+                writeHex((byte[]) value, ((byte[]) value).length);
+            } else {
+                InputStream in = (InputStream) value;
+                byte[] chunk = new byte[1024 * 8];
+                int count;
+                while ((count = in.read(chunk)) >= 0) {
+                    writeHex(chunk, count);
+                }
+            }
+        } else if (value instanceof Boolean) {
+            buffer.write((Boolean) value ? '1' : '0');
+        } else if (value instanceof BigDecimal) {
+            writeEscaped(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Reader) {
+            writeEscaped((String) DbImportResultConsumer.materialize(value));
+        } else {
+            // numbers, strings and date/time values in JDBC escape format
+            writeEscaped(value.toString());
+        }
+    }
+
+    private void writeHex(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            buffer.write(HEX[(bytes[i] >> 4) & 0xF]);
+            buffer.write(HEX[bytes[i] & 0xF]);
+        }
+    }
+
+    /**
+     * Writes a string in UTF-8, special characters are escaped with a backslash.
+     */
+    private void writeEscaped(String value) {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            char escaped;
+            switch (c) {
+                case '\\':
+                    escaped = '\\';
+                    break;
+                case '\t':
+                    escaped = 't';
+                    break;
+                case '\n':
+                    escaped = 'n';
+                    break;
+                case '\r':
+                    escaped = 'r';
+                    break;
+                case '\0':
+                    escaped = '0';
+                    break;
+                default:
+                    continue;
+            }
+            buffer.writeUtf8(value.substring(start, i));
+            buffer.write('\\');
+            buffer.write(escaped);
+            start = i + 1;
+        }
+        buffer.writeUtf8(start == 0 ? value : value.substring(start));
+    }
+
+    /**
+     * Loads buffered rows using a single statement and commits them.
+     */
+    private void load() throws SQLException {
+        if (bufferedRows == 0) return;
+        loadData(new ByteArrayInputStream(buffer.array(), 0, buffer.size()), bufferedRows);
+        con.commit();
+        buffer.reset();
+        bufferedRows = 0;
+    }
+
+    /**
+     * Executes the LOAD DATA statement with the supplied local file data.
+     *
+     * @param data tab-separated lines
+     * @param rows number of lines
+     */
+    void loadData(InputStream data, long rows) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            setLocalInfileInputStream(stmt, data);
+            long loaded = stmt.executeUpdate(loadSql);
+            if (loaded != rows) {
+                // LOCAL turns data errors into warnings
+                SQLWarning warning = stmt.getWarnings();
+                throw new IllegalStateException("Loaded " + loaded + " of " + rows + " rows into " + tableName
+                        + (warning == null ? "" : ": " + warning.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Gets the LOAD DATA statement, available after start.
+     *
+     * @return SQL
+     */
+    String getLoadSql() {
+        return loadSql;
+    }
+
+    static void setLocalInfileInputStream(Statement stmt, InputStream in) throws SQLException {
+        for (String className : INFILE_STATEMENTS) {
+            Class<?> statementClass;
+            try {
+                statementClass = Class.forName(className);
+            } catch (ClassNotFoundException e) {
+                continue;
+            }
+            if (stmt.isWrapperFor(statementClass)) {
+                try {
+                    statementClass.getMethod("setLocalInfileInputStream", InputStream.class).invoke(stmt.unwrap(statementClass), in);
+                    return;
+                } catch (InvocationTargetException e) {
+                    if (e.getCause() instanceof SQLException) {
+                        throw (SQLException) e.getCause();
+                    }
+                    throw new RuntimeException(e.getCause());
+                } catch (ReflectiveOperationException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        throw new IllegalStateException("JDBC driver does not support LOAD DATA LOCAL INFILE streams!");
+    }
+
+    @Override
+    public long onFinish() {
+        try {
+            load();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            restoreSession();
+        }
+        return processedRows;
+    }
+
+    @Override
+    public void onFailure(Exception ex) {
+        buffer.reset();
+        bufferedRows = 0;
+        try {
+            con.rollback();
+        } catch (SQLException e) {
+            LoggedUtils.ignore("Unable to rollback!", e);
+        }
+        restoreSession();
+    }
+
+    private void restoreSession() {
+        if (sessionChanged) {
+            sessionChanged = false;
+            setSession(1);
+        }
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(1024 * 64);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        void writeUtf8(String s) {
+            if (s.isEmpty()) return;
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            write(bytes, 0, bytes.length);
+        }
+    }
+}
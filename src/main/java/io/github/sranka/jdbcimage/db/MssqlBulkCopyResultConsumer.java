@@ -0,0 +1,382 @@
+package io.github.sranka.jdbcimage.db;
+
+import io.github.sranka.jdbcimage.LoggedUtils;
+import io.github.sranka.jdbcimage.ResultConsumer;
+import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowData;
+import io.github.sranka.jdbcimage.main.DBFacade;
+import io.github.sranka.jdbcimage.main.DBFacade.ColumnInfo;
+import io.github.sranka.jdbcimage.main.Mssql;
+import io.github.sranka.jdbcimage.main.Oracle;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Imports pushed data into a SQL Server table using the bulk copy API of the MSSQL JDBC driver.
+ * Rows are buffered and every {@link #BULK_BATCH_SIZE} rows (or {@link DbImportResultConsumer#COMMIT_BYTES} bytes)
+ * are written to the server by a bulk copy operation that reads them through an ISQLServerBulkData adapter.
+ * Identity values and nulls are kept, the table is locked during the operation. The transaction is committed
+ * after {@link DbImportResultConsumer#COMMIT_ROWS} rows or {@link DbImportResultConsumer#COMMIT_BYTES} bytes.
+ * The driver API is accessed using reflection.
+ */
+public class MssqlBulkCopyResultConsumer implements ResultConsumer<RowData> {
+    // rows written by a single bulk copy operation
+    public static int BULK_BATCH_SIZE = Integer.parseInt(System.getProperty("bulk.batch.size", "10000"));
+    // destination types that bulk copy does not support
+    private static final Set<String> UNSUPPORTED_TYPES = new LinkedHashSet<>(Arrays.asList(
+            "SQL_VARIANT", "GEOGRAPHY", "GEOMETRY", "HIERARCHYID", "TIMESTAMP"));
+
+    private final String tableName;
+    private final Connection con;
+    private final DBFacade db;
+    private final Map<String, ColumnInfo> actualColumns;
+    private final Consumer<ResultSetInfo> notifyOnStartFn;
+    // initialized in onStart
+    private ResultSetInfo info;
+    private int[] columnIndexes;
+    private ColumnInfo[] columnInfos;
+    private int[] fileTypes;
+    private int[] sourceTypes;
+    private int[] precisions;
+    private int[] scales;
+    // state
+    private final List<Object[]> rows = new ArrayList<>();
+    private long rowsBytes;
+    private long uncommittedRows;
+    private long uncommittedBytes;
+    private long processedRows = -1;
+
+    /**
+     * Creates SQL Server importer.
+     *
+     * @param tableName       table to insert to
+     * @param connection      connection to write rows to
+     * @param db              used to escape table and column names and to convert values
+     * @param actualColumns   actual columns, a key is lower case of the name
+     * @param notifyOnStartFn called when the import of table data starts
+     */
+    public MssqlBulkCopyResultConsumer(String tableName, Connection connection, DBFacade db, Map<String, ColumnInfo> actualColumns,
+                                       Consumer<ResultSetInfo> notifyOnStartFn) {
+        this.tableName = tableName;
+        this.con = connection;
+        this.db = db;
+        this.actualColumns = actualColumns;
+        this.notifyOnStartFn = notifyOnStartFn;
+    }
+
+    /**
+     * Gets a column that cannot be imported using bulk copy.
+     *
+     * @param columns columns of a table
+     * @return unsupported column or null when all columns are supported
+     */
+    public static ColumnInfo getUnsupportedColumn(Collection<ColumnInfo> columns) {
+        for (ColumnInfo column : columns) {
+            if (UNSUPPORTED_TYPES.contains(column.getDbType())) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void onStart(ResultSetInfo info) {
+        notifyOnStartFn.accept(info);
+        this.info = info;
+        this.processedRows = 0;
+        int count = 0;
+        for (String column : info.columns) {
+            if (actualColumns.containsKey(column.toLowerCase())) count++;
+        }
+        columnIndexes = new int[count];
+        columnInfos = new ColumnInfo[count];
+        fileTypes = new int[count];
+        sourceTypes = new int[count];
+        precisions = new int[count];
+        scales = new int[count];
+        StringBuilder columns = new StringBuilder();
+        int pos = 0;
+        for (int i = 0; i < info.columns.length; i++) {
+            ColumnInfo columnInfo = actualColumns.get(info.columns[i].toLowerCase());
+            if (columnInfo != null) {
+                if (pos != 0) columns.append(',');
+                columns.append(db.escapeColumnName(columnInfo.getName()));
+                columnIndexes[pos] = i;
+                columnInfos[pos] = columnInfo;
+                fileTypes[pos] = db.toSupportedSqlType(info.types[i]);
+                sourceTypes[pos] = toSourceType(fileTypes[pos], columnInfo.getDbType());
+                pos++;
+            }
+        }
+        if (count == 0) return;
+        // precision and scale of source values are taken from the destination columns
+        try (Statement stmt = con.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT " + columns + " FROM " + db.escapeTableName(tableName) + " WHERE 0=1")) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                for (int i = 0; i < count; i++) {
+                    precisions[i] = metaData.getPrecision(i + 1);
+                    scales[i] = metaData.getScale(i + 1);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Gets the JDBC type of source values of a column, as they are passed to the bulk copy.
+     *
+     * @param fileType type of the imported values
+     * @param dbType   type of the destination column
+     * @return JDBC type
+     */
+    static int toSourceType(int fileType, String dbType) {
+        switch (fileType) {
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                // streams are read into byte arrays
+                return Types.VARBINARY;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.CLOB:
+            case Types.OTHER:
+                // readers are read into strings
+                return Types.VARCHAR;
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.NCLOB:
+                return Types.NVARCHAR;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+                // short values
+                return Types.SMALLINT;
+            case Types.REAL:
+            case Types.FLOAT:
+                // float values
+                return Types.REAL;
+            case Oracle.Types.BINARY_DOUBLE:
+                return Types.DOUBLE;
+            case Types.BOOLEAN:
+                return Types.BIT;
+            case Types.TIMESTAMP:
+                // the value is converted to a string with offset, see Mssql.toSupportedValue
+                return "DATETIMEOFFSET".equals(dbType) ? Mssql.Types.DATETIMEOFFSET : Types.TIMESTAMP;
+            case Mssql.Types.SQL_VARIANT:
+                throw new IllegalStateException("Unable to bulk copy sql_variant values!");
+            default:
+                return fileType;
+        }
+    }
+
+    @Override
+    public void accept(RowData t) {
+        if (columnIndexes.length == 0) return; // no columns to write
+        try {
+            Object[] row = new Object[columnIndexes.length];
+            for (int i = 0; i < row.length; i++) {
+                Object value = t.values[columnIndexes[i]];
+                if (value != null) {
+                    value = db.toSupportedValue(fileTypes[i], columnInfos[i], DbImportResultConsumer.materialize(value));
+                    rowsBytes += DbImportResultConsumer.estimateValueSize(value);
+                }
+                row[i] = value;
+            }
+            rows.add(row);
+            processedRows++;
+            if (rows.size() >= BULK_BATCH_SIZE || rowsBytes >= DbImportResultConsumer.COMMIT_BYTES) {
+                writeRows();
+                if (uncommittedRows >= DbImportResultConsumer.COMMIT_ROWS || uncommittedBytes >= DbImportResultConsumer.COMMIT_BYTES) {
+                    commit();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (SQLException e) {
+            LoggedUtils.ignore("Unable to bulk copy!", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes buffered rows to the server using a single bulk copy operation.
+     */
+    private void writeRows() throws SQLException {
+        if (rows.isEmpty()) return;
+        String[] names = new String[columnInfos.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = columnInfos[i].getName();
+        }
+        BulkCopy.writeToServer(con, db.escapeTableName(tableName), createBulkData(names, sourceTypes, precisions, scales, rows));
+        uncommittedRows += rows.size();
+        uncommittedBytes += rowsBytes;
+        rows.clear();
+        rowsBytes = 0;
+    }
+
+    private void commit() throws SQLException {
+        con.commit();
+        uncommittedRows = 0;
+        uncommittedBytes = 0;
+    }
+
+    @Override
+    public long onFinish() {
+        try {
+            writeRows();
+            if (uncommittedRows > 0) {
+                commit();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return processedRows;
+    }
+
+    @Override
+    public void onFailure(Exception ex) {
+        rows.clear();
+        try {
+            con.rollback();
+        } catch (SQLException e) {
+            LoggedUtils.ignore("Unable to rollback!", e);
+        }
+        uncommittedRows = 0;
+        uncommittedBytes = 0;
+    }
+
+    /**
+     * Creates an ISQLServerBulkData adapter that reads the supplied rows, column ordinals start at 1.
+     *
+     * @param names      destination column names
+     * @param types      JDBC types of source values
+     * @param precisions precisions of columns
+     * @param scales     scales of columns
+     * @param rows       rows to read
+     * @return adapter
+     */
+    static Object createBulkData(String[] names, int[] types, int[] precisions, int[] scales, List<Object[]> rows) {
+        Class<?> bulkData;
+        try {
+            bulkData = Class.forName("com.microsoft.sqlserver.jdbc.ISQLServerBulkData");
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("MSSQL JDBC driver does not support bulk copy!", e);
+        }
+        Set<Integer> ordinals = new LinkedHashSet<>();
+        for (int i = 1; i <= names.length; i++) {
+            ordinals.add(i);
+        }
+        int[] position = {-1};
+        return Proxy.newProxyInstance(MssqlBulkCopyResultConsumer.class.getClassLoader(), new Class<?>[]{bulkData},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnOrdinals":
+                            return ordinals;
+                        case "getColumnName":
+                            return names[(Integer) args[0] - 1];
+                        case "getColumnType":
+                            return types[(Integer) args[0] - 1];
+                        case "getPrecision":
+                            return precisions[(Integer) args[0] - 1];
+                        case "getScale":
+                            return scales[(Integer) args[0] - 1];
+                        case "next":
+                            return ++position[0] < rows.size();
+                        case "getRowData":
+                            return rows.get(position[0]);
+                        case "toString":
+                            return "BulkData" + Arrays.toString(names);
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * Bulk copy operation of the MSSQL JDBC driver, accessed using reflection.
+     */
+    private static class BulkCopy {
+        private static Class<?> connectionClass;
+        private static Class<?> bulkCopyClass;
+        private static Class<?> optionsClass;
+        private static Class<?> bulkDataClass;
+
+        static void writeToServer(Connection con, String tableName, Object bulkData) throws SQLException {
+            try {
+                synchronized (BulkCopy.class) {
+                    if (bulkCopyClass == null) {
+                        connectionClass = Class.forName("com.microsoft.sqlserver.jdbc.ISQLServerConnection");
+                        optionsClass = Class.forName("com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions");
+                        bulkDataClass = Class.forName("com.microsoft.sqlserver.jdbc.ISQLServerBulkData");
+                        bulkCopyClass = Class.forName("com.microsoft.sqlserver.jdbc.SQLServerBulkCopy");
+                    }
+                }
+                Object options = optionsClass.getConstructor().newInstance();
+                invoke(optionsClass.getMethod("setKeepIdentity", boolean.class), options, true);
+                invoke(optionsClass.getMethod("setKeepNulls", boolean.class), options, true);
+                invoke(optionsClass.getMethod("setTableLock", boolean.class), options, true);
+                invoke(optionsClass.getMethod("setCheckConstraints", boolean.class), options, true);
+                invoke(optionsClass.getMethod("setBatchSize", int.class), options, BULK_BATCH_SIZE);
+                invoke(optionsClass.getMethod("setBulkCopyTimeout", int.class), options, 0);
+                Object bulkCopy = bulkCopyClass.getConstructor(Connection.class).newInstance(con.unwrap(connectionClass));
+                try {
+                    invoke(bulkCopyClass.getMethod("setBulkCopyOptions", optionsClass), bulkCopy, options);
+                    invoke(bulkCopyClass.getMethod("setDestinationTableName", String.class), bulkCopy, tableName);
+                    // source columns are mapped by name
+                    Method getColumnName = bulkDataClass.getMethod("getColumnName", int.class);
+                    Method addColumnMapping = bulkCopyClass.getMethod("addColumnMapping", int.class, String.class);
+                    for (Object ordinal : (Set<?>) invoke(bulkDataClass.getMethod("getColumnOrdinals"), bulkData)) {
+                        invoke(addColumnMapping, bulkCopy, ordinal, invoke(getColumnName, bulkData, ordinal));
+                    }
+                    invoke(bulkCopyClass.getMethod("writeToServer", bulkDataClass), bulkCopy, bulkData);
+                } finally {
+                    invoke(bulkCopyClass.getMethod("close"), bulkCopy);
+                }
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("MSSQL JDBC driver does not support bulk copy!", e);
+            }
+        }
+
+        private static Object invoke(Method method, Object target, Object... args) throws SQLException {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package io.github.sranka.jdbcimage.db;
+
+import io.github.sranka.jdbcimage.LoggedUtils;
+import io.github.sranka.jdbcimage.ResultConsumer;
+import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowData;
+import io.github.sranka.jdbcimage.main.DBFacade;
+import io.github.sranka.jdbcimage.main.DBFacade.ColumnInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Imports pushed data into a PostgreSQL table using <code>COPY ... FROM STDIN (FORMAT binary)</code>.
+ * Rows are encoded into the PGCOPY binary format and streamed through the CopyManager of the PostgreSQL
+ * JDBC driver, the driver API is accessed using reflection. Values are encoded by the type of the target
+ * column, see {@link #getUnsupportedColumn(Collection)}. The copy is ended and committed once it exceeds
+ * {@link DbImportResultConsumer#COMMIT_ROWS} rows or {@link DbImportResultConsumer#COMMIT_BYTES} bytes.
+ */
+public class PgCopyImportResultConsumer implements ResultConsumer<RowData> {
+    private static final byte[] PGCOPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final int FLUSH_SIZE = 1024 * 64;
+    // PostgreSQL epoch is 2000-01-01
+    private static final long PG_EPOCH_DAYS = LocalDate.of(2000, 1, 1).toEpochDay();
+    private static final long PG_EPOCH_MICROS = PG_EPOCH_DAYS * 24 * 3600 * 1_000_000L;
+
+    private final String tableName;
+    private final Connection con;
+    private final DBFacade db;
+    private final Map<String, ColumnInfo> actualColumns;
+    private final Consumer<ResultSetInfo> notifyOnStartFn;
+    // encoded rows that are not sent yet
+    private final Buffer buffer = new Buffer();
+    private final DataOutputStream data = new DataOutputStream(buffer);
+    // initialized in onStart
+    private String copySql;
+    private ResultSetInfo info;
+    private int[] columnIndexes;
+    private ColumnInfo[] columnInfos;
+    private FieldEncoder[] encoders;
+    // state
+    private CopyIn copy;
+    private long copiedRows;
+    private long copiedBytes;
+    private long processedRows = -1;
+
+    /**
+     * Creates PostgreSQL importer.
+     *
+     * @param tableName       table to insert to
+     * @param connection      connection to write rows to
+     * @param db              used to escape table and column names and to convert values
+     * @param actualColumns   actual columns, a key is lower case of the name
+     * @param notifyOnStartFn called when the import of table data starts
+     */
+    public PgCopyImportResultConsumer(String tableName, Connection connection, DBFacade db, Map<String, ColumnInfo> actualColumns,
+                                      Consumer<ResultSetInfo> notifyOnStartFn) {
+        this.tableName = tableName;
+        this.con = connection;
+        this.db = db;
+        this.actualColumns = actualColumns;
+        this.notifyOnStartFn = notifyOnStartFn;
+    }
+
+    /**
+     * Gets a column that cannot be encoded in the binary COPY format.
+     *
+     * @param columns columns of a table
+     * @return unsupported column or null when all columns are supported
+     */
+    public static ColumnInfo getUnsupportedColumn(Collection<ColumnInfo> columns) {
+        for (ColumnInfo column : columns) {
+            if (createEncoder(column.getDbType()) == null) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void onStart(ResultSetInfo info) {
+        notifyOnStartFn.accept(info);
+        this.info = info;
+        this.processedRows = 0;
+        int count = 0;
+        for (String column : info.columns) {
+            if (actualColumns.containsKey(column.toLowerCase())) count++;
+        }
+        columnIndexes = new int[count];
+        columnInfos = new ColumnInfo[count];
+        encoders = new FieldEncoder[count];
+        StringBuilder sql = new StringBuilder(200);
+        sql.append("COPY ").append(db.escapeTableName(tableName)).append(" (");
+        int pos = 0;
+        for (int i = 0; i < info.columns.length; i++) {
+            ColumnInfo columnInfo = actualColumns.get(info.columns[i].toLowerCase());
+            if (columnInfo != null) {
+                if (pos != 0) sql.append(',');
+                sql.append(db.escapeColumnName(columnInfo.getName()));
+                columnIndexes[pos] = i;
+                columnInfos[pos] = columnInfo;
+                encoders[pos] = createEncoder(columnInfo.getDbType());
+                if (encoders[pos] == null) {
+                    throw new IllegalStateException("Unable to copy column " + columnInfo.getName() + " of type " + columnInfo.getDbType());
+                }
+                pos++;
+            }
+        }
+        sql.append(") FROM STDIN (FORMAT binary)");
+        copySql = sql.toString();
+    }
+
+    @Override
+    public void accept(RowData t) {
+        if (encoders.length == 0) return; // no columns to write
+        try {
+            if (copy == null) {
+                startCopy();
+            }
+            data.writeShort(encoders.length);
+            for (int i = 0; i < encoders.length; i++) {
+                int index = columnIndexes[i];
+                Object value = t.values[index];
+                if (value == null) {
+                    data.writeInt(-1);
+                } else {
+                    int type = db.toSupportedSqlType(info.types[index]);
+                    value = db.toSupportedValue(type, columnInfos[i], DbImportResultConsumer.materialize(value));
+                    encoders[i].encode(value, data);
+                }
+            }
+            copiedRows++;
+            processedRows++;
+            if (buffer.size() >= FLUSH_SIZE) {
+                flush();
+                if (copiedRows >= DbImportResultConsumer.COMMIT_ROWS || copiedBytes >= DbImportResultConsumer.COMMIT_BYTES) {
+                    endCopy();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (SQLException e) {
+            LoggedUtils.ignore("Unable to copy!", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void startCopy() throws SQLException, IOException {
+        copy = new CopyIn(con, copySql);
+        copiedRows = 0;
+        copiedBytes = 0;
+        data.write(PGCOPY_SIGNATURE);
+        data.writeInt(0); // flags
+        data.writeInt(0); // header extension length
+    }
+
+    private void flush() throws SQLException {
+        copy.write(buffer.array(), buffer.size());
+        copiedBytes += buffer.size();
+        buffer.reset();
+    }
+
+    private void endCopy() throws SQLException, IOException {
+        data.writeShort(-1); // trailer
+        flush();
+        copy.end();
+        copy = null;
+        con.commit();
+    }
+
+    @Override
+    public long onFinish() {
+        if (copy != null) {
+            try {
+                endCopy();
+            } catch (SQLException | IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return processedRows;
+    }
+
+    @Override
+    public void onFailure(Exception ex) {
+        buffer.reset();
+        if (copy != null) {
+            copy.cancel();
+            copy = null;
+        }
+        try {
+            con.rollback();
+        } catch (SQLException e) {
+            LoggedUtils.ignore("Unable to rollback!", e);
+        }
+    }
+
+    /**
+     * Creates an encoder of values of the supplied PostgreSQL type.
+     *
+     * @param dbType upper case type name, as reported by the JDBC driver
+     * @return encoder or null if the type is not supported
+     */
+    static FieldEncoder createEncoder(String dbType) {
+        switch (dbType) {
+            case "INT2":
+            case "SMALLSERIAL":
+                return (v, o) -> {
+                    long val = toLong(v);
+                    if (val != (short) val) throw new IllegalStateException("Value out of range of " + dbType + ": " + v);
+                    o.writeInt(2);
+                    o.writeShort((int) val);
+                };
+            case "INT4":
+            case "SERIAL":
+                return (v, o) -> {
+                    long val = toLong(v);
+                    if (val != (int) val) throw new IllegalStateException("Value out of range of " + dbType + ": " + v);
+                    o.writeInt(4);
+                    o.writeInt((int) val);
+                };
+            case "INT8":
+            case "BIGSERIAL":
+                return (v, o) -> {
+                    o.writeInt(8);
+                    o.writeLong(toLong(v));
+                };
+            case "FLOAT4":
+                return (v, o) -> {
+                    o.writeInt(4);
+                    o.writeFloat(((Number) v).floatValue());
+                };
+            case "FLOAT8":
+                return (v, o) -> {
+                    o.writeInt(8);
+                    o.writeDouble(((Number) v).doubleValue());
+                };
+            case "BOOL":
+                return (v, o) -> {
+                    o.writeInt(1);
+                    o.writeByte((Boolean) v ? 1 : 0);
+                };
+            case "NUMERIC":
+                return (v, o) -> writeNumeric(v, o);
+            case "TEXT":
+            case "VARCHAR":
+            case "BPCHAR":
+            case "NAME":
+            case "JSON":
+                return (v, o) -> {
+                    byte[] bytes = v.toString().getBytes(StandardCharsets.UTF_8);
+                    o.writeInt(bytes.length);
+                    o.write(bytes);
+                };
+            case "JSONB":
+                return (v, o) -> {
+                    byte[] bytes = v.toString().getBytes(StandardCharsets.UTF_8);
+                    o.writeInt(bytes.length + 1);
+                    o.writeByte(1); // jsonb version
+                    o.write(bytes);
+                };
+            case "BYTEA":
+                return (v, o) -> {
+                    byte[] bytes = (byte[]) v;
+                    o.writeInt(bytes.length);
+                    o.write(bytes);
+                };
+            case "UUID":
+                return (v, o) -> {
+                    UUID val = v instanceof UUID ? (UUID) v : UUID.fromString(v.toString());
+                    o.writeInt(16);
+                    o.writeLong(val.getMostSignificantBits());
+                    o.writeLong(val.getLeastSignificantBits());
+                };
+            case "DATE":
+                return (v, o) -> {
+                    LocalDate val = v instanceof Timestamp ? ((Timestamp) v).toLocalDateTime().toLocalDate() : ((Date) v).toLocalDate();
+                    o.writeInt(4);
+                    o.writeInt((int) (val.toEpochDay() - PG_EPOCH_DAYS));
+                };
+            case "TIME":
+                return (v, o) -> {
+                    o.writeInt(8);
+                    o.writeLong(((Time) v).toLocalTime().toNanoOfDay() / 1000);
+                };
+            case "TIMESTAMP":
+                // local date time
+                return (v, o) -> {
+                    LocalDateTime val = v instanceof Timestamp ? ((Timestamp) v).toLocalDateTime() : ((Date) v).toLocalDate().atStartOfDay();
+                    o.writeInt(8);
+                    o.writeLong(val.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + val.getNano() / 1000 - PG_EPOCH_MICROS);
+                };
+            case "TIMESTAMPTZ":
+                // exact time
+                return (v, o) -> {
+                    Instant val = ((Timestamp) v).toInstant();
+                    o.writeInt(8);
+                    o.writeLong(val.getEpochSecond() * 1_000_000 + val.getNano() / 1000 - PG_EPOCH_MICROS);
+                };
+            default:
+                return null;
+        }
+    }
+
+    private static long toLong(Object v) {
+        if (v instanceof BigDecimal) {
+            return ((BigDecimal) v).longValueExact();
+        }
+        return ((Number) v).longValue();
+    }
+
+    /**
+     * Writes a numeric value, digits are stored in base 10000 with weight of the first digit.
+     */
+    private static void writeNumeric(Object v, DataOutputStream o) throws IOException {
+        if (v instanceof Double && ((Double) v).isNaN() || v instanceof Float && ((Float) v).isNaN()) {
+            o.writeInt(8);
+            o.writeShort(0); // digits
+            o.writeShort(0); // weight
+            o.writeShort(0xC000); // NaN
+            o.writeShort(0); // scale
+            return;
+        }
+        BigDecimal val = v instanceof BigDecimal ? (BigDecimal) v
+                : v instanceof Double || v instanceof Float ? new BigDecimal(v.toString())
+                : BigDecimal.valueOf(((Number) v).longValue());
+        BigDecimal abs = val.abs();
+        if (abs.scale() < 0) {
+            abs = abs.setScale(0);
+        }
+        int scale = abs.scale();
+        String digits = abs.unscaledValue().toString();
+        int intLength = digits.length() - scale;
+        String intPart = intLength > 0 ? digits.substring(0, intLength) : "";
+        String fracPart = intLength > 0 ? digits.substring(intLength) : zeros(-intLength) + digits;
+        // align to groups of 4 decimal digits around the decimal point
+        intPart = zeros((4 - intPart.length() % 4) % 4) + intPart;
+        fracPart = fracPart + zeros((4 - fracPart.length() % 4) % 4);
+        String all = intPart + fracPart;
+        short[] groups = new short[all.length() / 4];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = Short.parseShort(all.substring(i * 4, i * 4 + 4));
+        }
+        int weight = intPart.length() / 4 - 1;
+        int start = 0;
+        while (start < groups.length && groups[start] == 0) {
+            start++;
+            weight--;
+        }
+        int end = groups.length;
+        while (end > start && groups[end - 1] == 0) {
+            end--;
+        }
+        if (start == end) {
+            weight = 0;
+        }
+        o.writeInt(8 + 2 * (end - start));
+        o.writeShort(end - start);
+        o.writeShort(weight);
+        o.writeShort(val.signum() < 0 ? 0x4000 : 0);
+        o.writeShort(scale);
+        for (int i = start; i < end; i++) {
+            o.writeShort(groups[i]);
+        }
+    }
+
+    private static String zeros(int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) sb.append('0');
+        return sb.toString();
+    }
+
+    /**
+     * Encodes a not-null value as a field of a COPY tuple, the field length is written first.
+     */
+    @FunctionalInterface
+    interface FieldEncoder {
+        void encode(Object value, DataOutputStream out) throws IOException;
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(FLUSH_SIZE * 2);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * COPY FROM STDIN operation of the PostgreSQL JDBC driver, accessed using reflection.
+     */
+    private static class CopyIn {
+        private static Method getCopyAPI;
+        private static Method copyIn;
+        private static Method writeToCopy;
+        private static Method endCopy;
+        private static Method cancelCopy;
+        private final Object operation;
+
+        CopyIn(Connection con, String sql) throws SQLException {
+            try {
+                synchronized (CopyIn.class) {
+                    if (getCopyAPI == null) {
+                        Class<?> pgConnection = Class.forName("org.postgresql.PGConnection");
+                        Class<?> copyManager = Class.forName("org.postgresql.copy.CopyManager");
+                        Class<?> copyInClass = Class.forName("org.postgresql.copy.CopyIn");
+                        copyIn = copyManager.getMethod("copyIn", String.class);
+                        writeToCopy = copyInClass.getMethod("writeToCopy", byte[].class, int.class, int.class);
+                        endCopy = copyInClass.getMethod("endCopy");
+                        cancelCopy = copyInClass.getMethod("cancelCopy");
+                        getCopyAPI = pgConnection.getMethod("getCopyAPI");
+                    }
+                }
+                Object pgConnection = con.unwrap(getCopyAPI.getDeclaringClass());
+                operation = invoke(copyIn, invoke(getCopyAPI, pgConnection), sql);
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                throw new IllegalStateException("PostgreSQL JDBC driver does not support COPY!", e);
+            }
+        }
+
+        private static Object invoke(Method method, Object target, Object... args) throws SQLException {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        void write(byte[] data, int length) throws SQLException {
+            invoke(writeToCopy, operation, data, 0, length);
+        }
+
+        void end() throws SQLException {
+            invoke(endCopy, operation);
+        }
+
+        void cancel() {
+            try {
+                invoke(cancelCopy, operation);
+            } catch (Exception e) {
+                LoggedUtils.ignore("Unable to cancel copy!", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package io.github.sranka.jdbcimage.db;
+
+import io.github.sranka.jdbcimage.LoggedUtils;
+import io.github.sranka.jdbcimage.ResultConsumer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.UUID;
+
+/**
+ * Runs a PostgreSQL query using <code>COPY (query) TO STDOUT (FORMAT binary)</code> and pushes
+ * each row to the consumer. The binary rows are decoded into the same values that the PostgreSQL
+ * JDBC driver returns for the query, so the consumer produces the same output, but values are not
+ * materialized by the driver. Queries with columns of types that cannot be decoded here are run
+ * using JDBC, see {@link #isCopySupported(String)}. The driver API is accessed using reflection.
+ */
+public class PgCopyQueryRunner extends QueryRunner {
+    private static final byte[] PGCOPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    // PostgreSQL epoch is 2000-01-01
+    private static final long PG_EPOCH_DAYS = LocalDate.of(2000, 1, 1).toEpochDay();
+    private static final long PG_EPOCH_SECONDS = PG_EPOCH_DAYS * 24 * 3600;
+    private static final long MICROS_PER_DAY = 24L * 3600 * 1_000_000;
+
+    private final Connection con;
+    private final String query;
+    private boolean copied;
+
+    public PgCopyQueryRunner(Connection con, String query, ResultConsumer<ResultSet> consumer) {
+        super(con, query, consumer);
+        this.con = con;
+        this.query = query;
+    }
+
+    /**
+     * Checks whether values of the supplied PostgreSQL type are decoded from the binary COPY format.
+     *
+     * @param typeName type name as reported by the JDBC driver
+     * @return true if supported
+     */
+    public static boolean isCopySupported(String typeName) {
+        switch (typeName) {
+            case "int2":
+            case "int4":
+            case "serial":
+            case "int8":
+            case "bigserial":
+            case "float4":
+            case "float8":
+            case "bool":
+            case "numeric":
+            case "text":
+            case "varchar":
+            case "bpchar":
+            case "name":
+            case "json":
+            case "jsonb":
+            case "uuid":
+            case "bytea":
+            case "date":
+            case "time":
+            case "timestamp":
+            case "timestamptz":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected ResultSet executeQuery(Statement stmt) throws SQLException {
+        // metadata of the copied query
+        ResultSetMetaData metaData;
+        String[] typeNames;
+        boolean supported = true;
+        try (ResultSet empty = stmt.executeQuery(query + " LIMIT 0")) {
+            metaData = empty.getMetaData();
+            typeNames = new String[metaData.getColumnCount()];
+            for (int i = 0; i < typeNames.length; i++) {
+                typeNames[i] = metaData.getColumnTypeName(i + 1);
+                supported &= isCopySupported(typeNames[i]);
+            }
+        }
+        if (!supported) {
+            return super.executeQuery(stmt);
+        }
+        InputStream in = openCopyOut(con, "COPY (" + query + ") TO STDOUT (FORMAT binary)");
+        copied = true;
+        return createResultSet(in, metaData, typeNames);
+    }
+
+    /**
+     * Gets the last fetch size used.
+     *
+     * @return fetch size, 0 when the rows were copied
+     */
+    @Override
+    public int getFetchSize() {
+        return copied ? 0 : super.getFetchSize();
+    }
+
+    private static InputStream openCopyOut(Connection con, String sql) throws SQLException {
+        try {
+            Class<?> pgConnection = Class.forName("org.postgresql.PGConnection");
+            Class<?> copyStream = Class.forName("org.postgresql.copy.PGCopyInputStream");
+            return (InputStream) copyStream.getConstructor(pgConnection, String.class).newInstance(con.unwrap(pgConnection), sql);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("PostgreSQL JDBC driver does not support COPY!", e);
+        }
+    }
+
+    /**
+     * Creates a forward-only result set that reads rows of the binary COPY format.
+     *
+     * @param in        binary COPY data, closed with the result set
+     * @param metaData  metadata of copied columns
+     * @param typeNames PostgreSQL types of copied columns
+     * @return result set
+     */
+    static ResultSet createResultSet(InputStream in, ResultSetMetaData metaData, String[] typeNames) {
+        return (ResultSet) Proxy.newProxyInstance(PgCopyQueryRunner.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, new CopyResultSet(in, metaData, typeNames));
+    }
+
+    /**
+     * Decodes rows of the binary COPY format, the fields of a row are kept in a reusable buffer.
+     */
+    private static class CopyResultSet implements InvocationHandler {
+        private final DataInputStream in;
+        private final ResultSetMetaData metaData;
+        private final String[] typeNames;
+        // current row
+        private byte[] row = new byte[1024];
+        private final int[] offsets;
+        private final int[] lengths;
+        private boolean started;
+        private boolean finished;
+        private boolean wasNull;
+
+        CopyResultSet(InputStream in, ResultSetMetaData metaData, String[] typeNames) {
+            this.in = new DataInputStream(new BufferedInputStream(in, 1024 * 64));
+            this.metaData = metaData;
+            this.typeNames = typeNames;
+            this.offsets = new int[typeNames.length];
+            this.lengths = new int[typeNames.length];
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            try {
+                switch (method.getName()) {
+                    case "next":
+                        return next();
+                    case "wasNull":
+                        return wasNull;
+                    case "getMetaData":
+                        return metaData;
+                    case "setFetchSize":
+                        // rows are streamed
+                        return null;
+                    case "close":
+                        LoggedUtils.close(in);
+                        return null;
+                    case "isClosed":
+                        return finished;
+                    case "unwrap":
+                        throw new SQLException("Not a wrapper!");
+                    case "isWrapperFor":
+                        return false;
+                    case "toString":
+                        return "CopyResultSet" + Arrays.toString(typeNames);
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                }
+                if (args == null || !(args[0] instanceof Integer)) {
+                    throw new SQLException("Unsupported operation " + method.getName());
+                }
+                int column = (Integer) args[0] - 1;
+                wasNull = lengths[column] < 0;
+                Class<?> type = method.getReturnType();
+                if (wasNull) {
+                    if (type == long.class) return 0L;
+                    if (type == int.class) return 0;
+                    if (type == short.class) return (short) 0;
+                    if (type == double.class) return 0d;
+                    if (type == float.class) return 0f;
+                    if (type == boolean.class) return false;
+                    return null;
+                }
+                switch (method.getName()) {
+                    case "getLong":
+                        return getLong(column);
+                    case "getInt":
+                        return (int) getLong(column);
+                    case "getShort":
+                        return (short) getLong(column);
+                    case "getDouble":
+                        return getDouble(column);
+                    case "getFloat":
+                        return (float) getDouble(column);
+                    case "getBoolean":
+                        return row[offsets[column]] != 0;
+                    case "getBigDecimal":
+                        return getBigDecimal(column);
+                    case "getString":
+                    case "getNString":
+                        return getString(column);
+                    case "getBytes":
+                        return Arrays.copyOfRange(row, offsets[column], offsets[column] + lengths[column]);
+                    case "getBinaryStream":
+                        return new ByteArrayInputStream(Arrays.copyOfRange(row, offsets[column], offsets[column] + lengths[column]));
+                    case "getDate":
+                        return getDate(column);
+                    case "getTime":
+                        return getTime(column);
+                    case "getTimestamp":
+                        return getTimestamp(column, args.length > 1 ? (Calendar) args[1] : null);
+                    case "getObject":
+                        return getObject(column);
+                    default:
+                        throw new SQLException("Unsupported operation " + method.getName() + " of " + typeNames[column] + " column");
+                }
+            } catch (IOException e) {
+                throw new SQLException(e);
+            }
+        }
+
+        private boolean next() throws IOException, SQLException {
+            if (finished) return false;
+            if (!started) {
+                readHeader();
+                started = true;
+            }
+            short count;
+            try {
+                count = in.readShort();
+            } catch (EOFException e) {
+                count = -1;
+            }
+            if (count == -1) {
+                finished = true;
+                // read the end of the copy
+                if (in.read() >= 0) {
+                    throw new SQLException("Unexpected data after the PGCOPY trailer!");
+                }
+                return false;
+            }
+            if (count != offsets.length) {
+                throw new SQLException("Expected " + offsets.length + " fields, but " + count + " received!");
+            }
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                offsets[i] = position;
+                lengths[i] = length;
+                if (length > 0) {
+                    if (position + length > row.length) {
+                        row = Arrays.copyOf(row, Math.max(row.length * 2, position + length));
+                    }
+                    in.readFully(row, position, length);
+                    position += length;
+                }
+            }
+            return true;
+        }
+
+        private void readHeader() throws IOException, SQLException {
+            byte[] signature = new byte[PGCOPY_SIGNATURE.length];
+            in.readFully(signature);
+            if (!Arrays.equals(signature, PGCOPY_SIGNATURE)) {
+                throw new SQLException("Invalid PGCOPY signature!");
+            }
+            in.readInt(); // flags
+            int extension = in.readInt();
+            in.readFully(new byte[extension]);
+        }
+
+        private ByteBuffer field(int column) {
+            return ByteBuffer.wrap(row, offsets[column], lengths[column]);
+        }
+
+        private long getLong(int column) {
+            ByteBuffer data = field(column);
+            switch (lengths[column]) {
+                case 2:
+                    return data.getShort();
+                case 4:
+                    return data.getInt();
+                default:
+                    return data.getLong();
+            }
+        }
+
+        private double getDouble(int column) {
+            ByteBuffer data = field(column);
+            return lengths[column] == 4 ? data.getFloat() : data.getDouble();
+        }
+
+        private String getString(int column) {
+            if ("jsonb".equals(typeNames[column])) {
+                // skip version
+                return new String(row, offsets[column] + 1, lengths[column] - 1, StandardCharsets.UTF_8);
+            }
+            return new String(row, offsets[column], lengths[column], StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Decodes a numeric value, digits are stored in base 10000 with weight of the first digit.
+         */
+        private BigDecimal getBigDecimal(int column) throws SQLException {
+            ByteBuffer data = field(column);
+            int count = data.getShort();
+            int weight = data.getShort();
+            int sign = data.getShort() & 0xFFFF;
+            int scale = data.getShort();
+            if (sign != 0 && sign != 0x4000) {
+                throw new SQLException("Bad value for type BigDecimal: special numeric value " + Integer.toHexString(sign));
+            }
+            StringBuilder digits = new StringBuilder(count * 4 + 1);
+            digits.append('0');
+            for (int i = 0; i < count; i++) {
+                String group = String.valueOf(data.getShort());
+                for (int j = group.length(); j < 4; j++) digits.append('0');
+                digits.append(group);
+            }
+            BigDecimal retVal = new BigDecimal(new BigInteger(digits.toString()), 4 * (count - weight - 1))
+                    .setScale(scale, RoundingMode.UNNECESSARY);
+            return sign == 0x4000 ? retVal.negate() : retVal;
+        }
+
+        private Date getDate(int column) throws SQLException {
+            int days = field(column).getInt();
+            if (days == Integer.MAX_VALUE || days == Integer.MIN_VALUE) {
+                throw new SQLException("Infinite date value is not supported!");
+            }
+            return Date.valueOf(LocalDate.ofEpochDay(PG_EPOCH_DAYS + days));
+        }
+
+        private Time getTime(int column) {
+            long micros = field(column).getLong();
+            if (micros == MICROS_PER_DAY) {
+                // 24:00:00, the driver returns the midnight of the next day
+                return new Time(Timestamp.valueOf(LocalDate.ofEpochDay(1).atStartOfDay()).getTime());
+            }
+            return Time.valueOf(LocalTime.ofNanoOfDay(micros * 1000));
+        }
+
+        private Timestamp getTimestamp(int column, Calendar calendar) throws SQLException {
+            long micros = field(column).getLong();
+            if (micros == Long.MAX_VALUE || micros == Long.MIN_VALUE) {
+                throw new SQLException("Infinite timestamp value is not supported!");
+            }
+            long seconds = PG_EPOCH_SECONDS + Math.floorDiv(micros, 1_000_000L);
+            int nanos = (int) Math.floorMod(micros, 1_000_000L) * 1000;
+            if ("timestamptz".equals(typeNames[column])) {
+                // exact time
+                return Timestamp.from(Instant.ofEpochSecond(seconds, nanos));
+            }
+            // local date time, interpreted in the time zone of the calendar
+            LocalDateTime value = LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+            if (calendar == null) {
+                return Timestamp.valueOf(value);
+            }
+            return Timestamp.from(value.atZone(calendar.getTimeZone().toZoneId()).toInstant());
+        }
+
+        private Object getObject(int column) throws SQLException {
+            switch (typeNames[column]) {
+                case "uuid":
+                    ByteBuffer data = field(column);
+                    return new UUID(data.getLong(), data.getLong());
+                case "json":
+                case "jsonb":
+                    return createPGobject(typeNames[column], getString(column));
+                default:
+                    throw new SQLException("Unsupported operation getObject of " + typeNames[column] + " column");
+            }
+        }
+
+        private static Object createPGobject(String type, String value) throws SQLException {
+            try {
+                Class<?> pgObject = Class.forName("org.postgresql.util.PGobject");
+                Object retVal = pgObject.getConstructor().newInstance();
+                pgObject.getMethod("setType", String.class).invoke(retVal, type);
+                pgObject.getMethod("setValue", String.class).invoke(retVal, value);
+                return retVal;
+            } catch (ReflectiveOperationException e) {
+                throw new SQLException("Unable to create PGobject!", e);
+            }
+        }
+    }
+}
@@ -6,21 +6,40 @@ import io.github.sranka.jdbcimage.ResultSetInfo;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.function.LongSupplier;
 
 
 /**
  * Runs a specified query and pushes each row to a specified consumer.
+ * The fetch size is estimated from the result set metadata and a memory budget,
+ * it is then adjusted using the actual size of processed rows.
  */
 public class QueryRunner implements Runnable {
+    // initial fetch size, until the result set metadata are known
     public static int FETCH_SIZE = 100;
+    // fixed fetch size, 0 to compute it from the memory budget
+    public static int FIXED_FETCH_SIZE = Integer.parseInt(System.getProperty("fetch.size", "0"));
+    // approximate memory of fetched rows in bytes
+    public static long FETCH_MEMORY = Long.parseLong(System.getProperty("fetch.memory", String.valueOf(8 * 1024 * 1024)));
+    public static int MIN_FETCH_SIZE = 10;
+    public static int MAX_FETCH_SIZE = 10000;
+    // estimated size of a value with unknown or unlimited width, such as LOBs
+    private static final int UNKNOWN_VALUE_SIZE = 1024 * 4;
+    private static final int MAX_VALUE_SIZE = 1024 * 64;
 
     private final Connection con;
     private final String query;
     private final ResultConsumer<ResultSet> consumer;
+    // supplies bytes produced by the consumer, used to adjust fetch size
+    private LongSupplier bytesCounter;
     // rows processed
     private long rows = 0;
+    private int fetchSize = FETCH_SIZE;
+    private boolean adaptive = FIXED_FETCH_SIZE <= 0;
 
     public QueryRunner(Connection con, String query, ResultConsumer<ResultSet> consumer) {
         this.con = con;
@@ -28,14 +47,74 @@ public class QueryRunner implements Runnable {
         this.consumer = consumer;
     }
 
+    /**
+     * Estimates the fetch size from the declared widths of result set columns.
+     *
+     * @param metaData result set metadata
+     * @return fetch size
+     */
+    public static int estimateFetchSize(ResultSetMetaData metaData) throws SQLException {
+        long rowSize = 16;
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            rowSize += estimateValueSize(metaData.getColumnType(i), metaData.getPrecision(i));
+        }
+        return toFetchSize(rowSize);
+    }
+
+    private static int estimateValueSize(int type, int precision) {
+        switch (type) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return 16;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return 24;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.BINARY:
+            case Types.VARBINARY:
+                // unlimited types report huge or no precision
+                return precision <= 0 || precision > MAX_VALUE_SIZE ? UNKNOWN_VALUE_SIZE : precision;
+            default:
+                return UNKNOWN_VALUE_SIZE;
+        }
+    }
+
+    private static int toFetchSize(long rowSize) {
+        return (int) Math.max(MIN_FETCH_SIZE, Math.min(MAX_FETCH_SIZE, FETCH_MEMORY / Math.max(1, rowSize)));
+    }
+
     public void run() {
         try (Statement stmt = createStatement()) {
-            stmt.setFetchSize(FETCH_SIZE);
+            stmt.setFetchSize(FIXED_FETCH_SIZE > 0 ? FIXED_FETCH_SIZE : FETCH_SIZE);
             try (ResultSet rs = executeQuery(stmt)) {
-                consumer.onStart(new ResultSetInfo(rs.getMetaData()));
+                ResultSetMetaData metaData = rs.getMetaData();
+                if (adaptive) {
+                    setFetchSize(rs, estimateFetchSize(metaData));
+                } else {
+                    fetchSize = FIXED_FETCH_SIZE;
+                }
+                consumer.onStart(new ResultSetInfo(metaData));
+                long checkAt = fetchSize;
                 while (rs.next()) {
                     rows++;
                     consumer.accept(rs);
+                    if (rows == checkAt) {
+                        adjustFetchSize(rs);
+                        checkAt += fetchSize;
+                    }
                 }
                 consumer.onFinish();
             }
@@ -51,6 +130,31 @@ public class QueryRunner implements Runnable {
         }
     }
 
+    /**
+     * Adjusts the fetch size using the average size of processed rows.
+     */
+    private void adjustFetchSize(ResultSet rs) {
+        if (!adaptive || bytesCounter == null) {
+            return;
+        }
+        int newSize = toFetchSize(bytesCounter.getAsLong() / rows);
+        // ignore small changes
+        if (newSize > fetchSize * 5 / 4 || newSize < fetchSize * 3 / 4) {
+            setFetchSize(rs, newSize);
+        }
+    }
+
+    private void setFetchSize(ResultSet rs, int size) {
+        try {
+            rs.setFetchSize(size);
+            fetchSize = size;
+        } catch (SQLException e) {
+            // keep the statement fetch size
+            LoggedUtils.ignore("Unable to change fetch size!", e);
+            adaptive = false;
+        }
+    }
+
     protected Statement createStatement() throws SQLException {
         return con.createStatement();
     }
@@ -62,4 +166,22 @@ public class QueryRunner implements Runnable {
     public long getProcessedRows() {
         return rows;
     }
+
+    /**
+     * Gets the last fetch size used.
+     *
+     * @return fetch size
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Sets a supplier of bytes produced by the consumer so far, it is used to adjust the fetch size to actual row sizes.
+     *
+     * @param bytesCounter counter
+     */
+    public void setBytesCounter(LongSupplier bytesCounter) {
+        this.bytesCounter = bytesCounter;
+    }
 }
@@ -0,0 +1,458 @@
+package io.github.sranka.jdbcimage.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import io.github.sranka.jdbcimage.RowBatch;
+import io.github.sranka.jdbcimage.main.Mssql;
+import io.github.sranka.jdbcimage.main.Oracle;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.github.sranka.jdbcimage.kryo.KryoResultSetConsumer.*;
+
+/**
+ * Reads row groups of the columnar format 2.0, see {@link KryoColumnarResultSetConsumer}.
+ * Every column of a row group is decoded at once into a vector, numeric columns into primitive arrays.
+ */
+class ColumnarRowGroupReader {
+    private static final Map<Integer, Class<?>> SQL_VARIANT_TYPE_TO_CLASS = new HashMap<>();
+
+    static {
+        SQL_VARIANT_CLASS_TO_TYPE.forEach((k, v) -> SQL_VARIANT_TYPE_TO_CLASS.put(v, k));
+    }
+
+    private final Kryo kryo;
+    private final Input in;
+    private final KryoInputStreamSerializer blobSerializer;
+    private final KryoReaderSerializer clobSerializer;
+    // DATE/TIME/TIMESTAMP values are encoded as numbers
+    private final boolean temporal;
+    private final ColumnVector[] columns;
+    // column data of the current row group
+    private final Input[] data;
+    private final byte[][] nulls;
+    private final boolean[] hasNulls;
+    private int rows;
+    private int row;
+    private boolean finished;
+
+    ColumnarRowGroupReader(Kryo kryo, Input in, int[] types, KryoInputStreamSerializer blobSerializer,
+                           KryoReaderSerializer clobSerializer, boolean temporal) {
+        this.kryo = kryo;
+        this.in = in;
+        this.blobSerializer = blobSerializer;
+        this.clobSerializer = clobSerializer;
+        this.temporal = temporal;
+        this.columns = new ColumnVector[types.length];
+        this.data = new Input[types.length];
+        this.nulls = new byte[types.length][];
+        this.hasNulls = new boolean[types.length];
+        for (int i = 0; i < types.length; i++) {
+            columns[i] = createVector(types[i]);
+            data[i] = new Input(1024);
+            nulls[i] = new byte[0];
+        }
+    }
+
+    /**
+     * Fills in values of the next row.
+     *
+     * @param values     values to fill in
+     * @param connection connection to create LOBs, can be null
+     * @return false when there are no more rows
+     */
+    boolean fillData(Object[] values, Connection connection) {
+        if (row == rows && !readGroup(connection)) {
+            return false;
+        }
+        int nullByte = row >> 3;
+        byte nullBit = (byte) (1 << (row & 7));
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = hasNulls[i] && (nulls[i][nullByte] & nullBit) != 0 ? null : columns[i].get(row);
+        }
+        row++;
+        return true;
+    }
+
+    /**
+     * Fills the next rows into the batch, primitive values are copied without boxing.
+     *
+     * @param batch      batch to fill, rows are appended
+     * @param connection connection to create LOBs, can be null
+     * @return false when there are no more rows
+     */
+    boolean fillBatch(RowBatch batch, Connection connection) {
+        while (!batch.isFull()) {
+            if (row == rows && !readGroup(connection)) {
+                return false;
+            }
+            int count = Math.min(rows - row, batch.capacity - batch.size);
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].copyTo(batch, i, row, batch.size, count);
+                if (hasNulls[i]) {
+                    for (int j = 0; j < count; j++) {
+                        if (isNull(nulls[i], row + j)) batch.setNull(i, batch.size + j);
+                    }
+                }
+            }
+            row += count;
+            batch.size += count;
+        }
+        return true;
+    }
+
+    private boolean readGroup(Connection connection) {
+        if (finished) return false;
+        rows = in.readVarInt(true);
+        row = 0;
+        if (rows == 0) {
+            finished = true;
+            return false;
+        }
+        int nullBytes = (rows + 7) / 8;
+        for (int i = 0; i < columns.length; i++) {
+            hasNulls[i] = in.readBoolean();
+            if (hasNulls[i]) {
+                if (nulls[i].length < nullBytes) {
+                    nulls[i] = new byte[nullBytes];
+                }
+                in.readBytes(nulls[i], 0, nullBytes);
+            }
+            int length = in.readVarInt(true);
+            if (columns[i].isStreamed()) {
+                // LOB values are decoded from the stream, so that large values are spilled rather than buffered
+                columns[i].read(in, rows, hasNulls[i] ? nulls[i] : null, connection);
+                continue;
+            }
+            byte[] buffer = data[i].getBuffer();
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readBytes(buffer, 0, length);
+            data[i].setBuffer(buffer, 0, length);
+            columns[i].read(data[i], rows, hasNulls[i] ? nulls[i] : null, connection);
+        }
+        return true;
+    }
+
+    private static boolean isNull(byte[] nulls, int row) {
+        return nulls != null && (nulls[row >> 3] & (1 << (row & 7))) != 0;
+    }
+
+    private ColumnVector createVector(int type) {
+        switch (type) {
+            case Types.BIGINT:
+                return new LongVector();
+            case Types.INTEGER:
+                return new IntVector();
+            case Types.TINYINT:
+            case Types.SMALLINT:
+                return new ShortVector();
+            case Types.DOUBLE:
+            case Oracle.Types.BINARY_DOUBLE:
+                return new DoubleVector();
+            case Types.REAL:
+            case Types.FLOAT:
+                return new FloatVector();
+            case Types.BOOLEAN:
+            case Types.BIT:
+                return new BooleanVector();
+            case Types.BINARY:
+                return new ObjectVector((in, con) -> in.readBytes(in.readVarInt(true)));
+            case Types.CHAR:
+            case Types.NCHAR:
+            case Types.VARCHAR:
+            case Types.NVARCHAR:
+                return new ObjectVector((in, con) -> in.readString());
+            case Types.DATE:
+                if (temporal) {
+                    return new ObjectVector((in, con) -> TemporalValues.readDate(in));
+                }
+                return new ObjectVector((in, con) -> Date.valueOf(in.readString()));
+            case Types.TIME:
+                if (temporal) {
+                    return new ObjectVector((in, con) -> TemporalValues.readTime(in));
+                }
+                return new ObjectVector((in, con) -> Time.valueOf(in.readString()));
+            case Types.TIMESTAMP:
+                if (temporal) {
+                    return new ObjectVector((in, con) -> TemporalValues.readTimestamp(in, in.readByte()));
+                }
+                return new ObjectVector((in, con) -> {
+                    byte timeType = in.readByte();
+                    switch (timeType) {
+                        case TIME_TYPE_EXACT:
+                            return readExactTimestamp(in);
+                        case TIME_TYPE_LOCAL:
+                            return Timestamp.valueOf(in.readString());
+                        default:
+                            throw new IllegalStateException("Unsupported time type: " + timeType);
+                    }
+                });
+            case Mssql.Types.DATETIMEOFFSET:
+                if (temporal) {
+                    return new ObjectVector((in, con) -> TemporalValues.readExactTimestamp(in));
+                }
+                return new ObjectVector((in, con) -> readExactTimestamp(in));
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return new ObjectVector((in, con) -> kryo.readObject(in, BigDecimal.class));
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return new ObjectVector(blobSerializer::deserializeBlobChunks, true);
+            case Types.LONGVARCHAR:
+            case Types.CLOB:
+                return new ObjectVector(clobSerializer::deserializeClobChunks, true);
+            case Types.LONGNVARCHAR:
+            case Types.NCLOB:
+                return new ObjectVector(clobSerializer::deserializeNClobChunks, true);
+            case Mssql.Types.SQL_VARIANT:
+            case Types.OTHER:
+                return new ObjectVector((in, con) -> {
+                    int valType = in.readInt();
+                    Class<?> clazz = SQL_VARIANT_TYPE_TO_CLASS.get(valType);
+                    if (clazz == null) {
+                        throw new IllegalStateException("Unable to deserialize object for SQL type: " + type + "/" + valType);
+                    }
+                    return kryo.readObject(in, clazz);
+                });
+            default:
+                throw new IllegalStateException("Unable to deserialize object for SQL type: " + type);
+        }
+    }
+
+    private static Timestamp readExactTimestamp(Input in) {
+        Timestamp val = new Timestamp(in.readLong());
+        val.setNanos(in.readInt());
+        return val;
+    }
+
+    /**
+     * Decoded values of a column in a row group.
+     */
+    private abstract static class ColumnVector {
+        /**
+         * Decodes all values of the column.
+         *
+         * @param in         column data
+         * @param rows       rows in the group
+         * @param nulls      null bitmap, null when there are no nulls
+         * @param connection connection to create LOBs, can be null
+         */
+        abstract void read(Input in, int rows, byte[] nulls, Connection connection);
+
+        /**
+         * Gets a not-null value.
+         *
+         * @param row row in the group
+         * @return value
+         */
+        abstract Object get(int row);
+
+        /**
+         * Copies values to a vector of the batch, values of null rows are undefined.
+         *
+         * @param batch  target batch
+         * @param column column of the batch
+         * @param from   first row in the group
+         * @param to     first row in the batch
+         * @param count  number of rows to copy
+         */
+        abstract void copyTo(RowBatch batch, int column, int from, int to, int count);
+
+        /**
+         * Checks whether values are decoded directly from the input stream, without buffering the column data.
+         *
+         * @return true for LOB columns
+         */
+        boolean isStreamed() {
+            return false;
+        }
+    }
+
+    private static class LongVector extends ColumnVector {
+        private long[] values = new long[0];
+
+        @Override
+        void read(Input in, int rows, byte[] nulls, Connection connection) {
+            if (values.length < rows) values = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                if (!isNull(nulls, i)) values[i] = in.readLong();
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void copyTo(RowBatch batch, int column, int from, int to, int count) {
+            System.arraycopy(values, from, batch.longs[column], to, count);
+        }
+    }
+
+    private static class IntVector extends ColumnVector {
+        private int[] values = new int[0];
+
+        @Override
+        void read(Input in, int rows, byte[] nulls, Connection connection) {
+            if (values.length < rows) values = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                if (!isNull(nulls, i)) values[i] = in.readInt();
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void copyTo(RowBatch batch, int column, int from, int to, int count) {
+            System.arraycopy(values, from, batch.ints[column], to, count);
+        }
+    }
+
+    private static class ShortVector extends ColumnVector {
+        private short[] values = new short[0];
+
+        @Override
+        void read(Input in, int rows, byte[] nulls, Connection connection) {
+            if (values.length < rows) values = new short[rows];
+            for (int i = 0; i < rows; i++) {
+                if (!isNull(nulls, i)) values[i] = in.readShort();
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void copyTo(RowBatch batch, int column, int from, int to, int count) {
+            System.arraycopy(values, from, batch.shorts[column], to, count);
+        }
+    }
+
+    private static class DoubleVector extends ColumnVector {
+        private double[] values = new double[0];
+
+        @Override
+        void read(Input in, int rows, byte[] nulls, Connection connection) {
+            if (values.length < rows) values = new double[rows];
+            for (int i = 0; i < rows; i++) {
+                if (!isNull(nulls, i)) values[i] = in.readDouble();
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void copyTo(RowBatch batch, int column, int from, int to, int count) {
+            System.arraycopy(values, from, batch.doubles[column], to, count);
+        }
+    }
+
+    private static class FloatVector extends ColumnVector {
+        private float[] values = new float[0];
+
+        @Override
+        void read(Input in, int rows, byte[] nulls, Connection connection) {
+            if (values.length < rows) values = new float[rows];
+            for (int i = 0; i < rows; i++) {
+                if (!isNull(nulls, i)) values[i] = in.readFloat();
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void copyTo(RowBatch batch, int column, int from, int to, int count) {
+            System.arraycopy(values, from, batch.floats[column], to, count);
+        }
+    }
+
+    private static class BooleanVector extends ColumnVector {
+        private boolean[] values = new boolean[0];
+
+        @Override
+        void read(Input in, int rows, byte[] nulls, Connection connection) {
+            if (values.length < rows) values = new boolean[rows];
+            for (int i = 0; i < rows; i++) {
+                if (!isNull(nulls, i)) values[i] = in.readBoolean();
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void copyTo(RowBatch batch, int column, int from, int to, int count) {
+            System.arraycopy(values, from, batch.booleans[column], to, count);
+        }
+    }
+
+    private static class ObjectVector extends ColumnVector {
+        private final ValueReader reader;
+        private final boolean streamed;
+        private Object[] values = new Object[0];
+
+        ObjectVector(ValueReader reader) {
+            this(reader, false);
+        }
+
+        ObjectVector(ValueReader reader, boolean streamed) {
+            this.reader = reader;
+            this.streamed = streamed;
+        }
+
+        @Override
+        boolean isStreamed() {
+            return streamed;
+        }
+
+        @Override
+        void read(Input in, int rows, byte[] nulls, Connection connection) {
+            if (values.length < rows) values = new Object[rows];
+            for (int i = 0; i < rows; i++) {
+                values[i] = isNull(nulls, i) ? null : reader.read(in, connection);
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void copyTo(RowBatch batch, int column, int from, int to, int count) {
+            System.arraycopy(values, from, batch.objects[column], to, count);
+        }
+    }
+
+    /**
+     * Reads a single not-null value.
+     */
+    @FunctionalInterface
+    private interface ValueReader {
+        Object read(Input in, Connection connection);
+    }
+}
@@ -13,7 +13,13 @@ import java.sql.SQLException;
  * Kryo serializer for JDBC BLOB instances.
  */
 public class KryoBlobSerializer extends Serializer<Blob> {
-    public static KryoBlobSerializer INSTANCE = new KryoBlobSerializer();
+    public static KryoBlobSerializer INSTANCE = new KryoBlobSerializer(KryoInputStreamSerializer.INSTANCE);
+
+    private final KryoInputStreamSerializer streamSerializer;
+
+    public KryoBlobSerializer(KryoInputStreamSerializer streamSerializer) {
+        this.streamSerializer = streamSerializer;
+    }
 
     @Override
     public Blob read(Kryo kryo, Input in, Class<Blob> type) {
@@ -25,7 +31,7 @@ public class KryoBlobSerializer extends Serializer<Blob> {
     public void write(Kryo kryo, Output out, Blob value) {
         try {
             InputStream in = value.getBinaryStream();
-            KryoInputStreamSerializer.INSTANCE.write(kryo, out, in);
+            streamSerializer.write(kryo, out, in);
             // free the blob
             value.free();
         } catch (SQLException e) {
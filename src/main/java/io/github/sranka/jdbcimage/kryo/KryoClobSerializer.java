@@ -13,7 +13,14 @@ import java.sql.SQLException;
  * Kryo serializer for JDBC BLOB instances.
  */
 public class KryoClobSerializer extends Serializer<Clob> {
-    public static KryoClobSerializer INSTANCE = new KryoClobSerializer();
+    public static KryoClobSerializer INSTANCE = new KryoClobSerializer(KryoReaderSerializer.INSTANCE);
+    public static KryoClobSerializer UTF8_INSTANCE = new KryoClobSerializer(KryoReaderSerializer.UTF8_INSTANCE);
+
+    private final KryoReaderSerializer readerSerializer;
+
+    public KryoClobSerializer(KryoReaderSerializer readerSerializer) {
+        this.readerSerializer = readerSerializer;
+    }
 
     @Override
     public Clob read(Kryo kryo, Input in, Class<Clob> type) {
@@ -25,7 +32,7 @@ public class KryoClobSerializer extends Serializer<Clob> {
     public void write(Kryo kryo, Output out, Clob value) {
         try {
             Reader in = value.getCharacterStream();
-            KryoReaderSerializer.INSTANCE.write(kryo, out, in);
+            readerSerializer.write(kryo, out, in);
             // free the blob
             value.free();
         } catch (SQLException e) {
@@ -0,0 +1,370 @@
+package io.github.sranka.jdbcimage.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.FastOutput;
+import com.esotericsoftware.kryo.io.Output;
+import io.github.sranka.jdbcimage.LobStore;
+import io.github.sranka.jdbcimage.ResultConsumer;
+import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.main.Mssql;
+import io.github.sranka.jdbcimage.main.Oracle;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static io.github.sranka.jdbcimage.kryo.KryoResultSetConsumer.*;
+
+/**
+ * Serializes the result set into the supplied output stream using the columnar format 2.0.
+ * Rows are buffered into row groups, a row group is written column by column:
+ * <pre>
+ * header:    version "2.0", varint features, ResultSetInfo
+ * row group: varint rowCount (0 ends the stream), then for every column:
+ *            boolean hasNulls, null bitmap of (rowCount+7)/8 bytes when hasNulls,
+ *            varint length, data of non-null values
+ * </pre>
+ * Numeric values are written as fixed-width primitives, so that values of a column
+ * compress well together. Values of other types are written in the same way as in format 1.2
+ * with the same features, but without null markers. A row group is kept in memory until it is written,
+ * see {@link #GROUP_ROWS} and {@link #GROUP_BYTES}; column data over {@link #GROUP_BYTES} (such as large
+ * LOB values) are spilled to temporary files.
+ */
+public class KryoColumnarResultSetConsumer implements ResultConsumer<ResultSet> {
+    public static final String VERSION_2_0 = "2.0";
+    // maximum rows in a row group
+    public static int GROUP_ROWS = Integer.parseInt(System.getProperty("group.rows", "4096"));
+    // a row group is written when its data exceed the size in bytes
+    public static int GROUP_BYTES = Integer.parseInt(System.getProperty("group.bytes", String.valueOf(4 * 1024 * 1024)));
+
+    // serialization
+    private final Kryo kryo;
+    private final Output out;
+    private KryoInputStreamSerializer streamSerializer = KryoInputStreamSerializer.INSTANCE;
+    private KryoBlobSerializer blobSerializer = KryoBlobSerializer.INSTANCE;
+    private KryoClobSerializer clobSerializer = KryoClobSerializer.UTF8_INSTANCE;
+    private LobStore lobStore;
+
+    // initialized in onStart
+    private ColumnWriter[] writers;
+    private SpillingOutput[] data;
+    private byte[][] nulls;
+    private boolean[] hasNulls;
+    private int groupRows;
+    private long processedRows = -1;
+    private long writtenBytes;
+
+    public KryoColumnarResultSetConsumer(OutputStream out) {
+        super();
+        this.kryo = KryoSetup.getKryo();
+        this.out = new FastOutput(out);
+    }
+
+    /**
+     * Sets a store to write LOBs over {@link LobStore#STORE_BYTES} to, it has to be called before onStart.
+     *
+     * @param lobStore LOB store, the caller closes it
+     */
+    public void setLobStore(LobStore lobStore) {
+        this.lobStore = lobStore;
+    }
+
+    @Override
+    public void onStart(ResultSetInfo info) {
+        this.processedRows = 0;
+        if (lobStore != null) {
+            streamSerializer = new KryoInputStreamSerializer(lobStore);
+            blobSerializer = new KryoBlobSerializer(streamSerializer);
+            clobSerializer = new KryoClobSerializer(new KryoReaderSerializer(true, lobStore));
+        }
+        int columnCount = info.columns.length;
+        writers = new ColumnWriter[columnCount];
+        data = new SpillingOutput[columnCount];
+        nulls = new byte[columnCount][(GROUP_ROWS + 7) / 8];
+        hasNulls = new boolean[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            writers[i] = createWriter(info.types[i]);
+            data[i] = new SpillingOutput(1024, GROUP_BYTES);
+        }
+        kryo.writeObject(out, VERSION_2_0);
+        out.writeVarInt(lobStore != null ? FEATURES | FEATURE_LOB_STORE : FEATURES, true);
+        kryo.writeObject(out, info); // write header
+    }
+
+    @Override
+    public void accept(ResultSet rs) {
+        try {
+            int nullByte = groupRows >> 3;
+            byte nullBit = (byte) (1 << (groupRows & 7));
+            for (int i = 0; i < writers.length; i++) {
+                if (!writers[i].write(rs, i + 1, data[i])) {
+                    nulls[i][nullByte] |= nullBit;
+                    hasNulls[i] = true;
+                }
+            }
+        } catch (SQLException e) {
+            //Unable to recover from any error
+            throw new RuntimeException(e);
+        }
+        processedRows++;
+        if (++groupRows >= GROUP_ROWS || groupBytes() >= GROUP_BYTES) {
+            writeGroup();
+        }
+    }
+
+    private long groupBytes() {
+        long retVal = 0;
+        for (Output o : data) {
+            retVal += o.total();
+        }
+        return retVal;
+    }
+
+    private void writeGroup() {
+        long start = out.total();
+        out.writeVarInt(groupRows, true);
+        int nullBytes = (groupRows + 7) / 8;
+        for (int i = 0; i < writers.length; i++) {
+            out.writeBoolean(hasNulls[i]);
+            if (hasNulls[i]) {
+                out.writeBytes(nulls[i], 0, nullBytes);
+                Arrays.fill(nulls[i], 0, nullBytes, (byte) 0);
+                hasNulls[i] = false;
+            }
+            long length = data[i].total();
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Column data of a row group exceed 2GB, use a LOB store (-lob.store) to write large LOBs");
+            }
+            out.writeVarInt((int) length, true);
+            data[i].writeTo(out);
+        }
+        writtenBytes += out.total() - start;
+        groupRows = 0;
+    }
+
+    @Override
+    public void onFailure(Exception e) {
+        if (data == null) return;
+        // delete spilled column data
+        for (SpillingOutput o : data) {
+            o.close();
+        }
+    }
+
+    @Override
+    public long onFinish() {
+        if (groupRows > 0) {
+            writeGroup();
+        }
+        // end of row groups
+        out.writeVarInt(0, true);
+        // flush buffer
+        out.flush();
+
+        return processedRows;
+    }
+
+    /**
+     * Gets the number of serialized (uncompressed) bytes written or buffered so far.
+     *
+     * @return bytes
+     */
+    public long getWrittenBytes() {
+        return writtenBytes + groupBytes();
+    }
+
+    /**
+     * Creates a writer of column values for the supplied SQL type.
+     */
+    private ColumnWriter createWriter(int type) {
+        switch (type) {
+            case Types.BIGINT:
+                return (rs, i, o) -> {
+                    long val = rs.getLong(i);
+                    if (rs.wasNull()) return false;
+                    o.writeLong(val);
+                    return true;
+                };
+            case Types.BINARY:
+                return (rs, i, o) -> {
+                    byte[] val = rs.getBytes(i);
+                    if (val == null) return false;
+                    o.writeVarInt(val.length, true);
+                    o.writeBytes(val);
+                    return true;
+                };
+            case Types.BOOLEAN:
+            case Types.BIT:
+                return (rs, i, o) -> {
+                    boolean val = rs.getBoolean(i);
+                    if (rs.wasNull()) return false;
+                    o.writeBoolean(val);
+                    return true;
+                };
+            case Types.CHAR:
+            case Types.VARCHAR:
+                return (rs, i, o) -> writeString(rs.getString(i), o);
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+                return (rs, i, o) -> writeString(rs.getNString(i), o);
+            case Types.DATE:
+                return (rs, i, o) -> {
+                    Date val = rs.getDate(i);
+                    if (val == null || rs.wasNull()) return false;
+                    TemporalValues.writeDate(o, val);
+                    return true;
+                };
+            case Types.TIME:
+                return (rs, i, o) -> {
+                    Time val = rs.getTime(i);
+                    if (val == null || rs.wasNull()) return false;
+                    TemporalValues.writeTime(o, val);
+                    return true;
+                };
+            case Types.TIMESTAMP:
+                TemporalValues.TimestampColumn column = new TemporalValues.TimestampColumn();
+                return column::write;
+            case Mssql.Types.DATETIMEOFFSET:
+                return (rs, i, o) -> {
+                    Timestamp val = rs.getTimestamp(i);
+                    if (val == null) return false;
+                    TemporalValues.writeExactTimestamp(o, val);
+                    return true;
+                };
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return (rs, i, o) -> {
+                    BigDecimal val = rs.getBigDecimal(i);
+                    if (val == null) return false;
+                    kryo.writeObject(o, val);
+                    return true;
+                };
+            case Types.DOUBLE:
+            case Oracle.Types.BINARY_DOUBLE:
+                return (rs, i, o) -> {
+                    double val = rs.getDouble(i);
+                    if (rs.wasNull()) return false;
+                    o.writeDouble(val);
+                    return true;
+                };
+            case Types.INTEGER:
+                return (rs, i, o) -> {
+                    int val = rs.getInt(i);
+                    if (rs.wasNull()) return false;
+                    o.writeInt(val);
+                    return true;
+                };
+            case Types.TINYINT:
+            case Types.SMALLINT:
+                return (rs, i, o) -> {
+                    short val = rs.getShort(i);
+                    if (rs.wasNull()) return false;
+                    o.writeShort(val);
+                    return true;
+                };
+            case Types.REAL:
+            case Types.FLOAT:
+                return (rs, i, o) -> {
+                    float val = rs.getFloat(i);
+                    if (rs.wasNull()) return false;
+                    o.writeFloat(val);
+                    return true;
+                };
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                return (rs, i, o) -> {
+                    InputStream val = rs.getBinaryStream(i);
+                    if (val == null) return false;
+                    streamSerializer.write(kryo, o, val);
+                    return true;
+                };
+            case Types.BLOB:
+                return (rs, i, o) -> {
+                    Blob val = rs.getBlob(i);
+                    if (val == null) return false;
+                    blobSerializer.write(kryo, o, val);
+                    return true;
+                };
+            case Types.LONGVARCHAR:
+            case Types.CLOB:
+                return (rs, i, o) -> writeClob(rs.getClob(i), o);
+            case Types.LONGNVARCHAR:
+            case Types.NCLOB:
+                return (rs, i, o) -> writeClob(rs.getNClob(i), o);
+            case Mssql.Types.SQL_VARIANT:
+                return (rs, i, o) -> {
+                    Object val = rs.getObject(i);
+                    if (val == null) return false;
+                    // check that the class is supported
+                    Integer valType = SQL_VARIANT_CLASS_TO_TYPE.get(val.getClass());
+                    if (valType == null) {
+                        throw new IllegalStateException("Unable to serialize sql_variant SQL type: " + type
+                                + ", Class: " + val.getClass().getName()
+                                + ", Object: " + val);
+                    }
+                    o.writeInt(valType);
+                    kryo.writeObject(o, val);
+                    return true;
+                };
+            case Types.OTHER:
+                return (rs, i, o) -> {
+                    Object val = rs.getObject(i);
+                    if (val == null) return false;
+                    if (!val.getClass().getName().equals("org.postgresql.util.PGobject") && !(val instanceof UUID)) {
+                        throw new IllegalStateException("Unable to serialize SQL OTHER type: " + type
+                                + ", Class: " + val.getClass().getName()
+                                + ", Object: " + val);
+                    }
+                    // PGObject or UUID serialized as a string
+                    o.writeInt(Types.VARCHAR);
+                    kryo.writeObject(o, val.toString());
+                    return true;
+                };
+            default:
+                return (rs, i, o) -> {
+                    Object val = rs.getObject(i);
+                    throw new IllegalStateException("Unable to serialize SQL type: " + type
+                            + ", Class: " + (val == null ? "<unknown>" : val.getClass().getName())
+                            + ", Object: " + val);
+                };
+        }
+    }
+
+    private static boolean writeString(String val, Output o) {
+        if (val == null) return false;
+        o.writeString(val);
+        return true;
+    }
+
+    private boolean writeClob(Clob val, Output o) {
+        if (val == null) return false;
+        clobSerializer.write(kryo, o, val);
+        return true;
+    }
+
+    /**
+     * Writes a value of a column to the column data.
+     */
+    @FunctionalInterface
+    private interface ColumnWriter {
+        /**
+         * Writes a column value.
+         *
+         * @param rs    result set positioned on a row
+         * @param index column index, starting at 1
+         * @param out   column data
+         * @return false when the value is null and nothing was written
+         */
+        boolean write(ResultSet rs, int index, Output out) throws SQLException;
+    }
+}
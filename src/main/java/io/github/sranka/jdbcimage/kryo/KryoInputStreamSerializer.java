@@ -4,10 +4,16 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import io.github.sranka.jdbcimage.ChunkPool;
 import io.github.sranka.jdbcimage.ChunkedInputStream;
+import io.github.sranka.jdbcimage.LobStore;
+import io.github.sranka.jdbcimage.SpilledInputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -15,21 +21,45 @@ import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
+
+import static io.github.sranka.jdbcimage.kryo.KryoResultSetConsumer.LOB_REFERENCE;
 
 /**
- * Stream (de)serializer with optimized method for BLOB handling
+ * Stream (de)serializer with optimized method for BLOB handling. With a {@link LobStore}, values
+ * over {@link LobStore#STORE_BYTES} are written to the store and only a reference to the store entry
+ * is written instead of the chunks.
  */
 public class KryoInputStreamSerializer extends Serializer<InputStream> {
     private static final Log log = LogFactory.getLog(KryoInputStreamSerializer.class);
-    private static final int BUFFER_SIZE = 1024 * 64;
-    public static KryoInputStreamSerializer INSTANCE = new KryoInputStreamSerializer();
+    private static final int BUFFER_SIZE = ChunkPool.BYTE_CHUNK_SIZE;
+    public static KryoInputStreamSerializer INSTANCE = new KryoInputStreamSerializer(null);
+
+    // store of large values, null to write all values inline
+    private final LobStore lobStore;
+
+    public KryoInputStreamSerializer(LobStore lobStore) {
+        this.lobStore = lobStore;
+    }
 
     public Object deserializeBlobData(Input in, Connection connection) {
         // read one byte to know if there is a stream
         if (in.readByte() == Kryo.NULL) {
             return null;
         }
+        return deserializeBlobChunks(in, connection);
+    }
 
+    /**
+     * Reads chunks of a not-null BLOB value.
+     *
+     * @param in         input
+     * @param connection connection to create a database BLOB, null to create a stream
+     * @return byte array, stream or a database BLOB; data over {@link SpilledInputStream#SPILL_BYTES}
+     * are streamed from a temporary file when no connection is supplied, data of the LOB store are
+     * always streamed from the store
+     */
+    public Object deserializeBlobChunks(Input in, Connection connection) {
         long total = 0;
         int count;
 
@@ -38,7 +68,10 @@ public class KryoInputStreamSerializer extends Serializer<InputStream> {
         if (count == -1) {
             return new byte[0]; // empty data
         }
-        byte[] firstBytes = in.readBytes(count);
+        if (count == LOB_REFERENCE) {
+            return readReference(in);
+        }
+        byte[] firstBytes = readChunk(in, count);
         total += count;
 
         // read next chunks
@@ -52,7 +85,10 @@ public class KryoInputStreamSerializer extends Serializer<InputStream> {
                     chunks = new ArrayList<>();
                     chunks.add(firstBytes);
                 }
-                chunks.add(in.readBytes(count));
+                if (total > SpilledInputStream.SPILL_BYTES) {
+                    return spill(chunks, count, in);
+                }
+                chunks.add(readChunk(in, count));
             } else {
                 // blob
                 try {
@@ -60,8 +96,13 @@ public class KryoInputStreamSerializer extends Serializer<InputStream> {
                     Blob blob = connection.createBlob();
                     OutputStream out = blob.setBinaryStream(1);
                     out.write(firstBytes);// print out first chunk
-                    byte[] buffer = firstBytes.length < in.getBuffer().length ? new byte[in.getBuffer().length] : firstBytes;
-                    transferToOutputStream(count, buffer, in, out);
+                    ChunkPool.release(firstBytes);
+                    byte[] buffer = ChunkPool.acquireBytes();
+                    try {
+                        transferToOutputStream(count, buffer, in, out);
+                    } finally {
+                        ChunkPool.release(buffer);
+                    }
                     return blob;
                 } catch (SQLException | IOException e) {
                     throw new RuntimeException(e);
@@ -70,12 +111,69 @@ public class KryoInputStreamSerializer extends Serializer<InputStream> {
         }
 
         if (chunks != null) {
-            return new ChunkedInputStream(chunks, total);
+            return new ChunkedInputStream(chunks, total, true);
         } else {
             return firstBytes;
         }
     }
 
+    /**
+     * Reads a reference to an entry of the LOB store.
+     */
+    private SpilledInputStream readReference(Input in) {
+        long offset = in.readVarLong(true);
+        long storedLength = in.readVarLong(true);
+        long length = in.readVarLong(true);
+        if (lobStore == null) {
+            throw new IllegalStateException("BLOB value refers to a LOB store that is not available");
+        }
+        return new SpilledInputStream(lobStore.openEntry(offset, storedLength), length);
+    }
+
+    /**
+     * Reads a chunk, a chunk of the pooled size is read into a pooled buffer.
+     */
+    private static byte[] readChunk(Input in, int count) {
+        if (count != ChunkPool.BYTE_CHUNK_SIZE) {
+            return in.readBytes(count);
+        }
+        byte[] retVal = ChunkPool.acquireBytes();
+        in.readBytes(retVal, 0, count);
+        return retVal;
+    }
+
+    /**
+     * Writes the chunks read so far and the rest of the data to a temporary file.
+     *
+     * @param chunks chunks already read
+     * @param count  count of bytes of the next chunk
+     * @param in     input to read from
+     * @return stream of the file
+     */
+    private SpilledInputStream spill(List<byte[]> chunks, int count, Input in) {
+        File file = null;
+        try {
+            file = SpilledInputStream.createFile();
+            if (log.isDebugEnabled()) log.debug("Spilling blob to " + file);
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)) {
+                for (byte[] chunk : chunks) {
+                    out.write(chunk);
+                    ChunkPool.release(chunk);
+                }
+                byte[] buffer = ChunkPool.acquireBytes();
+                try {
+                    transferToOutputStream(count, buffer, in, out);
+                } finally {
+                    ChunkPool.release(buffer);
+                }
+            }
+            return new SpilledInputStream(file, file.length());
+        } catch (IOException e) {
+            if (file != null) SpilledInputStream.deleteFile(file);
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Called to transfer `count` bytes from the buffer and then
      * reuse the buffer to copy the whole data stream.
@@ -114,16 +212,24 @@ public class KryoInputStreamSerializer extends Serializer<InputStream> {
 
     @Override
     public void write(Kryo kryo, Output out, InputStream in) {
+        if (lobStore != null && LobStore.STORE_BYTES >= 0) {
+            writeOrStore(out, in);
+            return;
+        }
         try {
             // write chunks until EOF is found
-            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] buffer = ChunkPool.acquireBytes();
             int count;
             int chunks = 0;
-            while ((count = in.read(buffer)) != -1) {
-                if (count == 0) continue; // just in case, robust
-                out.writeInt(count);
-                chunks++;
-                out.writeBytes(buffer, 0, count);
+            try {
+                while ((count = in.read(buffer)) != -1) {
+                    if (count == 0) continue; // just in case, robust
+                    out.writeInt(count);
+                    chunks++;
+                    out.writeBytes(buffer, 0, count);
+                }
+            } finally {
+                ChunkPool.release(buffer);
             }
             chunkInfo(chunks);
             out.writeInt(-1);// tail marker
@@ -133,6 +239,74 @@ public class KryoInputStreamSerializer extends Serializer<InputStream> {
         }
     }
 
+    /**
+     * Reads data up to {@link LobStore#STORE_BYTES}, then writes the data either inline or to the LOB store.
+     *
+     * @param out output
+     * @param in  data to write
+     */
+    private void writeOrStore(Output out, InputStream in) {
+        List<byte[]> chunks = new ArrayList<>();
+        try {
+            long total = 0;
+            int count;
+            do {
+                byte[] chunk = ChunkPool.acquireBytes();
+                chunks.add(chunk);
+                count = fill(in, chunk);
+                total += count;
+            } while (count == BUFFER_SIZE && total <= LobStore.STORE_BYTES);
+
+            if (total <= LobStore.STORE_BYTES) {
+                for (byte[] chunk : chunks) {
+                    int length = chunk == chunks.get(chunks.size() - 1) ? count : BUFFER_SIZE;
+                    if (length > 0) {
+                        out.writeInt(length);
+                        out.writeBytes(chunk, 0, length);
+                    }
+                }
+                chunkInfo(chunks.size());
+                out.writeInt(-1);// tail marker
+            } else {
+                LobStore.Entry entry;
+                try (LobStore.EntryOutputStream store = lobStore.newEntry()) {
+                    for (byte[] chunk : chunks) {
+                        store.write(chunk, 0, chunk == chunks.get(chunks.size() - 1) ? count : BUFFER_SIZE);
+                    }
+                    byte[] buffer = chunks.get(0);
+                    while ((count = in.read(buffer)) != -1) {
+                        store.write(buffer, 0, count);
+                    }
+                    entry = store.finish();
+                }
+                if (log.isDebugEnabled()) log.debug(" --> stored:" + entry.length);
+                out.writeInt(LOB_REFERENCE);
+                out.writeVarLong(entry.offset, true);
+                out.writeVarLong(entry.storedLength, true);
+                out.writeVarLong(entry.length, true);
+            }
+            in.close(); // close the input stream
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            chunks.forEach(ChunkPool::release);
+        }
+    }
+
+    /**
+     * Reads data into the whole buffer unless EOF is found.
+     *
+     * @return count of bytes read
+     */
+    private static int fill(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        int count;
+        while (length < buffer.length && (count = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += count;
+        }
+        return length;
+    }
+
     protected void chunkInfo(int chunks) {
         if (chunks > 1 && log.isDebugEnabled()) log.debug(" --> chunks:" + chunks);
     }
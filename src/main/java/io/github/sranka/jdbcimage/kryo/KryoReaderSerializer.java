@@ -4,27 +4,65 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import io.github.sranka.jdbcimage.ChunkPool;
 import io.github.sranka.jdbcimage.ChunkedReader;
+import io.github.sranka.jdbcimage.LobStore;
+import io.github.sranka.jdbcimage.SpilledInputStream;
+import io.github.sranka.jdbcimage.SpilledReader;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.sql.Clob;
 import java.sql.Connection;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static io.github.sranka.jdbcimage.kryo.KryoResultSetConsumer.LOB_REFERENCE;
 
 /**
- * Stream (de)serializer with optimized method for CLOB handling
+ * Stream (de)serializer with optimized method for CLOB handling. A CLOB is written in chunks,
+ * every chunk starts with its count of characters and the data end with -1. Characters of a chunk
+ * are written either as UTF-16 chars, or as a varint length followed by bytes of the chunk
+ * encoded in UTF-8 ({@link #UTF8_INSTANCE}, see {@link KryoResultSetConsumer#FEATURE_UTF8_CLOBS}).
+ * Every char is encoded in 1 to 3 bytes, surrogates are encoded separately, so that a surrogate pair
+ * split between chunks is kept intact. With a {@link LobStore}, values over {@link LobStore#STORE_BYTES}
+ * characters are written to the store in UTF-16BE and only a reference to the store entry is written.
  */
 public class KryoReaderSerializer extends Serializer<Reader> {
     private static final Log log = LogFactory.getLog(KryoReaderSerializer.class);
-    private static final int BUFFER_SIZE = 1024 * 32;
+    private static final int BUFFER_SIZE = ChunkPool.CHAR_CHUNK_SIZE;
     private static final ClobSupplier CLOB_SUPPLIER = new ClobSupplier();
     private static final ClobSupplier NCLOB_SUPPLIER = new NClobSupplier();
-    public static KryoReaderSerializer INSTANCE = new KryoReaderSerializer();
+    // maximum length of an encoded chunk of BUFFER_SIZE characters
+    private static final int UTF8_BUFFER_SIZE = BUFFER_SIZE * 3;
+    private static final ThreadLocal<byte[]> UTF8_BUFFER = ThreadLocal.withInitial(() -> new byte[UTF8_BUFFER_SIZE]);
+    public static KryoReaderSerializer INSTANCE = new KryoReaderSerializer(false);
+    public static KryoReaderSerializer UTF8_INSTANCE = new KryoReaderSerializer(true);
+
+    // true to encode chunks in UTF-8, false to write UTF-16 chars
+    private final boolean utf8;
+    // store of large values, null to write all values inline
+    private final LobStore lobStore;
+
+    public KryoReaderSerializer(boolean utf8) {
+        this(utf8, null);
+    }
+
+    public KryoReaderSerializer(boolean utf8, LobStore lobStore) {
+        this.utf8 = utf8;
+        this.lobStore = lobStore;
+    }
 
     public Object deserializeClobData(Input in, Connection connection) {
         return deserializeClobData(in, connection, CLOB_SUPPLIER);
@@ -34,12 +72,39 @@ public class KryoReaderSerializer extends Serializer<Reader> {
         return deserializeClobData(in, connection, NCLOB_SUPPLIER);
     }
 
+    /**
+     * Reads chunks of a not-null CLOB value.
+     *
+     * @param in         input
+     * @param connection connection to create a database CLOB, null to create a reader
+     * @return reader or a database CLOB; data over {@link SpilledInputStream#SPILL_BYTES}
+     * are read from a temporary file when no connection is supplied, data of the LOB store are
+     * always read from the store
+     */
+    public Object deserializeClobChunks(Input in, Connection connection) {
+        return deserializeClobChunks(in, connection, CLOB_SUPPLIER);
+    }
+
+    /**
+     * Reads chunks of a not-null NCLOB value.
+     *
+     * @param in         input
+     * @param connection connection to create a database NCLOB, null to create a reader
+     * @return reader or a database NCLOB
+     */
+    public Object deserializeNClobChunks(Input in, Connection connection) {
+        return deserializeClobChunks(in, connection, NCLOB_SUPPLIER);
+    }
+
     private Object deserializeClobData(Input in, Connection connection, ClobSupplier clobSupplier) {
         // read one byte to know if there is a stream
         if (in.readByte() == Kryo.NULL) {
             return null;
         }
+        return deserializeClobChunks(in, connection, clobSupplier);
+    }
 
+    private Object deserializeClobChunks(Input in, Connection connection, ClobSupplier clobSupplier) {
         long total = 0;
         int count;
 
@@ -48,7 +113,10 @@ public class KryoReaderSerializer extends Serializer<Reader> {
         if (count == -1) {
             return new ChunkedReader(new char[0]);
         }
-        char[] firstChars = in.readChars(count);
+        if (count == LOB_REFERENCE) {
+            return readReference(in);
+        }
+        char[] firstChars = readChunk(in, count);
         total += count;
 
         // read next chunks
@@ -62,7 +130,10 @@ public class KryoReaderSerializer extends Serializer<Reader> {
                     chunks = new ArrayList<>();
                     chunks.add(firstChars);
                 }
-                chunks.add(in.readChars(count));
+                if (total * 2 > SpilledInputStream.SPILL_BYTES) {
+                    return spill(chunks, count, in);
+                }
+                chunks.add(readChunk(in, count));
             } else {
                 // blob
                 try {
@@ -70,8 +141,13 @@ public class KryoReaderSerializer extends Serializer<Reader> {
                     Clob clob = clobSupplier.createClob(connection);
                     Writer out = clob.setCharacterStream(1);
                     out.write(firstChars);// print out first chunk
-                    char[] buffer = firstChars.length < (in.getBuffer().length * 2) ? new char[in.getBuffer().length] : firstChars;
-                    transferToWriter(count, buffer, in, out);
+                    ChunkPool.release(firstChars);
+                    char[] buffer = ChunkPool.acquireChars();
+                    try {
+                        transferToWriter(count, buffer, in, out);
+                    } finally {
+                        ChunkPool.release(buffer);
+                    }
                     return clob;
                 } catch (SQLException | IOException e) {
                     throw new RuntimeException(e);
@@ -80,9 +156,152 @@ public class KryoReaderSerializer extends Serializer<Reader> {
         }
 
         if (chunks != null) {
-            return new ChunkedReader(chunks, total);
+            return new ChunkedReader(chunks, total, true);
         } else {
-            return new ChunkedReader(firstChars);
+            return new ChunkedReader(Collections.singletonList(firstChars), total, true);
+        }
+    }
+
+    /**
+     * Reads a reference to an entry of the LOB store.
+     */
+    private SpilledReader readReference(Input in) {
+        long offset = in.readVarLong(true);
+        long storedLength = in.readVarLong(true);
+        long length = in.readVarLong(true);
+        if (lobStore == null) {
+            throw new IllegalStateException("CLOB value refers to a LOB store that is not available");
+        }
+        return new SpilledReader(lobStore.openEntry(offset, storedLength), length);
+    }
+
+    /**
+     * Reads a chunk, a chunk of the pooled size is read into a pooled buffer.
+     */
+    private char[] readChunk(Input in, int count) {
+        if (!utf8 && count != ChunkPool.CHAR_CHUNK_SIZE) {
+            return in.readChars(count);
+        }
+        char[] retVal = count == ChunkPool.CHAR_CHUNK_SIZE ? ChunkPool.acquireChars() : new char[count];
+        readChars(in, retVal, count);
+        return retVal;
+    }
+
+    /**
+     * Reads characters of a chunk.
+     *
+     * @param in     input to read from
+     * @param buffer buffer to read to
+     * @param count  count of characters of the chunk, at most buffer length
+     */
+    private void readChars(Input in, char[] buffer, int count) {
+        if (!utf8) {
+            for (int j = 0; j < count; j++) {
+                buffer[j] = in.readChar();
+            }
+            return;
+        }
+        int length = in.readVarInt(true);
+        byte[] bytes = utf8Buffer(length);
+        in.readBytes(bytes, 0, length);
+        if (length == count) {
+            // ASCII only
+            for (int j = 0; j < count; j++) {
+                buffer[j] = (char) bytes[j];
+            }
+            return;
+        }
+        int pos = 0;
+        for (int j = 0; j < count; j++) {
+            int b = bytes[pos++];
+            if (b >= 0) {
+                buffer[j] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                buffer[j] = (char) (((b & 0x1F) << 6) | (bytes[pos++] & 0x3F));
+            } else {
+                buffer[j] = (char) (((b & 0x0F) << 12) | ((bytes[pos++] & 0x3F) << 6) | (bytes[pos++] & 0x3F));
+            }
+        }
+        if (pos != length) {
+            throw new IllegalStateException("Malformed CLOB chunk, " + length + " bytes do not encode " + count + " characters");
+        }
+    }
+
+    /**
+     * Encodes characters of a chunk to UTF-8.
+     *
+     * @param buffer characters
+     * @param count  count of characters to encode
+     * @param bytes  buffer to encode to, at least 3 times count long
+     * @return length of encoded bytes
+     */
+    private static int encode(char[] buffer, int count, byte[] bytes) {
+        int j = 0;
+        // ASCII fast path
+        while (j < count && buffer[j] < 0x80) {
+            bytes[j] = (byte) buffer[j];
+            j++;
+        }
+        int pos = j;
+        for (; j < count; j++) {
+            char c = buffer[j];
+            if (c < 0x80) {
+                bytes[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[pos++] = (byte) (0xC0 | (c >> 6));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[pos++] = (byte) (0xE0 | (c >> 12));
+                bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Gets a thread's buffer for encoded chunks.
+     *
+     * @param length required length
+     * @return buffer
+     */
+    private static byte[] utf8Buffer(int length) {
+        if (length > UTF8_BUFFER_SIZE) {
+            return new byte[length]; // not written by this class
+        }
+        return UTF8_BUFFER.get();
+    }
+
+    /**
+     * Writes the chunks read so far and the rest of the data to a temporary file in UTF-16BE.
+     *
+     * @param chunks chunks already read
+     * @param count  count of characters of the next chunk
+     * @param in     input to read from
+     * @return reader of the file
+     */
+    private SpilledReader spill(List<char[]> chunks, int count, Input in) {
+        File file = null;
+        try {
+            file = SpilledInputStream.createFile();
+            if (log.isDebugEnabled()) log.debug("Spilling clob to " + file);
+            try (Writer out = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE * 2),
+                    StandardCharsets.UTF_16BE)) {
+                for (char[] chunk : chunks) {
+                    out.write(chunk);
+                    ChunkPool.release(chunk);
+                }
+                char[] buffer = ChunkPool.acquireChars();
+                try {
+                    transferToWriter(count, buffer, in, out);
+                } finally {
+                    ChunkPool.release(buffer);
+                }
+            }
+            return new SpilledReader(file, file.length() / 2);
+        } catch (IOException e) {
+            if (file != null) SpilledInputStream.deleteFile(file);
+            throw new RuntimeException(e);
         }
     }
 
@@ -98,14 +317,21 @@ public class KryoReaderSerializer extends Serializer<Reader> {
      */
     private void transferToWriter(int count, char[] buffer, Input in, Writer out) throws IOException {
         do {
-            // read count using a buffer
-            while (count > 0) {
-                int toReadCount = Math.min(count, buffer.length);
-                for (int j = 0; j < toReadCount; j++) {
-                    buffer[j] = in.readChar();
+            if (utf8) {
+                // a chunk is encoded as a whole
+                char[] chars = count <= buffer.length ? buffer : new char[count];
+                readChars(in, chars, count);
+                out.write(chars, 0, count);
+            } else {
+                // read count using a buffer
+                while (count > 0) {
+                    int toReadCount = Math.min(count, buffer.length);
+                    for (int j = 0; j < toReadCount; j++) {
+                        buffer[j] = in.readChar();
+                    }
+                    out.write(buffer, 0, toReadCount);
+                    count -= toReadCount;
                 }
-                out.write(buffer, 0, toReadCount);
-                count -= toReadCount;
             }
         } while ((count = in.readInt()) != -1);
         out.flush(); // no more data to write
@@ -119,25 +345,30 @@ public class KryoReaderSerializer extends Serializer<Reader> {
         int count;
         while ((count = in.readInt()) != -1) {
             total += count;
-            chunks.add(in.readChars(count));
+            chunks.add(readChunk(in, count));
         }
-        return new ChunkedReader(chunks, total);
+        return new ChunkedReader(chunks, total, true);
     }
 
     @Override
     public void write(Kryo kryo, Output out, Reader in) {
+        if (lobStore != null && LobStore.STORE_BYTES >= 0) {
+            writeOrStore(out, in);
+            return;
+        }
         try {
             // write chunks until EOF is found
-            char[] buffer = new char[BUFFER_SIZE];
+            char[] buffer = ChunkPool.acquireChars();
             int count;
             int chunks = 0;
-            while ((count = in.read(buffer)) != -1) {
-                if (count == 0) continue; // just in case, robust
-                out.writeInt(count);
-                chunks++;
-                for (int j = 0; j < count; j++) {
-                    out.writeChar(buffer[j]);
+            try {
+                while ((count = in.read(buffer)) != -1) {
+                    if (count == 0) continue; // just in case, robust
+                    writeChunk(out, buffer, count);
+                    chunks++;
                 }
+            } finally {
+                ChunkPool.release(buffer);
             }
             chunkInfo(chunks);
             out.writeInt(-1);// tail marker
@@ -147,6 +378,102 @@ public class KryoReaderSerializer extends Serializer<Reader> {
         }
     }
 
+    /**
+     * Writes a chunk of characters.
+     */
+    private void writeChunk(Output out, char[] buffer, int count) {
+        out.writeInt(count);
+        if (utf8) {
+            byte[] bytes = utf8Buffer(count * 3);
+            int length = encode(buffer, count, bytes);
+            out.writeVarInt(length, true);
+            out.writeBytes(bytes, 0, length);
+        } else {
+            for (int j = 0; j < count; j++) {
+                out.writeChar(buffer[j]);
+            }
+        }
+    }
+
+    /**
+     * Reads data up to {@link LobStore#STORE_BYTES} characters, then writes the data either inline or to the LOB store.
+     *
+     * @param out output
+     * @param in  data to write
+     */
+    private void writeOrStore(Output out, Reader in) {
+        List<char[]> chunks = new ArrayList<>();
+        try {
+            long total = 0;
+            int count;
+            do {
+                char[] chunk = ChunkPool.acquireChars();
+                chunks.add(chunk);
+                count = fill(in, chunk);
+                total += count;
+            } while (count == BUFFER_SIZE && total <= LobStore.STORE_BYTES);
+
+            if (total <= LobStore.STORE_BYTES) {
+                for (char[] chunk : chunks) {
+                    int length = chunk == chunks.get(chunks.size() - 1) ? count : BUFFER_SIZE;
+                    if (length > 0) {
+                        writeChunk(out, chunk, length);
+                    }
+                }
+                chunkInfo(chunks.size());
+                out.writeInt(-1);// tail marker
+            } else {
+                LobStore.Entry entry;
+                try (LobStore.EntryOutputStream store = lobStore.newEntry()) {
+                    byte[] bytes = utf8Buffer(BUFFER_SIZE * 2);
+                    for (char[] chunk : chunks) {
+                        storeChunk(store, chunk, chunk == chunks.get(chunks.size() - 1) ? count : BUFFER_SIZE, bytes);
+                    }
+                    char[] buffer = chunks.get(0);
+                    while ((count = in.read(buffer)) != -1) {
+                        storeChunk(store, buffer, count, bytes);
+                    }
+                    entry = store.finish();
+                }
+                if (log.isDebugEnabled()) log.debug(" --> stored:" + entry.length);
+                out.writeInt(LOB_REFERENCE);
+                out.writeVarLong(entry.offset, true);
+                out.writeVarLong(entry.storedLength, true);
+                out.writeVarLong(entry.length / 2, true);
+            }
+            in.close(); // close the reader
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            chunks.forEach(ChunkPool::release);
+        }
+    }
+
+    /**
+     * Writes characters to a LOB store entry in UTF-16BE.
+     */
+    private static void storeChunk(OutputStream out, char[] buffer, int count, byte[] bytes) throws IOException {
+        for (int j = 0; j < count; j++) {
+            bytes[j * 2] = (byte) (buffer[j] >> 8);
+            bytes[j * 2 + 1] = (byte) buffer[j];
+        }
+        out.write(bytes, 0, count * 2);
+    }
+
+    /**
+     * Reads data into the whole buffer unless EOF is found.
+     *
+     * @return count of characters read
+     */
+    private static int fill(Reader in, char[] buffer) throws IOException {
+        int length = 0;
+        int count;
+        while (length < buffer.length && (count = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += count;
+        }
+        return length;
+    }
+
     protected void chunkInfo(int chunks) {
         if (chunks > 1 && log.isDebugEnabled()) log.debug(" --> chunks:" + chunks);
     }
@@ -1,20 +1,26 @@
 package io.github.sranka.jdbcimage.kryo;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.FastInput;
 import com.esotericsoftware.kryo.io.Input;
+import io.github.sranka.jdbcimage.LobStore;
 import io.github.sranka.jdbcimage.ResultProducer;
 import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowBatch;
 import io.github.sranka.jdbcimage.RowData;
 import io.github.sranka.jdbcimage.main.Mssql;
 import io.github.sranka.jdbcimage.main.Oracle;
 
 import java.io.InputStream;
 import java.math.BigDecimal;
+import java.sql.Connection;
 import java.sql.Date;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
 
 import static io.github.sranka.jdbcimage.kryo.KryoResultSetConsumer.*;
 
@@ -25,16 +31,35 @@ public class KryoResultProducer implements ResultProducer {
     // serialization
     private final Kryo kryo;
     private final Input in;
+    private final LobStore lobStore;
 
     // state
-    private int[] types;
     private boolean finished = false;
     private boolean isVersion1_0 = false;
+    // DATE/TIME/TIMESTAMP values are encoded as numbers
+    private boolean temporal = false;
+    private KryoInputStreamSerializer blobSerializer = KryoInputStreamSerializer.INSTANCE;
+    private KryoReaderSerializer clobSerializer = KryoReaderSerializer.INSTANCE;
+    // codec plan of columns of the row format 1.x
+    private ColumnReader[] readers;
+    // set when reading the columnar format 2.0
+    private ColumnarRowGroupReader groupReader;
 
     public KryoResultProducer(InputStream in) {
+        this(in, null);
+    }
+
+    /**
+     * Creates a producer of a table file that can refer to LOBs of a LOB store.
+     *
+     * @param in       table file data
+     * @param lobStore LOB store of the table file, null if there is none
+     */
+    public KryoResultProducer(InputStream in, LobStore lobStore) {
         super();
         this.kryo = KryoSetup.getKryo();
         this.in = new FastInput(in);
+        this.lobStore = lobStore;
     }
 
     @Override
@@ -42,10 +67,38 @@ public class KryoResultProducer implements ResultProducer {
         // skip version information
         String version = kryo.readObject(in, String.class);
         isVersion1_0 = version.equals(VERSION_1_0);
+        boolean isVersion2_0 = version.equals(KryoColumnarResultSetConsumer.VERSION_2_0);
+        if (isVersion2_0 || version.equals(VERSION_1_2)) {
+            int features = in.readVarInt(true);
+            if ((features & ~SUPPORTED_FEATURES) != 0) {
+                throw new IllegalStateException("Unsupported features of table file format " + version + ": " + features);
+            }
+            boolean utf8 = (features & FEATURE_UTF8_CLOBS) != 0;
+            temporal = (features & FEATURE_TEMPORAL) != 0;
+            if ((features & FEATURE_LOB_STORE) != 0) {
+                blobSerializer = new KryoInputStreamSerializer(lobStore);
+                clobSerializer = new KryoReaderSerializer(utf8, lobStore);
+            } else if (utf8) {
+                clobSerializer = KryoReaderSerializer.UTF8_INSTANCE;
+            }
+        }
         // prepare new row data
         ResultSetInfo info = kryo.readObject(in, ResultSetInfo.class);
-        types = new int[info.types.length];
+        int[] types = new int[info.types.length];
         System.arraycopy(info.types, 0, types, 0, types.length);
+        if (isVersion2_0) {
+            groupReader = new ColumnarRowGroupReader(kryo, in, types, blobSerializer, clobSerializer, temporal);
+        } else {
+            readers = new ColumnReader[types.length];
+            for (int i = 0; i < types.length; i++) {
+                int type = types[i];
+                if (type == Mssql.Types.SQL_VARIANT || type == Types.OTHER) {
+                    readers[i] = createVariantReader(type);
+                } else {
+                    readers[i] = createReader(type, type);
+                }
+            }
+        }
         return new RowData(info);
     }
 
@@ -53,130 +106,193 @@ public class KryoResultProducer implements ResultProducer {
     public boolean fillData(RowData row) {
         // check if we reached the end
         if (finished) return false;
+        if (groupReader != null) {
+            finished = !groupReader.fillData(row.values, row.info.connection);
+            return !finished;
+        }
         if (!in.readBoolean()) {
             finished = true;
             return false;
         }
         // fill in row
-        for (int i = 0; i < types.length; i++) {
-            Object val;
-            int dbType = types[i];
-            if (dbType == Mssql.Types.SQL_VARIANT || dbType == Types.OTHER) {
-                // read a specific type stored within sql_variant
-                dbType = in.readInt();
+        Connection connection = row.info.connection;
+        for (int i = 0; i < readers.length; i++) {
+            row.values[i] = readers[i].read(connection);
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean fillBatch(RowBatch batch) {
+        batch.clear();
+        if (finished) return false;
+        Connection connection = batch.info.connection;
+        if (groupReader != null) {
+            finished = !groupReader.fillBatch(batch, connection);
+            return batch.size > 0;
+        }
+        while (!batch.isFull()) {
+            if (!in.readBoolean()) {
+                finished = true;
+                break;
             }
-            switch (dbType) {
-                case Types.BIGINT:
-                    val = kryo.readObjectOrNull(in, Long.class);
-                    break;
-                case Types.BINARY:
-                    val = kryo.readObjectOrNull(in, byte[].class);
-                    break;
-                case Types.BOOLEAN:
-                case Types.BIT:
-                    val = kryo.readObjectOrNull(in, Boolean.class);
-                    break;
-                case Types.CHAR:
-                case Types.NCHAR:
-                case Types.VARCHAR:
-                case Types.NVARCHAR:
-                    val = kryo.readObjectOrNull(in, String.class);
-                    break;
-                case Types.DATE:
-                    if (isVersion1_0) {
-                        // produces https://github.com/sranka/jdbcimage/issues/19
-                        val = kryo.readObjectOrNull(in, Date.class);
-                    } else {
-                        val = kryo.readObjectOrNull(in, String.class);
-                        if (val != null) {
-                            val = Date.valueOf((String)val);
-                        }
-                    }
-                    break;
-                case Types.TIME:
-                    if (isVersion1_0) {
-                        // produces https://github.com/sranka/jdbcimage/issues/19
-                        val = kryo.readObjectOrNull(in, Time.class);
-                    } else {
-                        val = kryo.readObjectOrNull(in, String.class);
-                        if (val != null) {
-                            val = Time.valueOf((String)val);
-                        }
-                    }
-                    break;
-                case Types.TIMESTAMP:
-                    if (isVersion1_0) {
-                        // produces https://github.com/sranka/jdbcimage/issues/19
-                        val = kryo.readObjectOrNull(in, Timestamp.class);
-                    } else {
-                        val = getTimestamp();
-                    }
-                    break;
-                case Mssql.Types.DATETIMEOFFSET:
-                    if(isVersion1_0) {
-                        val = kryo.readObjectOrNull(in, String.class);
-                    } else {
-                        val = getTimestamp();
-                    }
-                    break;
-                case Types.DECIMAL:
-                case Types.NUMERIC:
-                    val = kryo.readObjectOrNull(in, BigDecimal.class);
-                    break;
-                case Types.DOUBLE:
-                case Oracle.Types.BINARY_DOUBLE:
-                    val = kryo.readObjectOrNull(in, Double.class);
-                    break;
-                case Types.INTEGER:
-                    val = kryo.readObjectOrNull(in, Integer.class);
-                    break;
-                case Types.TINYINT:
-                case Types.SMALLINT:
-                    val = kryo.readObjectOrNull(in, Short.class);
-                    break;
-                case Types.REAL:
-                case Types.FLOAT:
-                    val = kryo.readObjectOrNull(in, Float.class);
-                    break;
-                case Types.VARBINARY:
-                case Types.LONGVARBINARY:
-                case Types.BLOB:
-                    val = KryoInputStreamSerializer.INSTANCE.deserializeBlobData(in, row.info.connection);
-                    break;
-                case Types.LONGVARCHAR:
-                case Types.CLOB:
-                    val = KryoReaderSerializer.INSTANCE.deserializeClobData(in, row.info.connection);
-                    break;
-                case Types.LONGNVARCHAR:
-                case Types.NCLOB:
-                    val = KryoReaderSerializer.INSTANCE.deserializeNClobData(in, row.info.connection);
-                    break;
-                default:
-                    throw new IllegalStateException("Unable to deserialize object for SQL type: " + types[i]
-                            + (dbType != types[i] ? ("/" + dbType) : "")
-                    );
+            // numeric values are stored in the same way in all 1.x versions
+            int row = batch.size;
+            for (int i = 0; i < readers.length; i++) {
+                switch (batch.kinds[i]) {
+                    case RowBatch.KIND_LONG:
+                        if (in.readByte() == Kryo.NULL) batch.setNull(i, row);
+                        else batch.longs[i][row] = in.readLong();
+                        break;
+                    case RowBatch.KIND_INT:
+                        if (in.readByte() == Kryo.NULL) batch.setNull(i, row);
+                        else batch.ints[i][row] = in.readInt();
+                        break;
+                    case RowBatch.KIND_SHORT:
+                        if (in.readByte() == Kryo.NULL) batch.setNull(i, row);
+                        else batch.shorts[i][row] = in.readShort();
+                        break;
+                    case RowBatch.KIND_DOUBLE:
+                        if (in.readByte() == Kryo.NULL) batch.setNull(i, row);
+                        else batch.doubles[i][row] = in.readDouble();
+                        break;
+                    case RowBatch.KIND_FLOAT:
+                        if (in.readByte() == Kryo.NULL) batch.setNull(i, row);
+                        else batch.floats[i][row] = in.readFloat();
+                        break;
+                    case RowBatch.KIND_BOOLEAN:
+                        if (in.readByte() == Kryo.NULL) batch.setNull(i, row);
+                        else batch.booleans[i][row] = in.readBoolean();
+                        break;
+                    default:
+                        batch.setObject(i, row, readers[i].read(connection));
+                }
             }
-            row.values[i] = val;
+            batch.size++;
         }
+        return batch.size > 0;
+    }
 
-        return true;
+    /**
+     * Creates a reader of a specific type stored within sql_variant.
+     */
+    private ColumnReader createVariantReader(int type) {
+        Map<Integer, ColumnReader> variantReaders = new HashMap<>();
+        return (connection) -> {
+            int dbType = in.readInt();
+            return variantReaders.computeIfAbsent(dbType, x -> createReader(type, x)).read(connection);
+        };
+    }
+
+    /**
+     * Creates a reader of column values, the readers mirror
+     * the writers of {@link KryoResultSetConsumer}.
+     *
+     * @param columnType SQL type of the column
+     * @param dbType     SQL type of the stored value
+     */
+    private ColumnReader createReader(int columnType, int dbType) {
+        switch (dbType) {
+            case Types.BIGINT:
+                return (connection) -> in.readByte() == Kryo.NULL ? null : in.readLong();
+            case Types.BINARY:
+                return (connection) -> {
+                    int length = in.readVarInt(true);
+                    return length == Kryo.NULL ? null : in.readBytes(length - 1);
+                };
+            case Types.BOOLEAN:
+            case Types.BIT:
+                return (connection) -> in.readByte() == Kryo.NULL ? null : in.readBoolean();
+            case Types.CHAR:
+            case Types.NCHAR:
+            case Types.VARCHAR:
+            case Types.NVARCHAR:
+                return (connection) -> in.readString();
+            case Types.DATE:
+                if (isVersion1_0) {
+                    // produces https://github.com/sranka/jdbcimage/issues/19
+                    return (connection) -> kryo.readObjectOrNull(in, Date.class);
+                }
+                if (temporal) {
+                    return (connection) -> in.readByte() == Kryo.NULL ? null : TemporalValues.readDate(in);
+                }
+                return (connection) -> {
+                    String val = in.readString();
+                    return val == null ? null : Date.valueOf(val);
+                };
+            case Types.TIME:
+                if (isVersion1_0) {
+                    // produces https://github.com/sranka/jdbcimage/issues/19
+                    return (connection) -> kryo.readObjectOrNull(in, Time.class);
+                }
+                if (temporal) {
+                    return (connection) -> in.readByte() == Kryo.NULL ? null : TemporalValues.readTime(in);
+                }
+                return (connection) -> {
+                    String val = in.readString();
+                    return val == null ? null : Time.valueOf(val);
+                };
+            case Types.TIMESTAMP:
+                if (isVersion1_0) {
+                    // produces https://github.com/sranka/jdbcimage/issues/19
+                    return (connection) -> kryo.readObjectOrNull(in, Timestamp.class);
+                }
+                return (connection) -> getTimestamp();
+            case Mssql.Types.DATETIMEOFFSET:
+                if (isVersion1_0) {
+                    return (connection) -> in.readString();
+                }
+                return (connection) -> getTimestamp();
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                Serializer<?> decimalSerializer = kryo.getSerializer(BigDecimal.class);
+                return (connection) -> kryo.readObjectOrNull(in, BigDecimal.class, decimalSerializer);
+            case Types.DOUBLE:
+            case Oracle.Types.BINARY_DOUBLE:
+                return (connection) -> in.readByte() == Kryo.NULL ? null : in.readDouble();
+            case Types.INTEGER:
+                return (connection) -> in.readByte() == Kryo.NULL ? null : in.readInt();
+            case Types.TINYINT:
+            case Types.SMALLINT:
+                return (connection) -> in.readByte() == Kryo.NULL ? null : in.readShort();
+            case Types.REAL:
+            case Types.FLOAT:
+                return (connection) -> in.readByte() == Kryo.NULL ? null : in.readFloat();
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return (connection) -> blobSerializer.deserializeBlobData(in, connection);
+            case Types.LONGVARCHAR:
+            case Types.CLOB:
+                return (connection) -> clobSerializer.deserializeClobData(in, connection);
+            case Types.LONGNVARCHAR:
+            case Types.NCLOB:
+                return (connection) -> clobSerializer.deserializeNClobData(in, connection);
+            default:
+                throw new IllegalStateException("Unable to deserialize object for SQL type: " + columnType
+                        + (dbType != columnType ? ("/" + dbType) : "")
+                );
+        }
     }
 
     private Object getTimestamp() {
         Object val;
         byte timeType = in.readByte();
+        if (temporal) {
+            return timeType == TIME_TYPE_NULL ? null : TemporalValues.readTimestamp(in, timeType);
+        }
         switch (timeType) {
             case TIME_TYPE_NULL:
-                val = kryo.readObjectOrNull(in, String.class);
+                val = in.readString();
                 break;
             case TIME_TYPE_EXACT:
                 val = new Timestamp(in.readLong());
                 ((Timestamp) val).setNanos(in.readInt());
-                kryo.readObjectOrNull(in, String.class);
+                in.readString();
                 break;
             case TIME_TYPE_LOCAL:
-                val = kryo.readObjectOrNull(in, String.class);
-                val = Timestamp.valueOf((String)val);
+                val = Timestamp.valueOf(in.readString());
                 break;
             default:
                 throw new IllegalStateException("Unsupported time type: " + timeType);
@@ -190,4 +306,11 @@ public class KryoResultProducer implements ResultProducer {
         // nothing to close herein
     }
 
+    /**
+     * Reads a value of a column, including its null marker.
+     */
+    @FunctionalInterface
+    private interface ColumnReader {
+        Object read(Connection connection);
+    }
 }
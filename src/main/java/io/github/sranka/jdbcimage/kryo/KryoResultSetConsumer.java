@@ -4,6 +4,7 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.FastOutput;
 import com.esotericsoftware.kryo.io.Output;
+import io.github.sranka.jdbcimage.LobStore;
 import io.github.sranka.jdbcimage.ResultConsumer;
 import io.github.sranka.jdbcimage.ResultSetInfo;
 import io.github.sranka.jdbcimage.main.Mssql;
@@ -28,15 +29,31 @@ import java.util.UUID;
 public class KryoResultSetConsumer implements ResultConsumer<ResultSet> {
     public static final String VERSION_1_0 = "1.0";
     public static final String VERSION_1_1 = "1.1";
+    // format 1.1 with varint features after the version
+    public static final String VERSION_1_2 = "1.2";
+
+    // features of formats 1.2 and 2.0, files with unknown features are rejected by import
+    // CLOB chunks are encoded in UTF-8
+    public static final int FEATURE_UTF8_CLOBS = 1;
+    // LOB values can refer to entries of a LobStore
+    public static final int FEATURE_LOB_STORE = 2;
+    // DATE/TIME/TIMESTAMP values are encoded as numbers, see TemporalValues
+    public static final int FEATURE_TEMPORAL = 4;
+    // features written by export, FEATURE_LOB_STORE is added when a LOB store is used
+    public static final int FEATURES = FEATURE_UTF8_CLOBS | FEATURE_TEMPORAL;
+    // features that import can read
+    static final int SUPPORTED_FEATURES = FEATURE_UTF8_CLOBS | FEATURE_LOB_STORE | FEATURE_TEMPORAL;
+    // chunk count that marks a reference to a LOB store entry
+    static final int LOB_REFERENCE = -2;
 
     public static final byte TIME_TYPE_NULL = 0;
     public static final byte TIME_TYPE_EXACT = 1;
     public static final byte TIME_TYPE_LOCAL = 2;
 
-    private static final Calendar CALENDAR_LOCAL = Calendar.getInstance();
-    private static final Calendar CALENDAR_OTHER = Calendar.getInstance(TimeZone.getTimeZone("GMT+0130"));
+    static final Calendar CALENDAR_LOCAL = Calendar.getInstance();
+    static final Calendar CALENDAR_OTHER = Calendar.getInstance(TimeZone.getTimeZone("GMT+0130"));
     // allows serializing sql_variant type, where a specific type information is required
-    private static final HashMap<Class<?>, Integer> SQL_VARIANT_CLASS_TO_TYPE;
+    static final HashMap<Class<?>, Integer> SQL_VARIANT_CLASS_TO_TYPE;
 
     static {
         SQL_VARIANT_CLASS_TO_TYPE = new HashMap<>();
@@ -57,24 +74,66 @@ public class KryoResultSetConsumer implements ResultConsumer<ResultSet> {
     // serialization
     private final Kryo kryo;
     private final Output out;
+    private final String version;
+    private KryoInputStreamSerializer streamSerializer = KryoInputStreamSerializer.INSTANCE;
+    private KryoBlobSerializer blobSerializer = KryoBlobSerializer.INSTANCE;
+    private KryoClobSerializer clobSerializer;
+    private LobStore lobStore;
 
     // initialized in onStart
-    private ResultSetInfo info;
-    private int columnCount;
+    private ColumnWriter[] writers;
     private long processedRows = -1;
 
     public KryoResultSetConsumer(OutputStream out) {
+        this(out, VERSION_1_2);
+    }
+
+    /**
+     * Creates a consumer that writes a specific format version.
+     *
+     * @param out     output stream
+     * @param version {@link #VERSION_1_2} or {@link #VERSION_1_1}, format readable by older versions of the tool
+     */
+    public KryoResultSetConsumer(OutputStream out, String version) {
         super();
+        if (!VERSION_1_2.equals(version) && !VERSION_1_1.equals(version)) {
+            throw new IllegalArgumentException("Unsupported table file format: " + version);
+        }
         this.kryo = KryoSetup.getKryo();
         this.out = new FastOutput(out);
+        this.version = version;
+        this.clobSerializer = VERSION_1_2.equals(version) ? KryoClobSerializer.UTF8_INSTANCE : KryoClobSerializer.INSTANCE;
+    }
+
+    /**
+     * Sets a store to write LOBs over {@link LobStore#STORE_BYTES} to, it has to be called before onStart.
+     *
+     * @param lobStore LOB store, the caller closes it
+     */
+    public void setLobStore(LobStore lobStore) {
+        if (!VERSION_1_2.equals(version)) {
+            throw new IllegalStateException("LOB store is not supported by table file format " + version);
+        }
+        this.lobStore = lobStore;
     }
 
     @Override
     public void onStart(ResultSetInfo info) {
-        this.info = info;
         this.processedRows = 0;
-        columnCount = info.columns.length;
-        kryo.writeObject(out, VERSION_1_1);
+        if (lobStore != null) {
+            streamSerializer = new KryoInputStreamSerializer(lobStore);
+            blobSerializer = new KryoBlobSerializer(streamSerializer);
+            clobSerializer = new KryoClobSerializer(new KryoReaderSerializer(true, lobStore));
+        }
+        // the codec plan of columns is resolved once, and not for every value
+        writers = new ColumnWriter[info.columns.length];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = createWriter(info.types[i]);
+        }
+        kryo.writeObject(out, version);
+        if (VERSION_1_2.equals(version)) {
+            out.writeVarInt(lobStore != null ? FEATURES | FEATURE_LOB_STORE : FEATURES, true);
+        }
         kryo.writeObject(out, info); // write header
     }
 
@@ -82,199 +141,237 @@ public class KryoResultSetConsumer implements ResultConsumer<ResultSet> {
     public void accept(ResultSet rs) {
         out.writeBoolean(true);// row item
         try {
-            // TYPE mapping taken from https://msdn.microsoft.com/en-us/library/ms378878(v=sql.110).aspx
-            for (int i = 0; i < columnCount; i++) {
-                Object val;
-                Class<?> clazz = null;
-                Serializer<?> serializer = null;
+            for (int i = 0; i < writers.length; i++) {
+                writers[i].write(rs, i + 1);
+            }
 
-                switch (info.types[i]) {
-                    case Types.BIGINT:
-                        val = rs.getLong(i + 1);
-                        clazz = Long.class;
-                        break;
-                    case Types.BINARY:
-                        val = rs.getBytes(i + 1);
-                        clazz = byte[].class;
-                        break;
-                    case Types.BOOLEAN:
-                    case Types.BIT:
-                        val = rs.getBoolean(i + 1);
-                        clazz = Boolean.class;
-                        break;
-                    case Types.CHAR:
-                    case Types.VARCHAR:
-                        val = rs.getString(i + 1);
-                        clazz = String.class;
-                        break;
-                    case Types.NCHAR:
-                    case Types.NVARCHAR:
-                        val = rs.getNString(i + 1);
-                        clazz = String.class;
-                        break;
-                    case Types.DATE:
-                        val = rs.getDate(i + 1);
-                        // version 1.0 was:
-                        // clazz = Date.class;
-                        // version 1.1:
-                        if (val != null) {
-                            val = val.toString();
-                        }
-                        clazz = String.class;
-                        break;
-                    case Types.TIME:
-                        val = rs.getTime(i + 1);
-                        // version 1.0 was:
-                        // clazz = Time.class;
-                        // version 1.1:
-                        clazz = String.class;
-                        if (val != null) {
-                            val = val.toString();
-                        }
-                        break;
-                    case Types.TIMESTAMP:
-                        // version 1.0 was:
-                        // val = rs.getTimestamp(i + 1);
-                        // clazz = Timestamp.class;
-                        // version 1.1:
-                        val = rs.getTimestamp(i + 1, CALENDAR_LOCAL);
-                        clazz = String.class;
-                        if (val == null) {
-                            out.writeByte(TIME_TYPE_NULL);
+            processedRows++;
+        } catch (SQLException e) {
+            //Unable to recover from any error
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates a writer of column values for the supplied SQL type. The writers produce the same
+     * output as <code>kryo.writeObjectOrNull</code> with the class/serializer of the type,
+     * but they write primitive values without boxing them.
+     */
+    private ColumnWriter createWriter(int type) {
+        // TYPE mapping taken from https://msdn.microsoft.com/en-us/library/ms378878(v=sql.110).aspx
+        switch (type) {
+            case Types.BIGINT:
+                return (rs, i) -> {
+                    long val = rs.getLong(i);
+                    if (writeNullMarker(rs.wasNull())) out.writeLong(val);
+                };
+            case Types.BINARY:
+                return (rs, i) -> {
+                    byte[] val = rs.getBytes(i);
+                    if (val == null || rs.wasNull()) {
+                        out.writeVarInt(Kryo.NULL, true);
+                    } else {
+                        out.writeVarInt(val.length + 1, true);
+                        out.writeBytes(val);
+                    }
+                };
+            case Types.BOOLEAN:
+            case Types.BIT:
+                return (rs, i) -> {
+                    boolean val = rs.getBoolean(i);
+                    if (writeNullMarker(rs.wasNull())) out.writeBoolean(val);
+                };
+            case Types.CHAR:
+            case Types.VARCHAR:
+                return (rs, i) -> writeString(rs.getString(i), rs);
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+                return (rs, i) -> writeString(rs.getNString(i), rs);
+            case Types.DATE:
+                // version 1.0 was: Date.class
+                // version 1.1: a string
+                // version 1.2: null marker and epoch day
+                if (VERSION_1_2.equals(version)) {
+                    return (rs, i) -> {
+                        Date val = rs.getDate(i);
+                        if (writeNullMarker(val == null || rs.wasNull())) TemporalValues.writeDate(out, val);
+                    };
+                }
+                return (rs, i) -> {
+                    Date val = rs.getDate(i);
+                    writeString(val == null ? null : val.toString(), rs);
+                };
+            case Types.TIME:
+                // version 1.0 was: Time.class
+                // version 1.1: a string
+                // version 1.2: null marker and second of day
+                if (VERSION_1_2.equals(version)) {
+                    return (rs, i) -> {
+                        Time val = rs.getTime(i);
+                        if (writeNullMarker(val == null || rs.wasNull())) TemporalValues.writeTime(out, val);
+                    };
+                }
+                return (rs, i) -> {
+                    Time val = rs.getTime(i);
+                    writeString(val == null ? null : val.toString(), rs);
+                };
+            case Types.TIMESTAMP:
+                // version 1.0 was: Timestamp.class
+                // version 1.1: time type, exact time or local datetime string
+                // version 1.2: time type, exact or local epoch second and nanos
+                if (VERSION_1_2.equals(version)) {
+                    TemporalValues.TimestampColumn column = new TemporalValues.TimestampColumn();
+                    return (rs, i) -> {
+                        if (!column.write(rs, i, out)) out.writeByte(TIME_TYPE_NULL);
+                    };
+                }
+                return (rs, i) -> {
+                    Timestamp val = rs.getTimestamp(i, CALENDAR_LOCAL);
+                    String str = null;
+                    if (val == null) {
+                        out.writeByte(TIME_TYPE_NULL);
+                    } else {
+                        Timestamp val2 = rs.getTimestamp(i, CALENDAR_OTHER);
+                        if (val.getTime() == val2.getTime()) {
+                            // exact timestamp is specified
+                            out.writeByte(TIME_TYPE_EXACT);
+                            out.writeLong(val.getTime());
+                            out.writeInt(val.getNanos());
                         } else {
-                            Timestamp val1 = (Timestamp) val;
-                            Timestamp val2 = rs.getTimestamp(i + 1, CALENDAR_OTHER);
-                            if (val1.getTime() == val2.getTime()) {
-                                // exact timestamp is specified
-                                out.writeByte(TIME_TYPE_EXACT);
-                                out.writeLong(val1.getTime());
-                                out.writeInt(val1.getNanos());
-                                val = null;
-                            } else {
-                                // timestamp is a local datetime
-                                out.writeByte(TIME_TYPE_LOCAL);
-                                val = val1.toString();
-                            }
+                            // timestamp is a local datetime
+                            out.writeByte(TIME_TYPE_LOCAL);
+                            str = val.toString();
                         }
-                        break;
-                    case Mssql.Types.DATETIMEOFFSET:
-                        // version 1.0 was:
-                        // val = rs.getTimestamp(i + 1);
-                        // clazz = Timestamp.class;
-                        // version 1.1:
-                        val = rs.getTimestamp(i + 1);
-                        clazz = String.class;
-                        if (val == null) {
+                    }
+                    writeString(str, rs);
+                };
+            case Mssql.Types.DATETIMEOFFSET:
+                // version 1.0 was: Timestamp.class
+                // version 1.1: time type and exact time
+                // version 1.2: time type, exact epoch second and nanos
+                if (VERSION_1_2.equals(version)) {
+                    return (rs, i) -> {
+                        Timestamp val = rs.getTimestamp(i);
+                        if (val == null || rs.wasNull()) {
                             out.writeByte(TIME_TYPE_NULL);
                         } else {
-                            Timestamp ts = (Timestamp) val;
                             out.writeByte(TIME_TYPE_EXACT);
-                            out.writeLong(ts.getTime());
-                            out.writeInt(ts.getNanos());
-                            val = null;
-                        }
-                        break;
-                    case Types.DECIMAL:
-                    case Types.NUMERIC:
-                        val = rs.getBigDecimal(i + 1);
-                        clazz = BigDecimal.class;
-                        break;
-                    case Types.DOUBLE:
-                    case Oracle.Types.BINARY_DOUBLE:
-                        val = rs.getDouble(i + 1);
-                        clazz = Double.class;
-                        break;
-                    case Types.INTEGER:
-                        val = rs.getInt(i + 1);
-                        clazz = Integer.class;
-                        break;
-                    case Types.TINYINT:
-                    case Types.SMALLINT:
-                        val = rs.getShort(i + 1);
-                        clazz = Short.class;
-                        break;
-                    case Types.REAL:
-                    case Types.FLOAT:
-                        val = rs.getFloat(i + 1);
-                        clazz = Float.class;
-                        break;
-                    case Types.VARBINARY:
-                    case Types.LONGVARBINARY:
-                        val = rs.getBinaryStream(i + 1);
-                        serializer = KryoInputStreamSerializer.INSTANCE;
-                        break;
-                    case Types.BLOB:
-                        val = rs.getBlob(i + 1);
-                        serializer = KryoBlobSerializer.INSTANCE;
-                        break;
-                    case Types.LONGVARCHAR:
-                    case Types.CLOB:
-                        val = rs.getClob(i + 1);
-                        serializer = KryoClobSerializer.INSTANCE;
-                        break;
-                    case Types.LONGNVARCHAR:
-                    case Types.NCLOB:
-                        val = rs.getNClob(i + 1);
-                        serializer = KryoClobSerializer.INSTANCE;
-                        break;
-                    case Mssql.Types.SQL_VARIANT:
-                        val = rs.getObject(i + 1);
-                        if (val == null) {
-                            clazz = String.class; // any class is good for serializing null
-                            out.writeInt(Types.VARCHAR);
-                        } else {
-                            // check that the class is supported
-                            clazz = val.getClass();
-                            Integer type = SQL_VARIANT_CLASS_TO_TYPE.get(clazz);
-                            if (type == null) {
-                                throw new IllegalStateException("Unable to serialize sql_variant SQL type: " + info.types[i]
-                                        + ", Class: " + clazz.getName()
-                                        + ", Object: " + val);
-                            }
-                            out.writeInt(type);
+                            TemporalValues.writeExactTimestamp(out, val);
                         }
-                        break;
-                    case Types.OTHER:
-                        val = rs.getObject(i + 1);
-                        if (val == null) {
-                            clazz = String.class; // any class is good for serializing null
-                            out.writeInt(Types.VARCHAR);
-                        } else if (val.getClass().getName().equals("org.postgresql.util.PGobject")) {
-                            // PGObject serialized as a string
-                            clazz = String.class;
-                            val = val.toString();
-                            out.writeInt(Types.VARCHAR);
-                        } else if (val instanceof UUID) {
-                            clazz = String.class;
-                            val = val.toString();
-                            out.writeInt(Types.VARCHAR);
-                        } else {
-                            throw new IllegalStateException("Unable to serialize SQL OTHER type: " + info.types[i]
-                                    + ", Class: " + val.getClass().getName()
+                    };
+                }
+                return (rs, i) -> {
+                    Timestamp val = rs.getTimestamp(i);
+                    if (val == null) {
+                        out.writeByte(TIME_TYPE_NULL);
+                    } else {
+                        out.writeByte(TIME_TYPE_EXACT);
+                        out.writeLong(val.getTime());
+                        out.writeInt(val.getNanos());
+                    }
+                    out.writeString(null);
+                };
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                Serializer<?> decimalSerializer = kryo.getSerializer(BigDecimal.class);
+                return (rs, i) -> writeObject(rs.getBigDecimal(i), decimalSerializer, rs);
+            case Types.DOUBLE:
+            case Oracle.Types.BINARY_DOUBLE:
+                return (rs, i) -> {
+                    double val = rs.getDouble(i);
+                    if (writeNullMarker(rs.wasNull())) out.writeDouble(val);
+                };
+            case Types.INTEGER:
+                return (rs, i) -> {
+                    int val = rs.getInt(i);
+                    if (writeNullMarker(rs.wasNull())) out.writeInt(val);
+                };
+            case Types.TINYINT:
+            case Types.SMALLINT:
+                return (rs, i) -> {
+                    short val = rs.getShort(i);
+                    if (writeNullMarker(rs.wasNull())) out.writeShort(val);
+                };
+            case Types.REAL:
+            case Types.FLOAT:
+                return (rs, i) -> {
+                    float val = rs.getFloat(i);
+                    if (writeNullMarker(rs.wasNull())) out.writeFloat(val);
+                };
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                return (rs, i) -> writeObject(rs.getBinaryStream(i), streamSerializer, rs);
+            case Types.BLOB:
+                return (rs, i) -> writeObject(rs.getBlob(i), blobSerializer, rs);
+            case Types.LONGVARCHAR:
+            case Types.CLOB:
+                return (rs, i) -> writeObject(rs.getClob(i), clobSerializer, rs);
+            case Types.LONGNVARCHAR:
+            case Types.NCLOB:
+                return (rs, i) -> writeObject(rs.getNClob(i), clobSerializer, rs);
+            case Mssql.Types.SQL_VARIANT:
+                return (rs, i) -> {
+                    Object val = rs.getObject(i);
+                    if (val == null) {
+                        out.writeInt(Types.VARCHAR);
+                        out.writeString(null);
+                    } else {
+                        // check that the class is supported
+                        Class<?> clazz = val.getClass();
+                        Integer valType = SQL_VARIANT_CLASS_TO_TYPE.get(clazz);
+                        if (valType == null) {
+                            throw new IllegalStateException("Unable to serialize sql_variant SQL type: " + type
+                                    + ", Class: " + clazz.getName()
                                     + ", Object: " + val);
                         }
-                        break;
-                    default:
-                        val = rs.getObject(i + 1);
-                        throw new IllegalStateException("Unable to serialize SQL type: " + info.types[i]
-                                + ", Class: " + (val == null ? "<unknown>" : val.getClass().getName())
+                        out.writeInt(valType);
+                        kryo.writeObjectOrNull(out, rs.wasNull() ? null : val, clazz);
+                    }
+                };
+            case Types.OTHER:
+                return (rs, i) -> {
+                    Object val = rs.getObject(i);
+                    if (val != null && !val.getClass().getName().equals("org.postgresql.util.PGobject") && !(val instanceof UUID)) {
+                        throw new IllegalStateException("Unable to serialize SQL OTHER type: " + type
+                                + ", Class: " + val.getClass().getName()
                                 + ", Object: " + val);
-                }
-                if (rs.wasNull()) {
-                    val = null;
-                }
-                if (clazz != null) {
-                    kryo.writeObjectOrNull(out, val, clazz);
-                } else if (serializer != null) {
-                    kryo.writeObjectOrNull(out, val, serializer);
-                }
-            }
+                    }
+                    // PGObject or UUID serialized as a string
+                    out.writeInt(Types.VARCHAR);
+                    writeString(val == null ? null : val.toString(), rs);
+                };
+            default:
+                return (rs, i) -> {
+                    Object val = rs.getObject(i);
+                    throw new IllegalStateException("Unable to serialize SQL type: " + type
+                            + ", Class: " + (val == null ? "<unknown>" : val.getClass().getName())
+                            + ", Object: " + val);
+                };
+        }
+    }
 
-            processedRows++;
-        } catch (SQLException e) {
-            //Unable to recover from any error
-            throw new RuntimeException(e);
+    /**
+     * Writes the null marker of a value that is not written by a null-aware serializer.
+     *
+     * @param isNull true for a null value
+     * @return true when the value is to be written
+     */
+    private boolean writeNullMarker(boolean isNull) {
+        if (isNull) {
+            out.writeByte(Kryo.NULL);
+            return false;
         }
+        out.writeByte(Kryo.NOT_NULL);
+        return true;
+    }
+
+    private void writeString(String val, ResultSet rs) throws SQLException {
+        // kryo strings carry the null marker themselves
+        out.writeString(val == null || rs.wasNull() ? null : val);
+    }
+
+    private void writeObject(Object val, Serializer<?> serializer, ResultSet rs) throws SQLException {
+        kryo.writeObjectOrNull(out, val == null || rs.wasNull() ? null : val, serializer);
     }
 
     @Override
@@ -286,4 +383,27 @@ public class KryoResultSetConsumer implements ResultConsumer<ResultSet> {
 
         return processedRows;
     }
+
+    /**
+     * Gets the number of serialized (uncompressed) bytes written so far.
+     *
+     * @return bytes
+     */
+    public long getWrittenBytes() {
+        return out.total();
+    }
+
+    /**
+     * Writes a value of a column, including its null marker.
+     */
+    @FunctionalInterface
+    private interface ColumnWriter {
+        /**
+         * Writes a column value.
+         *
+         * @param rs    result set positioned on a row
+         * @param index column index, starting at 1
+         */
+        void write(ResultSet rs, int index) throws SQLException;
+    }
 }
@@ -0,0 +1,99 @@
+package io.github.sranka.jdbcimage.kryo;
+
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Output;
+import io.github.sranka.jdbcimage.ChunkPool;
+import io.github.sranka.jdbcimage.LoggedUtils;
+import io.github.sranka.jdbcimage.SpilledInputStream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Growable buffer of column data of a row group. Once the data exceed a limit, the buffer
+ * is spilled to a temporary file and then used as a write buffer of the file, so that large
+ * LOB values of a row group are not kept in memory.
+ */
+class SpillingOutput extends Output {
+    private final long limit;
+    private File file;
+
+    /**
+     * Creates a buffer.
+     *
+     * @param bufferSize initial size of the buffer
+     * @param limit      bytes kept in memory
+     */
+    SpillingOutput(int bufferSize, long limit) {
+        super(bufferSize, -1);
+        this.limit = limit;
+    }
+
+    @Override
+    protected boolean require(int required) throws KryoException {
+        if (file == null && capacity - position < required && position + (long) required > limit) {
+            try {
+                file = SpilledInputStream.createFile();
+                // the buffer is flushed to the file instead of growing
+                outputStream = new FileOutputStream(file);
+            } catch (IOException e) {
+                throw new KryoException(e);
+            }
+        }
+        return super.require(required);
+    }
+
+    /**
+     * Writes the data to another output and empties the buffer.
+     *
+     * @param out output
+     */
+    void writeTo(Output out) {
+        if (file == null) {
+            out.writeBytes(buffer, 0, position);
+        } else {
+            flush();
+            byte[] chunk = ChunkPool.acquireBytes();
+            try {
+                outputStream.close();
+                try (InputStream in = new FileInputStream(file)) {
+                    int count;
+                    while ((count = in.read(chunk)) >= 0) {
+                        out.writeBytes(chunk, 0, count);
+                    }
+                }
+            } catch (IOException e) {
+                throw new KryoException(e);
+            } finally {
+                ChunkPool.release(chunk);
+                deleteFile();
+            }
+        }
+        position = 0;
+        total = 0;
+    }
+
+    private void deleteFile() {
+        if (file != null) {
+            outputStream = null;
+            SpilledInputStream.deleteFile(file);
+            file = null;
+        }
+    }
+
+    /**
+     * Deletes spilled data.
+     */
+    @Override
+    public void close() {
+        if (outputStream != null) {
+            LoggedUtils.close(outputStream);
+        }
+        deleteFile();
+        position = 0;
+        total = 0;
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.sranka.jdbcimage.kryo;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+
+import static io.github.sranka.jdbcimage.kryo.KryoResultSetConsumer.*;
+
+/**
+ * Numeric encoding of DATE/TIME/TIMESTAMP values of table files with {@link KryoResultSetConsumer#FEATURE_TEMPORAL}:
+ * <pre>
+ * DATE:            varlong epoch day
+ * TIME:            varint second of day
+ * exact TIMESTAMP: varlong epoch second, varint nanos
+ * local TIMESTAMP: varlong epoch second of the local date-time at UTC, varint nanos
+ * </pre>
+ * Values keep the precision of the string encoding of format 1.1, so DATE and TIME are local values.
+ */
+final class TemporalValues {
+    private TemporalValues() {
+    }
+
+    static void writeDate(Output out, Date val) {
+        out.writeVarLong(val.toLocalDate().toEpochDay(), false);
+    }
+
+    static Date readDate(Input in) {
+        return Date.valueOf(LocalDate.ofEpochDay(in.readVarLong(false)));
+    }
+
+    static void writeTime(Output out, Time val) {
+        out.writeVarInt(val.toLocalTime().toSecondOfDay(), true);
+    }
+
+    static Time readTime(Input in) {
+        return Time.valueOf(LocalTime.ofSecondOfDay(in.readVarInt(true)));
+    }
+
+    static void writeExactTimestamp(Output out, Timestamp val) {
+        out.writeVarLong(Math.floorDiv(val.getTime(), 1000L), false);
+        out.writeVarInt(val.getNanos(), true);
+    }
+
+    static Timestamp readExactTimestamp(Input in) {
+        Timestamp val = new Timestamp(in.readVarLong(false) * 1000);
+        val.setNanos(in.readVarInt(true));
+        return val;
+    }
+
+    static void writeLocalTimestamp(Output out, LocalDateTime val) {
+        out.writeVarLong(val.toEpochSecond(ZoneOffset.UTC), false);
+        out.writeVarInt(val.getNano(), true);
+    }
+
+    static Timestamp readLocalTimestamp(Input in) {
+        long seconds = in.readVarLong(false);
+        return Timestamp.valueOf(LocalDateTime.ofEpochSecond(seconds, in.readVarInt(true), ZoneOffset.UTC));
+    }
+
+    /**
+     * Reads a timestamp value of the time type written by {@link TimestampColumn}.
+     *
+     * @param in       input
+     * @param timeType {@link KryoResultSetConsumer#TIME_TYPE_EXACT} or {@link KryoResultSetConsumer#TIME_TYPE_LOCAL}
+     * @return timestamp
+     */
+    static Timestamp readTimestamp(Input in, byte timeType) {
+        switch (timeType) {
+            case TIME_TYPE_EXACT:
+                return readExactTimestamp(in);
+            case TIME_TYPE_LOCAL:
+                return readLocalTimestamp(in);
+            default:
+                throw new IllegalStateException("Unsupported time type: " + timeType);
+        }
+    }
+
+    /**
+     * Writes TIMESTAMP values of a result set column. Whether the column has exact or local values
+     * is detected on its first non-null value, with two calendars, so that other values are fetched once.
+     */
+    static class TimestampColumn {
+        private byte timeType = TIME_TYPE_NULL;
+
+        /**
+         * Writes the time type and the value of a not-null timestamp.
+         *
+         * @param rs    result set positioned on a row
+         * @param index column index, starting at 1
+         * @param out   output
+         * @return false when the value is null and nothing is written
+         */
+        boolean write(ResultSet rs, int index, Output out) throws SQLException {
+            Timestamp val = rs.getTimestamp(index, CALENDAR_LOCAL);
+            if (val == null || rs.wasNull()) return false;
+            if (timeType == TIME_TYPE_NULL) {
+                Timestamp val2 = rs.getTimestamp(index, CALENDAR_OTHER);
+                timeType = val.getTime() == val2.getTime() ? TIME_TYPE_EXACT : TIME_TYPE_LOCAL;
+            }
+            out.writeByte(timeType);
+            if (timeType == TIME_TYPE_EXACT) {
+                writeExactTimestamp(out, val);
+            } else {
+                writeLocalTimestamp(out, val.toLocalDateTime());
+            }
+            return true;
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package io.github.sranka.jdbcimage.main;
 
 import io.github.sranka.jdbcimage.LoggedUtils;
+import io.github.sranka.jdbcimage.ResultConsumer;
 import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowData;
+import io.github.sranka.jdbcimage.db.QueryRunner;
 import org.apache.commons.dbcp2.BasicDataSource;
 
 import java.io.Reader;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -138,6 +145,39 @@ public abstract class DBFacade implements DBFacadeListener {
         return s;
     }
 
+    /**
+     * Gets estimated row counts of user tables from database statistics,
+     * they are used to export the largest tables first.
+     *
+     * @param con connection
+     * @return row count estimates by table name, tables without statistics are missing
+     */
+    public Map<String, Long> getTableRowEstimates(Connection con) throws SQLException {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Executes a query that returns a table name and its estimated row count.
+     *
+     * @param con   connection
+     * @param query query to execute
+     * @return row count estimates by table name, negative or null estimates are skipped
+     */
+    protected Map<String, Long> queryTableRowEstimates(Connection con, String query) throws SQLException {
+        Map<String, Long> retVal = new HashMap<>();
+        try (Statement stmt = con.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(query)) {
+                while (rs.next()) {
+                    double rows = rs.getDouble(2);
+                    if (!rs.wasNull() && rows >= 0) {
+                        retVal.put(rs.getString(1), (long) rows);
+                    }
+                }
+            }
+        }
+        return retVal;
+    }
+
     /**
      * Gets table information.
      *
@@ -158,7 +198,8 @@ public abstract class DBFacade implements DBFacadeListener {
     }
 
     /**
-     * Converts the requested value to a DB-supported value.
+     * Converts the requested value to a DB-supported value. Numeric and boolean values
+     * of imported row batches are bound directly, without calling this method.
      *
      * @param value value to process
      * @return supported value
@@ -187,6 +228,54 @@ public abstract class DBFacade implements DBFacadeListener {
         return reader;
     }
 
+    /**
+     * Creates a runner of a query that exports table rows.
+     *
+     * @param con      connection to query
+     * @param query    query to run
+     * @param consumer consumer of the query result
+     * @param bulk     true to use a database-specific bulk export when available
+     * @return runner, a JDBC query runner by default
+     */
+    public QueryRunner createQueryRunner(Connection con, String query, ResultConsumer<ResultSet> consumer, boolean bulk) {
+        return new QueryRunner(con, query, consumer);
+    }
+
+    /**
+     * Creates a consumer that imports table rows using a database-specific bulk load.
+     *
+     * @param con             connection to import to
+     * @param tableName       table to import to
+     * @param actualColumns   actual columns, a key is lower case of the name
+     * @param notifyOnStartFn called when the import of table data starts
+     * @return consumer or null to import using INSERT batches, null by default
+     */
+    public ResultConsumer<RowData> createBulkLoadConsumer(Connection con, String tableName, Map<String, ColumnInfo> actualColumns,
+                                                          Consumer<ResultSetInfo> notifyOnStartFn) throws SQLException {
+        return null;
+    }
+
+    /**
+     * Gets an optimizer hint of INSERT statements that loads the inserted rows directly into new blocks
+     * of the table. Such a table cannot be accessed again in the same transaction, so that every
+     * executed batch is committed.
+     *
+     * @return hint or null to insert conventionally, null by default
+     */
+    public String getDirectPathInsertHint() {
+        return null;
+    }
+
+    /**
+     * Gets the maximum number of bind parameters of a statement, it limits the rows
+     * of multi-row INSERT statements.
+     *
+     * @return parameter limit or 0 when multi-row INSERT statements are not supported, 0 by default
+     */
+    public int getMaxBindParameters() {
+        return 0;
+    }
+
     public void importStarted() {
         listeners.forEach(DBFacadeListener::importStarted);
     }
@@ -213,6 +302,16 @@ public abstract class DBFacade implements DBFacadeListener {
         }
     }
 
+    /**
+     * Called when the import of a table file ends, also when it fails. A table is imported from more
+     * table files (segments) when its info contains {@link SingleTableImport#SEGMENTS_KEY}.
+     *
+     * @param table     table name
+     * @param tableInfo table info
+     */
+    public void afterImportTableFile(String table, TableInfo tableInfo) {
+    }
+
     public static class ColumnInfo {
         private final String name;
         private final String dbType;
@@ -1,12 +1,20 @@
 package io.github.sranka.jdbcimage.main;
 
+import io.github.sranka.jdbcimage.AsyncOutputStream;
+import io.github.sranka.jdbcimage.ChunkPool;
+import io.github.sranka.jdbcimage.LobStore;
 import io.github.sranka.jdbcimage.LoggedUtils;
+import io.github.sranka.jdbcimage.SpilledInputStream;
+import io.github.sranka.jdbcimage.ZipArchiveWriter;
+import io.github.sranka.jdbcimage.codec.Codec;
+import io.github.sranka.jdbcimage.codec.Codecs;
+import io.github.sranka.jdbcimage.codec.DeflateCodec;
 import org.apache.commons.dbcp2.BasicDataSource;
 
 import javax.sql.DataSource;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -22,6 +30,7 @@ import java.sql.Statement;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -38,14 +47,15 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 @SuppressWarnings({"IOStreamConstructor", "SpellCheckingInspection"})
 public abstract class MainToolBase implements AutoCloseable {
+    // separates a table file name from the index of its key range segment, see SingleTableExport#getKeyRanges
+    public static final char SEGMENT_SEPARATOR = '~';
     //////////////////////
     // Parameters
     private final String tool_listeners = System.getProperty("listeners");
@@ -61,6 +71,18 @@ public abstract class MainToolBase implements AutoCloseable {
     // let you connect profiling tools
     public boolean tool_waitOnStartup = Boolean.parseBoolean(System.getProperty("tool_waitOnStartup", "false"));
     public int tool_concurrency;
+    // compress and write table files in a separate thread, decode imported table files in a separate thread
+    public boolean tool_pipeline = Boolean.parseBoolean(System.getProperty("tool_pipeline", "false"));
+    // compress table files in blocks using the specified number of threads, 0 to compress in the writing thread
+    public int tool_compressThreads = Integer.parseInt(System.getProperty("tool_compressThreads", "0"));
+    // compression codec of table files (none, deflate, deflate:level, lz4), empty to write plain zlib streams
+    public String tool_codec = System.getProperty("tool_codec");
+    // write table files directly into the zip file during export, read them directly from the zip file during import
+    public boolean tool_directZip = Boolean.parseBoolean(System.getProperty("tool_directZip", "false"));
+    // import tables using a database-specific bulk load (such as PostgreSQL COPY) when available, instead of INSERT batches
+    public boolean tool_bulkLoad = Boolean.parseBoolean(System.getProperty("tool_bulkLoad", "false"));
+    // export tables using a database-specific bulk export (such as PostgreSQL COPY) when available, instead of JDBC queries
+    public boolean tool_bulkExport = Boolean.parseBoolean(System.getProperty("tool_bulkExport", "false"));
     // internal
     public boolean requireZipArgument = Boolean.parseBoolean(System.getProperty("requireZipArgument", "true"));
     /// ///////////////////
@@ -73,6 +95,9 @@ public abstract class MainToolBase implements AutoCloseable {
     protected Map<String, String> tables = null;
     private String tool_builddir = System.getProperty("tool_builddir");
     private File buildDirectory = null;
+    private ExecutorService compressExecutor = null;
+    private ZipArchiveWriter zipWriter = null; // set when writing directly to zip
+    private ZipFile zipReader = null; // set when reading directly from zip
 
     {
         // concurrency
@@ -153,7 +178,7 @@ public abstract class MainToolBase implements AutoCloseable {
                 try (Stream<Path> files = Files.list(Paths.get(tool_builddir))) {
                     files.forEach(x -> {
                         File f = x.toFile();
-                        if (f.isFile() && !f.getName().contains(".")) {
+                        if (f.isFile() && (!f.getName().contains(".") || f.getName().endsWith(LobStore.SUFFIX))) {
                             try (FileInputStream fis = new FileInputStream(f)) {
                                 ZipEntry zipEntry = new ZipEntry(f.getName());
                                 zos.putNextEntry(zipEntry);
@@ -175,6 +200,71 @@ public abstract class MainToolBase implements AutoCloseable {
         }
     }
 
+    /**
+     * Opens the configured zipFile, so that table files are written directly into it.
+     * It has no effect unless tool_directZip is set.
+     */
+    public void openZip() {
+        if (zipFile != null && tool_directZip) {
+            try {
+                zipWriter = new ZipArchiveWriter(new File(zipFile), getBuildDirectory(), ZipArchiveWriter.DEFAULT_MEMORY_LIMIT);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Closes the zipFile opened by openZip.
+     */
+    public void closeZip() {
+        if (zipWriter != null) {
+            long start = System.currentTimeMillis();
+            try {
+                zipWriter.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            zipWriter = null;
+            out.println("Zipped to '" + zipFile + "' - " + Duration.ofMillis(System.currentTimeMillis() - start));
+        }
+    }
+
+    /**
+     * Deletes the zipFile opened by openZip after a failed export, no archive is left behind.
+     */
+    public void abortZip() {
+        if (zipWriter != null) {
+            zipWriter.abort();
+            zipWriter = null;
+        }
+    }
+
+    /**
+     * Opens the configured zipFile, so that table files are read directly from its entries.
+     * It has no effect unless tool_directZip is set.
+     *
+     * @return names of table files in the zip file, or null when the zip file was not opened
+     */
+    public List<String> openZipInput() {
+        if (zipFile != null && tool_directZip) {
+            try {
+                zipReader = new ZipFile(zipFile);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            List<String> retVal = new ArrayList<>();
+            Collections.list(zipReader.entries()).forEach(x -> {
+                if (!x.isDirectory()) {
+                    retVal.add(x.getName());
+                }
+            });
+            out.println("Reading table files from: " + zipFile);
+            return retVal;
+        }
+        return null;
+    }
+
     /**
      * Deletes build directory.
      */
@@ -247,6 +337,36 @@ public abstract class MainToolBase implements AutoCloseable {
         }
     }
 
+    /**
+     * Gets the name of a file that contains a segment of table data.
+     *
+     * @param fileName table file name
+     * @param segment  segment index
+     * @return segment file name
+     */
+    public static String toSegmentFileName(String fileName, int segment) {
+        return fileName + SEGMENT_SEPARATOR + segment;
+    }
+
+    /**
+     * Gets the table file name out of a file name that possibly contains a segment of table data.
+     *
+     * @param fileName table or segment file name
+     * @return table file name
+     */
+    public static String toTableFileName(String fileName) {
+        int sep = fileName.lastIndexOf(SEGMENT_SEPARATOR);
+        if (sep > 0 && sep < fileName.length() - 1) {
+            for (int i = sep + 1; i < fileName.length(); i++) {
+                if (!Character.isDigit(fileName.charAt(i))) {
+                    return fileName;
+                }
+            }
+            return fileName.substring(0, sep);
+        }
+        return fileName;
+    }
+
     public boolean isIgnoreEmptyTables() {
         return tool_ignoreEmptyTables;
     }
@@ -296,6 +416,14 @@ public abstract class MainToolBase implements AutoCloseable {
         if (zipFile != null) {
             deleteBuildDirectory();
         }
+        if (zipReader != null) {
+            LoggedUtils.close(zipReader);
+        }
+        synchronized (this) {
+            if (compressExecutor != null) {
+                compressExecutor.shutdown();
+            }
+        }
         finished();
         if (dataSource != null) {
             try {
@@ -315,6 +443,16 @@ public abstract class MainToolBase implements AutoCloseable {
         this.out = Env.out;
     }
 
+    /**
+     * Checks whether the tool exports tables, so that connections are set up for reading large results.
+     * It is called during construction, before fields of subclasses are initialized.
+     *
+     * @return true for export tools
+     */
+    public boolean isExport() {
+        return false;
+    }
+
     protected void initDataSource() {
         BasicDataSource bds = new BasicDataSource();
         bds.setUrl(url);
@@ -363,11 +501,161 @@ public abstract class MainToolBase implements AutoCloseable {
         }
     }
 
-    public OutputStream toResultOutput(File f) throws FileNotFoundException {
-        return new DeflaterOutputStream(new FileOutputStream(f));
+    /**
+     * Gets estimated row counts of user tables, see {@link DBFacade#getTableRowEstimates(Connection)}.
+     *
+     * @return estimates by table name, empty when statistics are not available
+     */
+    public Map<String, Long> getTableRowEstimates() {
+        try (Connection con = getReadOnlyConnection()) {
+            return dbFacade.getTableRowEstimates(con);
+        } catch (SQLException e) {
+            LoggedUtils.ignore("Unable to get table statistics!", e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Gets a shared executor that compresses blocks of table files.
+     *
+     * @return executor
+     */
+    protected synchronized ExecutorService getCompressExecutor() {
+        if (compressExecutor == null) {
+            compressExecutor = new ForkJoinPool(tool_compressThreads);
+        }
+        return compressExecutor;
     }
 
-    public InputStream toResultInput(File f) throws FileNotFoundException {
+    public OutputStream toResultOutput(File f) throws IOException {
+        ExecutorService executor = tool_compressThreads > 0 ? getCompressExecutor() : null;
+        OutputStream out = zipWriter != null ? zipWriter.newEntry(f.getName()) : new FileOutputStream(f);
+        if (tool_codec == null || tool_codec.isEmpty()) {
+            // zlib stream without a codec header, as written by older versions
+            out = new DeflateCodec().compress(out, executor, tool_compressThreads);
+        } else {
+            Codec codec = Codecs.getCodec(tool_codec);
+            Codecs.writeHeader(out, codec);
+            out = codec.compress(out, executor, tool_compressThreads);
+        }
+        if (tool_pipeline) {
+            // fetch and encode rows in the caller thread, compress and write in a writer thread
+            out = new AsyncOutputStream(out);
+        }
+        return out;
+    }
+
+    /**
+     * Marks the output of the supplied file to be discarded, it has to be called before the output is closed.
+     * Table files that are written to the file system have to be deleted by the caller after they are closed.
+     *
+     * @param f file passed to toResultOutput
+     */
+    public void discardResultOutput(File f) {
+        if (zipWriter != null) {
+            zipWriter.discard(f.getName());
+        }
+    }
+
+    /**
+     * Creates a LOB store of a table file, when LOBs over {@link LobStore#STORE_BYTES} are written out of line.
+     * The store has to be closed by closeLobStoreOutput after the table file output is closed.
+     *
+     * @param f file passed to toResultOutput
+     * @return store or null when LOBs are written to table files
+     */
+    public LobStore toLobStoreOutput(File f) throws IOException {
+        if (LobStore.STORE_BYTES < 0) {
+            return null;
+        }
+        // the store is written at random positions, it is copied to the zip file when closed
+        File storeFile = zipWriter != null
+                ? new File(getBuildDirectory(), f.getName() + LobStore.SUFFIX)
+                : new File(f.getPath() + LobStore.SUFFIX);
+        Codec codec = tool_codec == null || tool_codec.isEmpty() ? new DeflateCodec() : Codecs.getCodec(tool_codec);
+        return LobStore.create(storeFile, codec);
+    }
+
+    /**
+     * Closes a LOB store created by toLobStoreOutput, an empty or discarded store is deleted.
+     *
+     * @param store   store to close
+     * @param discard true to delete the store
+     */
+    public void closeLobStoreOutput(LobStore store, boolean discard) {
+        File file = store.getFile();
+        try {
+            boolean keep = !discard && !store.isEmpty();
+            store.close();
+            if (keep && zipWriter != null) {
+                try (InputStream in = new FileInputStream(file);
+                     OutputStream out = zipWriter.newEntry(file.getName())) {
+                    byte[] buffer = ChunkPool.acquireBytes();
+                    try {
+                        int count;
+                        while ((count = in.read(buffer)) >= 0) {
+                            out.write(buffer, 0, count);
+                        }
+                    } finally {
+                        ChunkPool.release(buffer);
+                    }
+                }
+                keep = false;
+            }
+            if (!keep) {
+                SpilledInputStream.deleteFile(file);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Opens a LOB store of a table file. A store that is read from a zip file is extracted
+     * to the build directory, since LOBs are read from the store at random positions.
+     *
+     * @param f file passed to toResultInput
+     * @return store or null when the table file has no LOB store
+     */
+    public LobStore toLobStoreInput(File f) throws IOException {
+        String name = f.getName() + LobStore.SUFFIX;
+        if (zipReader != null) {
+            ZipEntry entry = zipReader.getEntry(name);
+            if (entry != null) {
+                try (InputStream in = zipReader.getInputStream(entry)) {
+                    return LobStore.extract(in, getBuildDirectory());
+                }
+            }
+        }
+        File storeFile = new File(f.getPath() + LobStore.SUFFIX);
+        if (storeFile.isFile()) {
+            return LobStore.open(storeFile, false);
+        }
+        int sep = f.getName().indexOf("#");
+        if (!f.exists() && sep > 0) {
+            // a table file in a zip file, as dumped by TableFileDump
+            File zip = new File(f.getParent(), f.getName().substring(0, sep));
+            if (zip.isFile()) {
+                try (ZipFile zf = new ZipFile(zip)) {
+                    ZipEntry entry = zf.getEntry(f.getName().substring(sep + 1) + LobStore.SUFFIX);
+                    if (entry != null) {
+                        try (InputStream in = zf.getInputStream(entry)) {
+                            return LobStore.extract(in, null);
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    public InputStream toResultInput(File f) throws IOException {
+        if (zipReader != null) {
+            ZipEntry entry = zipReader.getEntry(f.getName());
+            if (entry != null) {
+                return Codecs.decompress(new BufferedInputStream(zipReader.getInputStream(entry), 1024 * 64));
+            }
+        }
         boolean zip = false;
         if (!f.exists() || (zip = f.getName().endsWith(".zip"))) {
             int sep = -1;
@@ -383,7 +671,7 @@ public abstract class MainToolBase implements AutoCloseable {
                         ZipEntry entry;
                         while ((entry = zis.getNextEntry()) != null) {
                             if (entry.getName().equalsIgnoreCase(zipFile)) {
-                                return new InflaterInputStream(zis);
+                                return Codecs.decompress(zis);
                             }
                             zis.closeEntry();
                         }
@@ -416,7 +704,7 @@ public abstract class MainToolBase implements AutoCloseable {
             }
             throw new IllegalArgumentException("File not found: " + f);
         }
-        return new InflaterInputStream(new FileInputStream(f));
+        return Codecs.decompress(new FileInputStream(f));
     }
 
     public Connection getReadOnlyConnection() throws SQLException {
@@ -443,6 +731,47 @@ public abstract class MainToolBase implements AutoCloseable {
         };
     }
 
+    /**
+     * Gets the size of a table file that is read by toResultInput.
+     *
+     * @param f table file
+     * @return size in bytes, -1 when unknown
+     */
+    public long getResultInputSize(File f) {
+        if (zipReader != null) {
+            ZipEntry entry = zipReader.getEntry(f.getName());
+            if (entry != null) {
+                return entry.getSize();
+            }
+        }
+        return f.isFile() ? f.length() : -1;
+    }
+
+    /**
+     * Orders the supplied tasks by their estimated cost, the most expensive first, so that concurrent
+     * execution does not end with a long-running task. Tasks with unknown cost keep their order after
+     * the tasks with known cost. The resulting plan is printed.
+     *
+     * @param tasks    tasks to order
+     * @param costUnit unit of the cost, used in the printed plan
+     * @return tasks to run
+     */
+    public List<Callable<?>> planTasks(List<PlannedTask> tasks, String costUnit) {
+        return planTasks(tasks, costUnit, out);
+    }
+
+    static List<Callable<?>> planTasks(List<PlannedTask> tasks, String costUnit, PrintStream out) {
+        List<PlannedTask> sorted = new ArrayList<>(tasks);
+        sorted.sort((a, b) -> Long.compare(b.cost, a.cost)); // stable
+        out.println("Task plan, largest first:");
+        List<Callable<?>> retVal = new ArrayList<>(sorted.size());
+        for (PlannedTask t : sorted) {
+            out.println("  " + t.description + " - " + (t.cost < 0 ? "unknown" : (t.cost + " " + costUnit)));
+            retVal.add(t.task);
+        }
+        return retVal;
+    }
+
     /**
      * Run the specified tasks concurrently or serially depending on configured concurrency.
      *
@@ -557,4 +886,26 @@ public abstract class MainToolBase implements AutoCloseable {
             return retVal;
         }
     }
+
+    /**
+     * Task with an estimated cost, see {@link #planTasks(List, String)}.
+     */
+    public static class PlannedTask {
+        private final String description;
+        private final long cost;
+        private final Callable<?> task;
+
+        /**
+         * Creates a planned task.
+         *
+         * @param description task description
+         * @param cost        estimated cost, -1 when unknown
+         * @param task        task
+         */
+        public PlannedTask(String description, long cost, Callable<?> task) {
+            this.description = description;
+            this.cost = cost;
+            this.task = task;
+        }
+    }
 }
@@ -1,13 +1,19 @@
 package io.github.sranka.jdbcimage.main;
 
+import io.github.sranka.jdbcimage.ResultConsumer;
+import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowData;
+import io.github.sranka.jdbcimage.db.MariaDbLoadDataResultConsumer;
 import org.apache.commons.dbcp2.BasicDataSource;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * DB facade for MariaDB.
@@ -16,7 +22,20 @@ public class MariaDB extends DBFacade {
     @Override
     public void setupDataSource(BasicDataSource bds) {
         bds.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
-        bds.setConnectionInitSqls(Collections.singletonList("SET FOREIGN_KEY_CHECKS = 0"));
+        bds.setConnectionInitSqls(Arrays.asList(
+                "SET FOREIGN_KEY_CHECKS = 0",
+                "SET SESSION net_write_timeout = 600" //a streamed result is aborted when the client does not read it in time
+        ));
+        // exported rows are streamed in chunks of the fetch size, so that the memory does not depend on the table size;
+        // MariaDB Connector/J streams when the fetch size is set, MySQL Connector/J requires a server-side cursor
+        // (MariaDB Connector/J ignores the option), the cursor is not used by import that would otherwise
+        // prepare INSERT statements on the server
+        if (mainToolBase.isExport()) {
+            bds.addConnectionProperty("useCursorFetch", "true");
+        }
+        if (mainToolBase.tool_bulkLoad) {
+            bds.addConnectionProperty("allowLocalInfile", "true");
+        }
     }
 
     @SuppressWarnings("DuplicatedCode")
@@ -32,6 +51,12 @@ public class MariaDB extends DBFacade {
         return retVal;
     }
 
+    @Override
+    public Map<String, Long> getTableRowEstimates(Connection con) throws SQLException {
+        return queryTableRowEstimates(con, "SELECT table_name, table_rows FROM information_schema.tables " +
+                "WHERE table_schema = DATABASE() AND table_type = 'BASE TABLE'");
+    }
+
     @Override
     public String escapeColumnName(String s) {
         return "`" + s + "`";
@@ -56,4 +81,15 @@ public class MariaDB extends DBFacade {
     public boolean canCreateBlobs() {
         return false;
     }
+
+    @Override
+    public int getMaxBindParameters() {
+        return 65535;
+    }
+
+    @Override
+    public ResultConsumer<RowData> createBulkLoadConsumer(Connection con, String tableName, Map<String, ColumnInfo> actualColumns,
+                                                          Consumer<ResultSetInfo> notifyOnStartFn) {
+        return new MariaDbLoadDataResultConsumer(tableName, con, this, actualColumns, notifyOnStartFn);
+    }
 }
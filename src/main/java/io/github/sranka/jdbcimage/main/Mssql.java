@@ -1,7 +1,10 @@
 package io.github.sranka.jdbcimage.main;
 
 import io.github.sranka.jdbcimage.LoggedUtils;
+import io.github.sranka.jdbcimage.ResultConsumer;
 import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowData;
+import io.github.sranka.jdbcimage.db.MssqlBulkCopyResultConsumer;
 import io.github.sranka.jdbcimage.db.SqlExecuteCommand;
 import io.github.sranka.jdbcimage.db.TableGroupedCommands;
 import org.apache.commons.dbcp2.BasicDataSource;
@@ -20,6 +23,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -46,6 +50,14 @@ public class Mssql extends DBFacade {
         return retVal;
     }
 
+    @Override
+    public Map<String, Long> getTableRowEstimates(Connection con) throws SQLException {
+        // rows of the heap or clustered index
+        return queryTableRowEstimates(con, "SELECT t.name, SUM(p.rows) FROM sys.tables t " +
+                "JOIN sys.partitions p ON p.object_id = t.object_id AND p.index_id IN (0,1) " +
+                "WHERE SCHEMA_NAME(t.schema_id) = 'dbo' GROUP BY t.name");
+    }
+
     @Override
     public String escapeColumnName(String s) {
         return "[" + s + "]";
@@ -172,6 +184,24 @@ public class Mssql extends DBFacade {
         }
         tableIdentityColumns = retVal;
     }
+
+    @Override
+    public int getMaxBindParameters() {
+        return 2100;
+    }
+
+    @Override
+    public ResultConsumer<RowData> createBulkLoadConsumer(Connection con, String tableName, Map<String, ColumnInfo> actualColumns,
+                                                          Consumer<ResultSetInfo> notifyOnStartFn) {
+        ColumnInfo unsupported = MssqlBulkCopyResultConsumer.getUnsupportedColumn(actualColumns.values());
+        if (unsupported != null) {
+            mainToolBase.out.println("Bulk copy of table " + tableName + " not supported due to column " + unsupported.getName()
+                    + " of type " + unsupported.getDbType() + ", INSERT is used instead!");
+            return null;
+        }
+        return new MssqlBulkCopyResultConsumer(tableName, con, this, actualColumns, notifyOnStartFn);
+    }
+
     @Override
     public Object toSupportedValue(int sqlType, ColumnInfo columnInfo, Object value) {
         if (value instanceof Timestamp
@@ -1,7 +1,11 @@
 package io.github.sranka.jdbcimage.main;
 
 import java.io.File;
+import java.sql.SQLException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -29,23 +33,66 @@ public class MultiTableConcurrentExport extends SingleTableExport {
 
 
         // runs export concurrently
-        out.println("Exporting table files to: " + getBuildDirectory());
-        run(tables.entrySet().stream().map(x -> getExportTask(x.getKey(), x.getValue())).collect(Collectors.toList()));
-        zip();
+        boolean directZip = tool_directZip && zipFile != null;
+        out.println("Exporting table files to: " + (directZip ? zipFile : getBuildDirectory()));
+        // export the largest tables first
+        Map<String, Long> rowEstimates = getTableRowEstimates();
+        List<PlannedTask> plannedTasks = new ArrayList<>();
+        for (Map.Entry<String, String> entry : tables.entrySet()) {
+            List<KeyRange> ranges;
+            try {
+                ranges = getKeyRanges(entry.getKey());
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            Long rows = rowEstimates.get(entry.getKey());
+            if (ranges.size() == 1 && ranges.get(0) == null) {
+                plannedTasks.add(new PlannedTask(entry.getKey(), rows == null ? -1 : rows,
+                        getExportTask(entry.getKey(), entry.getValue(), null)));
+            } else {
+                out.println("Table " + entry.getKey() + " is exported in " + ranges.size() + " segments");
+                for (KeyRange range : ranges) {
+                    plannedTasks.add(new PlannedTask(entry.getKey() + " " + range, rows == null ? -1 : rows / ranges.size(),
+                            getExportTask(entry.getKey(), toSegmentFileName(entry.getValue(), range.getIndex()), range)));
+                }
+            }
+        }
+        List<Callable<?>> tasks = planTasks(plannedTasks, "rows");
+        if (directZip) {
+            openZip();
+            boolean failed = true;
+            try {
+                run(tasks);
+                closeZip();
+                failed = false;
+            } finally {
+                if (failed) {
+                    // the archive can contain a truncated entry
+                    abortZip();
+                }
+            }
+        } else {
+            run(tasks);
+            zip();
+        }
     }
 
-    private Callable<?> getExportTask(String tableName, String fileName) {
+    private Callable<?> getExportTask(String tableName, String fileName, KeyRange range) {
+        String description = range == null ? tableName : (tableName + " " + range);
         return () -> {
             boolean failed = true;
             try {
                 long start = System.currentTimeMillis();
-                long rows = exportTable(tableName, new File(getBuildDirectory(), fileName));
-                out.println("SUCCESS: Exported table " + tableName + " - " + rows + " rows in " + Duration.ofMillis(System.currentTimeMillis() - start));
+                DBFacade.TableInfo tableInfo = dbFacade.getTableInfo(tableName);
+                long rows = exportTable(tableName, new File(getBuildDirectory(), fileName), range, tableInfo);
+                Object fetchSize = tableInfo.get(FETCH_SIZE_KEY);
+                out.println("SUCCESS: Exported table " + description + " - " + rows + " rows in " + Duration.ofMillis(System.currentTimeMillis() - start)
+                        + (Integer.valueOf(0).equals(fetchSize) ? " (bulk export)" : " (fetch size " + fetchSize + ")"));
                 failed = false;
             } finally {
                 if (failed) {
                     // exception state, notify other threads to stop reading from queue
-                    out.println("FAILURE: Export of table " + tableName);
+                    out.println("FAILURE: Export of table " + description);
                 }
             }
             return null;
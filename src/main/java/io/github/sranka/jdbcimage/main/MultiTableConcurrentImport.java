@@ -1,9 +1,10 @@
 package io.github.sranka.jdbcimage.main;
 
+import io.github.sranka.jdbcimage.SpilledInputStream;
+
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.time.Duration;
@@ -22,6 +23,8 @@ import java.util.stream.Stream;
 public class MultiTableConcurrentImport extends SingleTableImport {
     private final boolean tool_disableIndexes = Boolean.parseBoolean(System.getProperty("tool_disableIndexes", "false"));
     private final EnumMap<Step, Boolean> enabledSteps = new EnumMap<>(Step.class);
+    // files to import, key is table file name, value are files with the table data (possibly segments)
+    private final Map<String, List<String>> tableFiles = new HashMap<>();
 
     public MultiTableConcurrentImport(String steps) {
         super();
@@ -56,7 +59,12 @@ public class MultiTableConcurrentImport extends SingleTableImport {
     public void run() throws SQLException, IOException {
         // print platform concurrency, just FYI
         out.println("Concurrency: " + concurrency);
-        unzip(); // unzip input if it exists
+        List<String> zipEntries = openZipInput(); // read table files directly from zip
+        if (zipEntries == null) {
+            unzip(); // unzip input if it exists
+        }
+        // large LOBs are spilled to the build directory, which is deleted at the end
+        SpilledInputStream.DIRECTORY = getBuildDirectory();
 
         Durations durations = new Durations();
         try {
@@ -65,30 +73,40 @@ public class MultiTableConcurrentImport extends SingleTableImport {
             dbTables.forEach(x -> dbTablesMap.put(x.toLowerCase(), x));
             Map<String, String> conflictingFiles = new HashMap<>();
             // collect tables to import (ignore tables that do not exist)
-            try (Stream<Path> fileStream = Files.list(Paths.get(getBuildDirectory().toString()))) {
+            Stream<String> fileStream;
+            if (zipEntries != null) {
+                fileStream = zipEntries.stream();
+            } else {
+                fileStream = Files.list(Paths.get(getBuildDirectory().toString()))
+                        .filter(x -> x.toFile().isFile())
+                        .map(x -> x.getFileName().toString());
+            }
+            try {
                 setTables(fileStream
-                        .filter(x -> {
-                            File f = x.toFile();
-                            return f.isFile() && !f.getName().contains(".");
-                        })
+                        .filter(x -> !x.contains("."))
                         .collect(
                                 LinkedHashMap<String, String>::new,
-                                (map, x) -> {
-                                    String fileName = x.getFileName().toString();
+                                (map, segmentFileName) -> {
+                                    String fileName = toTableFileName(segmentFileName);
                                     String lowerCaseTableName = fileName.toLowerCase();
                                     String retVal = dbTablesMap.get(lowerCaseTableName);
+                                    String previousFile = conflictingFiles.put(lowerCaseTableName, fileName);
+                                    if (previousFile != null && !previousFile.equals(fileName)) {
+                                        throw new RuntimeException("Unsupported data on input. Only one files must describe a case-sensitive table, but found " + previousFile + " and " + fileName);
+                                    }
+                                    tableFiles.computeIfAbsent(fileName, k -> new ArrayList<>()).add(segmentFileName);
                                     if (retVal == null) {
-                                        out.println("SKIPPED - table " + x + " does not exists!");
+                                        if (previousFile == null) {
+                                            out.println("SKIPPED - table " + segmentFileName + " does not exists!");
+                                        }
                                     } else {
                                         map.put(retVal, fileName);
                                     }
-                                    String previousFile = conflictingFiles.put(lowerCaseTableName, fileName);
-                                    if (previousFile != null) {
-                                        throw new RuntimeException("Unsupported data on input. Only one files must describe a case-sensitive table, but found " + previousFile + " and " + fileName);
-                                    }
                                 },
                                 LinkedHashMap::putAll
                         ), out);
+            } finally {
+                fileStream.close();
             }
             if (!tables.isEmpty()) {
                 // apply a procedure that ignores indexes and constraints
@@ -96,37 +114,41 @@ public class MultiTableConcurrentImport extends SingleTableImport {
 
                 long time;
                 // 0. import started
-                if (enabledSteps.get(Step.importStarted)) dbFacade.importStarted();
-                // 1. disable constraints
-                time = System.currentTimeMillis();
-                if (enabledSteps.get(Step.disableConstraints)) dbFacade.modifyConstraints(false);
-                durations.disableConstraints = Duration.ofMillis(System.currentTimeMillis() - time);
-                // 2. make indexes unusable skipped
-                if (enabledSteps.get(Step.disableIndexes) && tool_disableIndexes) {
+                boolean started = enabledSteps.get(Step.importStarted);
+                if (started) dbFacade.importStarted();
+                try {
+                    // 1. disable constraints
                     time = System.currentTimeMillis();
-                    dbFacade.modifyIndexes(false);
-                    durations.disableIndexes = Duration.ofMillis(System.currentTimeMillis() - time);
-                }
-                // 3. delete data
-                time = System.currentTimeMillis();
-                if (enabledSteps.get(Step.deleteData)) deleteData();
-                durations.deleteData = Duration.ofMillis(System.currentTimeMillis() - time);
-                // 4. do import
-                time = System.currentTimeMillis();
-                if (enabledSteps.get(Step.importData)) importData();
-                durations.importData = Duration.ofMillis(System.currentTimeMillis() - time);
-                // 5. rebuild indexes
-                if (enabledSteps.get(Step.enableIndexes) && tool_disableIndexes) {
+                    if (enabledSteps.get(Step.disableConstraints)) dbFacade.modifyConstraints(false);
+                    durations.disableConstraints = Duration.ofMillis(System.currentTimeMillis() - time);
+                    // 2. make indexes unusable skipped
+                    if (enabledSteps.get(Step.disableIndexes) && tool_disableIndexes) {
+                        time = System.currentTimeMillis();
+                        dbFacade.modifyIndexes(false);
+                        durations.disableIndexes = Duration.ofMillis(System.currentTimeMillis() - time);
+                    }
+                    // 3. delete data
+                    time = System.currentTimeMillis();
+                    if (enabledSteps.get(Step.deleteData)) deleteData();
+                    durations.deleteData = Duration.ofMillis(System.currentTimeMillis() - time);
+                    // 4. do import
+                    time = System.currentTimeMillis();
+                    if (enabledSteps.get(Step.importData)) importData();
+                    durations.importData = Duration.ofMillis(System.currentTimeMillis() - time);
+                    // 5. rebuild indexes
+                    if (enabledSteps.get(Step.enableIndexes) && tool_disableIndexes) {
+                        time = System.currentTimeMillis();
+                        dbFacade.modifyIndexes(true);
+                        durations.enableIndexes = Duration.ofMillis(System.currentTimeMillis() - time);
+                    }
+                    // 6. enable constraints
                     time = System.currentTimeMillis();
-                    dbFacade.modifyIndexes(true);
-                    durations.enableIndexes = Duration.ofMillis(System.currentTimeMillis() - time);
+                    if (enabledSteps.get(Step.enableConstraints)) dbFacade.modifyConstraints(true);
+                    durations.enableConstraints = Duration.ofMillis(System.currentTimeMillis() - time);
+                } finally {
+                    // 7. finished, also when the import failed
+                    if (started || enabledSteps.get(Step.importFinished)) dbFacade.importFinished();
                 }
-                // 6. enable constraints
-                time = System.currentTimeMillis();
-                if (enabledSteps.get(Step.enableConstraints)) dbFacade.modifyConstraints(true);
-                durations.enableConstraints = Duration.ofMillis(System.currentTimeMillis() - time);
-                // 7. finished
-                if (enabledSteps.get(Step.importFinished)) dbFacade.importFinished();
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -160,26 +182,36 @@ public class MultiTableConcurrentImport extends SingleTableImport {
     }
 
     private void importData() {
-        List<Callable<?>> tasks = new ArrayList<>(tables.size());
+        // import the largest files first
+        List<PlannedTask> plannedTasks = new ArrayList<>(tables.size());
         for (Map.Entry<String, String> entry : tables.entrySet()) {
             String table = entry.getKey();
-            String fileName = entry.getValue();
-            tasks.add(() -> {
-                boolean failed = true;
-                try {
-                    long start = System.currentTimeMillis();
-                    long rows = importTable(table, new File(getBuildDirectory(), fileName), dbFacade.getTableInfo(table));
-                    out.println("SUCCESS: Imported data to " + table + " - " + rows + " rows in " + Duration.ofMillis(System.currentTimeMillis() - start));
-                    failed = false;
-                } finally {
-                    if (failed) {
-                        out.println("FAILURE: Import data to table " + table);
+            // segments of a table are imported concurrently, the table is already empty
+            List<String> files = tableFiles.get(entry.getValue());
+            for (String fileName : files) {
+                String description = files.size() == 1 ? table : (table + " from " + fileName);
+                long size = getResultInputSize(new File(getBuildDirectory(), fileName));
+                plannedTasks.add(new PlannedTask(description, size, () -> {
+                    boolean failed = true;
+                    try {
+                        long start = System.currentTimeMillis();
+                        DBFacade.TableInfo tableInfo = dbFacade.getTableInfo(table);
+                        tableInfo.put(SEGMENTS_KEY, files.size());
+                        long rows = importTable(table, new File(getBuildDirectory(), fileName), tableInfo);
+                        out.println("SUCCESS: Imported data to " + description + " - " + rows + " rows in " + Duration.ofMillis(System.currentTimeMillis() - start)
+                                + (tableInfo.get(BULK_LOAD_KEY) != null ? " (bulk load)"
+                                : " (batch size " + tableInfo.get(BATCH_SIZE_KEY) + ", commits " + tableInfo.get(COMMITS_KEY) + ")"));
+                        failed = false;
+                    } finally {
+                        if (failed) {
+                            out.println("FAILURE: Import data to table " + description);
+                        }
                     }
-                }
-                return null;
-            });
+                    return null;
+                }));
+            }
         }
-        run(tasks);
+        run(planTasks(plannedTasks, "bytes"));
     }
 
     private enum Step {
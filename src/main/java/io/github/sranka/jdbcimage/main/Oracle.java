@@ -5,23 +5,37 @@ import io.github.sranka.jdbcimage.db.TableGroupedCommands;
 import org.apache.commons.dbcp2.BasicDataSource;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
  * DB facade for Oracle database.
  */
 public class Oracle extends DBFacade {
+    // switch tables to NOLOGGING during a direct-path import, the imported data cannot be recovered from redo logs then
+    public static boolean NOLOGGING = Boolean.parseBoolean(System.getProperty("oracle.nologging", "false"));
+    // NOLOGGING switches of tables of the running import, segments of a table share the switch
+    private final Map<String, NoLoggingSwitch> noLoggingTables = new ConcurrentHashMap<>();
+
     @Override
     public void setupDataSource(BasicDataSource bds) {
-        List<String> connectionInits = Arrays.asList(
+        List<String> connectionInits = new ArrayList<>(Arrays.asList(
                 "ALTER SESSION ENABLE PARALLEL DDL", //could possibly make index disabling quicker
                 "ALTER SESSION SET skip_unusable_indexes = TRUE" //avoid ORA errors caused by unusable indexes
-        );
+        ));
+        if (isDirectPathImport()) {
+            connectionInits.add("ALTER SESSION ENABLE PARALLEL DML"); //direct-path inserts can run in parallel
+        }
         bds.setConnectionInitSqls(connectionInits);
         // the minimum level supported by Oracle
         bds.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
@@ -61,6 +75,12 @@ public class Oracle extends DBFacade {
         );
     }
 
+    @Override
+    public Map<String, Long> getTableRowEstimates(Connection con) throws SQLException {
+        // num_rows is null for tables without statistics
+        return queryTableRowEstimates(con, "SELECT TABLE_NAME, NUM_ROWS FROM USER_TABLES");
+    }
+
     @Override
     public String escapeColumnName(String s) {
         return "\"" + s + "\"";
@@ -198,6 +218,106 @@ public class Oracle extends DBFacade {
                 .collect(Collectors.toList()));
     }
 
+    private boolean isDirectPathImport() {
+        return mainToolBase != null && mainToolBase.tool_bulkLoad;
+    }
+
+    @Override
+    public String getDirectPathInsertHint() {
+        return isDirectPathImport() ? "/*+ APPEND_VALUES */" : null;
+    }
+
+    @Override
+    public void importStarted() {
+        super.importStarted();
+        noLoggingTables.clear();
+    }
+
+    @Override
+    public void importFinished() {
+        try {
+            // restore tables whose segments did not all end
+            for (String table : noLoggingTables.keySet()) {
+                NoLoggingSwitch noLogging = noLoggingTables.remove(table);
+                if (noLogging != null && noLogging.switched) {
+                    switchToLogging(table);
+                }
+            }
+        } finally {
+            super.importFinished();
+        }
+    }
+
+    @Override
+    public void beforeImportTable(Connection con, String table, TableInfo tableInfo) throws SQLException {
+        super.beforeImportTable(con, table, tableInfo);
+        if (NOLOGGING && isDirectPathImport()) {
+            // the first segment of a table switches it before any segment inserts data
+            noLoggingTables.computeIfAbsent(table, x -> {
+                try {
+                    Object segments = tableInfo.get(SingleTableImport.SEGMENTS_KEY);
+                    return new NoLoggingSwitch(switchToNoLogging(con, x), segments == null ? 1 : (Integer) segments);
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void afterImportTableFile(String table, TableInfo tableInfo) {
+        super.afterImportTableFile(table, tableInfo);
+        NoLoggingSwitch noLogging = noLoggingTables.get(table);
+        // the last segment of a table switches it back, also when the import failed
+        if (noLogging != null && noLogging.pendingSegments.decrementAndGet() == 0
+                && noLoggingTables.remove(table, noLogging) && noLogging.switched) {
+            switchToLogging(table);
+        }
+    }
+
+    private void switchToLogging(String table) {
+        // a separate connection, DDL commits the current transaction
+        try (Connection con = mainToolBase.getWriteConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute("ALTER TABLE " + escapeTableName(table) + " LOGGING");
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean switchToNoLogging(Connection con, String table) throws SQLException {
+        String logging = null;
+        try (PreparedStatement stmt = con.prepareStatement("SELECT LOGGING FROM USER_TABLES WHERE TABLE_NAME=?")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) logging = rs.getString(1);
+            }
+        }
+        // LOGGING is null for partitioned tables, their partitions are not altered
+        if (!"YES".equals(logging)) {
+            return false;
+        }
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("ALTER TABLE " + escapeTableName(table) + " NOLOGGING");
+        }
+        return true;
+    }
+
+    /**
+     * NOLOGGING switch of a table shared by its segments.
+     */
+    private static class NoLoggingSwitch {
+        // whether the table was switched to NOLOGGING
+        final boolean switched;
+        final AtomicInteger pendingSegments;
+
+        NoLoggingSwitch(boolean switched, int segments) {
+            this.switched = switched;
+            this.pendingSegments = new AtomicInteger(segments);
+        }
+    }
+
     public static class Types {
 
         public static final int BINARY_DOUBLE = 101;
@@ -1,6 +1,13 @@
 package io.github.sranka.jdbcimage.main;
 
 import io.github.sranka.jdbcimage.ChunkedReader;
+import io.github.sranka.jdbcimage.ResultConsumer;
+import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowData;
+import io.github.sranka.jdbcimage.SpilledReader;
+import io.github.sranka.jdbcimage.db.PgCopyImportResultConsumer;
+import io.github.sranka.jdbcimage.db.PgCopyQueryRunner;
+import io.github.sranka.jdbcimage.db.QueryRunner;
 import io.github.sranka.jdbcimage.db.SqlExecuteCommand;
 import io.github.sranka.jdbcimage.db.TableGroupedCommands;
 import org.apache.commons.dbcp2.BasicDataSource;
@@ -16,6 +23,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -55,6 +63,14 @@ public class PostgreSQL extends DBFacade {
         return retVal;
     }
 
+    @Override
+    public Map<String, Long> getTableRowEstimates(Connection con) throws SQLException {
+        // reltuples is -1 for tables that were never analyzed
+        return queryTableRowEstimates(con, "SELECT c.relname, c.reltuples FROM pg_class c " +
+                "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                "WHERE c.relkind IN ('r','p') AND n.nspname = current_schema()");
+    }
+
     @Override
     public void importStarted() {
         HashMap<String, IdentityInfo> retVal = new HashMap<>();
@@ -322,12 +338,38 @@ public class PostgreSQL extends DBFacade {
     public Object convertCharacterStreamInput(Reader reader) {
         if (reader instanceof ChunkedReader) {
             return ((ChunkedReader) reader).readAsString();
+        } else if (reader instanceof SpilledReader) {
+            // the driver does not stream characters, the data are read once the value is bound
+            return ((SpilledReader) reader).readAsString();
         } else {
             // let the implementation handle this
             return reader;
         }
     }
 
+    @Override
+    public QueryRunner createQueryRunner(Connection con, String query, ResultConsumer<ResultSet> consumer, boolean bulk) {
+        return bulk ? new PgCopyQueryRunner(con, query, consumer) : new QueryRunner(con, query, consumer);
+    }
+
+    @Override
+    public int getMaxBindParameters() {
+        // the protocol sends the parameter count as an unsigned 16-bit integer
+        return 65535;
+    }
+
+    @Override
+    public ResultConsumer<RowData> createBulkLoadConsumer(Connection con, String tableName, Map<String, ColumnInfo> actualColumns,
+                                                          Consumer<ResultSetInfo> notifyOnStartFn) {
+        ColumnInfo unsupported = PgCopyImportResultConsumer.getUnsupportedColumn(actualColumns.values());
+        if (unsupported != null) {
+            mainToolBase.out.println("COPY of table " + tableName + " not supported due to column " + unsupported.getName()
+                    + " of type " + unsupported.getDbType() + ", INSERT is used instead!");
+            return null;
+        }
+        return new PgCopyImportResultConsumer(tableName, con, this, actualColumns, notifyOnStartFn);
+    }
+
     private String currentSchema() throws SQLException {
         if (cachedSchema == null) {
             // get current schema and create state table
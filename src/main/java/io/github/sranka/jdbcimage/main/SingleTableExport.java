@@ -1,12 +1,17 @@
 package io.github.sranka.jdbcimage.main;
 
+import io.github.sranka.jdbcimage.LobStore;
 import io.github.sranka.jdbcimage.LoggedUtils;
+import io.github.sranka.jdbcimage.ResultConsumer;
 import io.github.sranka.jdbcimage.db.QueryRunner;
+import io.github.sranka.jdbcimage.kryo.KryoColumnarResultSetConsumer;
 import io.github.sranka.jdbcimage.kryo.KryoResultSetConsumer;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -14,11 +19,25 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongSupplier;
 
 /**
  * Performs export of a single table.
  */
 public class SingleTableExport extends MainToolBase {
+    // table info key of the fetch size used to export a table
+    public static final String FETCH_SIZE_KEY = "fetchSize";
+    // scale reported by Oracle for NUMBER columns without precision and scale
+    private static final int ORACLE_NUMBER_SCALE = -127;
+    // number of key ranges that large tables are split into, 1 to disable
+    public int tool_partitions = Integer.parseInt(System.getProperty("tool_partitions", "1"));
+    // minimum difference between max and min id to split a table into key ranges
+    public long tool_partitionMinSpan = Long.parseLong(System.getProperty("tool_partitionMinSpan", "100000"));
+    // version of the table file format to write
+    public String tool_format = System.getProperty("tool_format", KryoResultSetConsumer.VERSION_1_1);
 
     public static void main(String... args) throws Exception {
         //noinspection UnusedAssignment
@@ -29,6 +48,11 @@ public class SingleTableExport extends MainToolBase {
         }
     }
 
+    @Override
+    public boolean isExport() {
+        return true;
+    }
+
     public void run() throws SQLException, IOException {
         File file = new File(tool_table);
         if (tool_table.contains("/")) {
@@ -43,31 +67,194 @@ public class SingleTableExport extends MainToolBase {
     }
 
     public long exportTable(String tableName, File file) throws SQLException, IOException {
+        return exportTable(tableName, file, null);
+    }
+
+    /**
+     * Exports table rows that belong to the supplied key range.
+     *
+     * @param tableName table to export
+     * @param file      file to write to
+     * @param range     key range to export, null to export all rows
+     * @return exported rows
+     */
+    public long exportTable(String tableName, File file, KeyRange range) throws SQLException, IOException {
+        return exportTable(tableName, file, range, dbFacade.getTableInfo(tableName));
+    }
+
+    /**
+     * Exports table rows that belong to the supplied key range, the fetch size used
+     * is put to the supplied table info under the {@link #FETCH_SIZE_KEY} key, it is 0 when
+     * the rows were streamed using a bulk export.
+     *
+     * @param tableName table to export
+     * @param file      file to write to
+     * @param range     key range to export, null to export all rows
+     * @param tableInfo table information
+     * @return exported rows
+     */
+    public long exportTable(String tableName, File file, KeyRange range, DBFacade.TableInfo tableInfo) throws SQLException, IOException {
         OutputStream out = toResultOutput(file);
-        KryoResultSetConsumer serializer = new KryoResultSetConsumer(out);
+        ResultConsumer<ResultSet> serializer;
+        LongSupplier writtenBytes;
+        LobStore lobStore = null;
+        try {
+            lobStore = toLobStoreOutput(file);
+            if (KryoColumnarResultSetConsumer.VERSION_2_0.equals(tool_format)) {
+                KryoColumnarResultSetConsumer columnarSerializer = new KryoColumnarResultSetConsumer(out);
+                if (lobStore != null) columnarSerializer.setLobStore(lobStore);
+                serializer = columnarSerializer;
+                writtenBytes = columnarSerializer::getWrittenBytes;
+            } else if (KryoResultSetConsumer.VERSION_1_2.equals(tool_format) || KryoResultSetConsumer.VERSION_1_1.equals(tool_format)) {
+                KryoResultSetConsumer rowSerializer = new KryoResultSetConsumer(out, tool_format);
+                if (lobStore != null) rowSerializer.setLobStore(lobStore);
+                serializer = rowSerializer;
+                writtenBytes = rowSerializer::getWrittenBytes;
+            } else {
+                throw new IllegalArgumentException("Unsupported table file format: " + tool_format);
+            }
+        } catch (IOException | RuntimeException e) {
+            LoggedUtils.close(out);
+            if (lobStore != null) closeLobStoreOutput(lobStore, true);
+            throw e;
+        }
         boolean failed = true;
 
         Connection con = getReadOnlyConnection();
         QueryRunner runner = null;
         try {
-            runner = new QueryRunner(con, getSelectStatement(tableName, con), serializer);
+            runner = dbFacade.createQueryRunner(con, getSelectStatement(tableName, con, range), serializer, tool_bulkExport);
+            runner.setBytesCounter(writtenBytes);
             runner.run();
+            tableInfo.put(FETCH_SIZE_KEY, runner.getFetchSize());
             failed = false;
             return runner.getProcessedRows();
         } finally {
             LoggedUtils.close(con);
+            // delete the output if it failed or zero rows read
+            boolean delete = failed || ((runner.getProcessedRows() == 0) && isIgnoreEmptyTables());
+            if (delete) {
+                discardResultOutput(file);
+            }
             // close the file
             LoggedUtils.close(out);
-            // delete the output if it failed or zero rows read
-            if (failed || ((runner.getProcessedRows() == 0) && isIgnoreEmptyTables())) {
+            if (delete && file.exists()) {
                 if (!file.delete()) {
                     LoggedUtils.ignore("Unable to delete " + file, null);
                 }
             }
+            if (lobStore != null) {
+                closeLobStoreOutput(lobStore, delete);
+            }
+        }
+    }
+
+    /**
+     * Splits the table into key ranges of its numeric id column, the ranges can be then exported concurrently.
+     * A table is split only when tool_partitions is greater than 1 and the id values span at least tool_partitionMinSpan.
+     *
+     * @param tableName table
+     * @return key ranges, a single null range when the table is not split
+     */
+    public List<KeyRange> getKeyRanges(String tableName) throws SQLException {
+        if (tool_partitions <= 1) {
+            return Collections.singletonList(null);
+        }
+        try (Connection con = getReadOnlyConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                String idColumn = null;
+                try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + dbFacade.escapeTableName(tableName) + " WHERE 0=1")) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        if ("id".equalsIgnoreCase(meta.getColumnName(i)) && isIntegralType(meta.getColumnType(i), meta.getPrecision(i), meta.getScale(i))) {
+                            idColumn = dbFacade.escapeColumnName(meta.getColumnName(i));
+                        }
+                    }
+                }
+                if (idColumn != null) {
+                    try (ResultSet rs = stmt.executeQuery("SELECT MIN(" + idColumn + "),MAX(" + idColumn + ") FROM " + dbFacade.escapeTableName(tableName))) {
+                        if (rs.next()) {
+                            List<KeyRange> ranges = splitKeyRanges(idColumn, rs.getBigDecimal(1), rs.getBigDecimal(2),
+                                    tool_partitions, tool_partitionMinSpan);
+                            if (ranges != null) {
+                                return ranges;
+                            }
+                        }
+                    }
+                }
+            } finally {
+                try {
+                    con.rollback(); // nothing to commit
+                } catch (SQLException e) {
+                    LoggedUtils.ignore("Unable to rollback!", e);
+                }
+            }
+        }
+        return Collections.singletonList(null);
+    }
+
+    /**
+     * Splits the values between MIN and MAX of the id column into key ranges.
+     *
+     * @param idColumn escaped id column
+     * @param min      minimum id value, null for an empty table
+     * @param max      maximum id value, null for an empty table
+     * @param count    number of key ranges
+     * @param minSpan  minimum difference between max and min to split
+     * @return key ranges, null when the values do not span enough or do not fit a long
+     */
+    static List<KeyRange> splitKeyRanges(String idColumn, BigDecimal min, BigDecimal max, int count, long minSpan) {
+        if (min == null || max == null) {
+            return null;
+        }
+        try {
+            // Oracle NUMBER ids need not be integers, the bounds still work as ranges of any values
+            long from = min.setScale(0, RoundingMode.FLOOR).longValueExact();
+            long to = max.setScale(0, RoundingMode.CEILING).longValueExact();
+            long span = Math.subtractExact(to, from);
+            // the bounds of the ranges are up to count above max
+            Math.addExact(to, count);
+            if (span >= minSpan && span > 0) {
+                return KeyRange.split(idColumn, from, to, count);
+            }
+        } catch (ArithmeticException e) {
+            // the ids do not fit a long, the table is not split
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a column of the supplied type has integral values, so that its MIN and MAX can be read as longs.
+     *
+     * @param sqlType   JDBC type
+     * @param precision column precision
+     * @param scale     column scale
+     * @return true for integral columns
+     */
+    static boolean isIntegralType(int sqlType, int precision, int scale) {
+        switch (sqlType) {
+            case Types.BIGINT:
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                return true;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                if (scale == ORACLE_NUMBER_SCALE && precision == 0) {
+                    // Oracle NUMBER without precision and scale, commonly used for ids
+                    return true;
+                }
+                return scale == 0 && precision > 0 && precision <= 18;
+            default:
+                return false;
         }
     }
 
     public String getSelectStatement(String tableName, Connection con) throws SQLException {
+        return getSelectStatement(tableName, con, null);
+    }
+
+    public String getSelectStatement(String tableName, Connection con, KeyRange range) throws SQLException {
         // get column names, VARBINARY and BLOBs must be last to avoid
         // ORA-24816: Expanded non-LONG bind data supplied
         StringBuilder columns = new StringBuilder();
@@ -106,9 +293,69 @@ public class SingleTableExport extends MainToolBase {
         }
 
         String retVal = "SELECT " + columns + " FROM " + dbFacade.escapeTableName(tableName);
+        if (range != null) {
+            retVal += " WHERE " + range.getCondition();
+        }
         if (hasId) {
             retVal += " ORDER BY id";
         }
         return retVal;
     }
+
+    /**
+     * Range of id values that is exported into a separate segment file.
+     */
+    public static class KeyRange {
+        private final String column;
+        private final int index;
+        private final int count;
+        private final Long from; // inclusive, null if unbounded
+        private final Long to; // exclusive, null if unbounded
+
+        public KeyRange(String column, int index, int count, Long from, Long to) {
+            this.column = column;
+            this.index = index;
+            this.count = count;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Splits the min..max interval into ranges of the same size. The first range also contains
+         * NULL values and the outer ranges are unbounded, so that no row is missed.
+         *
+         * @param column escaped column name
+         * @param min    min value
+         * @param max    max value
+         * @param count  requested count of ranges
+         * @return ranges
+         */
+        public static List<KeyRange> split(String column, long min, long max, int count) {
+            long step = (max - min) / count + 1;
+            List<KeyRange> retVal = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Long from = i == 0 ? null : min + i * step;
+                Long to = i == count - 1 ? null : min + (i + 1) * step;
+                retVal.add(new KeyRange(column, i, count, from, to));
+            }
+            return retVal;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getCondition() {
+            if (from == null) {
+                return to == null ? "1=1" : ("(" + column + " IS NULL OR " + column + "<" + to + ")");
+            } else {
+                return column + ">=" + from + (to == null ? "" : (" AND " + column + "<" + to));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "segment " + (index + 1) + "/" + count;
+        }
+    }
 }
@@ -1,7 +1,13 @@
 package io.github.sranka.jdbcimage.main;
 
+import io.github.sranka.jdbcimage.AsyncResultProducer;
+import io.github.sranka.jdbcimage.LobStore;
 import io.github.sranka.jdbcimage.LoggedUtils;
+import io.github.sranka.jdbcimage.ResultProducer;
+import io.github.sranka.jdbcimage.ResultConsumer;
 import io.github.sranka.jdbcimage.ResultProducerRunner;
+import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowData;
 import io.github.sranka.jdbcimage.db.DbImportResultConsumer;
 import io.github.sranka.jdbcimage.kryo.KryoResultProducer;
 import io.github.sranka.jdbcimage.main.DBFacade.ColumnInfo;
@@ -17,11 +23,19 @@ import java.sql.Statement;
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Import a single table from the database.
  */
 public class SingleTableImport extends MainToolBase {
+    // table info keys of the average batch size and of the commits used to import a table
+    public static final String BATCH_SIZE_KEY = "batchSize";
+    public static final String COMMITS_KEY = "commits";
+    // table info key that is set when a table is imported using a bulk load
+    public static final String BULK_LOAD_KEY = "bulkLoad";
+    // table info key of the number of table files (segments) imported into a table, 1 when not set
+    public static final String SEGMENTS_KEY = "segments";
 
     public static void main(String... args) throws Exception {
         args = setupSystemProperties(args);
@@ -49,8 +63,11 @@ public class SingleTableImport extends MainToolBase {
         out.println("Reset time: " + truncateTable(tool_table));
         long time = System.currentTimeMillis();
         dbFacade.importStarted();
-        out.println("Imported rows: " + importTable(tool_table, file, dbFacade.getTableInfo(tool_table)));
-        dbFacade.importFinished();
+        try {
+            out.println("Imported rows: " + importTable(tool_table, file, dbFacade.getTableInfo(tool_table)));
+        } finally {
+            dbFacade.importFinished();
+        }
         out.println("Import time: " + Duration.ofMillis(System.currentTimeMillis() - time));
     }
 
@@ -79,7 +96,10 @@ public class SingleTableImport extends MainToolBase {
     }
 
     /**
-     * Imports specific table.
+     * Imports specific table, the average batch size and the number of commits are put
+     * to the supplied table info under the {@link #BATCH_SIZE_KEY} and {@link #COMMITS_KEY} keys,
+     * {@link #BULK_LOAD_KEY} is put instead when the table is imported using a bulk load.
+     * The database facade is notified when the import of the table file ends, also when it fails.
      *
      * @param tableName tables nam
      * @param file      usually the same table name, might differ in lower/upper case
@@ -88,7 +108,18 @@ public class SingleTableImport extends MainToolBase {
      */
     public long importTable(String tableName, File file, DBFacade.TableInfo tableInfo) throws SQLException, IOException {
         InputStream in = toResultInput(file);
-        KryoResultProducer producer = new KryoResultProducer(in);
+        LobStore lobStore;
+        try {
+            lobStore = toLobStoreInput(file);
+        } catch (IOException | RuntimeException e) {
+            LoggedUtils.close(in);
+            throw e;
+        }
+        ResultProducer producer = new KryoResultProducer(in, lobStore);
+        if (tool_pipeline) {
+            // decode rows in a separate thread, while this thread binds and executes statements
+            producer = new AsyncResultProducer(producer);
+        }
 
         Connection con = getWriteConnection();
 
@@ -110,23 +141,42 @@ public class SingleTableImport extends MainToolBase {
             }
             // import data
             tableInfo.setTableColumns(actualColumns);
-            dbFacade.beforeImportTable(con, tableName, tableInfo);
-            DbImportResultConsumer consumer = new DbImportResultConsumer(tableName, con, dbFacade, actualColumns);
-            consumer.setNotifyOnStartFn(fileInfo -> {
-                try {
-                    dbFacade.beforeImportTableData(con, tableName, tableInfo, fileInfo);
-                } catch (SQLException e) {
-                    throw new RuntimeException(e);
+            try {
+                dbFacade.beforeImportTable(con, tableName, tableInfo);
+                Consumer<ResultSetInfo> notifyOnStartFn = fileInfo -> {
+                    try {
+                        dbFacade.beforeImportTableData(con, tableName, tableInfo, fileInfo);
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                };
+                ResultConsumer<RowData> consumer = null;
+                if (tool_bulkLoad) {
+                    consumer = dbFacade.createBulkLoadConsumer(con, tableName, actualColumns, notifyOnStartFn);
                 }
-            });
-            ResultProducerRunner runner = new ResultProducerRunner(producer, consumer);
-            long rows = runner.run();
-            dbFacade.afterImportTable(con, tableName, tableInfo);
+                if (consumer == null) {
+                    DbImportResultConsumer importConsumer = new DbImportResultConsumer(tableName, con, dbFacade, actualColumns);
+                    importConsumer.setNotifyOnStartFn(notifyOnStartFn);
+                    consumer = importConsumer;
+                }
+                ResultProducerRunner runner = new ResultProducerRunner(producer, consumer);
+                long rows = runner.run();
+                if (consumer instanceof DbImportResultConsumer) {
+                    tableInfo.put(BATCH_SIZE_KEY, ((DbImportResultConsumer) consumer).getAverageBatchSize());
+                    tableInfo.put(COMMITS_KEY, ((DbImportResultConsumer) consumer).getCommits());
+                } else {
+                    tableInfo.put(BULK_LOAD_KEY, true);
+                }
+                dbFacade.afterImportTable(con, tableName, tableInfo);
 
-            return rows;
+                return rows;
+            } finally {
+                dbFacade.afterImportTableFile(tableName, tableInfo);
+            }
         } finally {
             LoggedUtils.close(con);
             LoggedUtils.close(in);
+            if (lobStore != null) LoggedUtils.close(lobStore);
         }
     }
 
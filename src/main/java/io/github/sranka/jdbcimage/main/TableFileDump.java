@@ -1,9 +1,11 @@
 package io.github.sranka.jdbcimage.main;
 
+import io.github.sranka.jdbcimage.LobStore;
 import io.github.sranka.jdbcimage.LoggedUtils;
-import io.github.sranka.jdbcimage.ResultConsumer;
 import io.github.sranka.jdbcimage.ResultProducerRunner;
 import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowBatch;
+import io.github.sranka.jdbcimage.RowBatchConsumer;
 import io.github.sranka.jdbcimage.RowData;
 import io.github.sranka.jdbcimage.kryo.KryoResultProducer;
 
@@ -76,6 +78,13 @@ public class TableFileDump extends MainToolBase {
         out.println("Input file: " + inFile);
         InputStream in = toResultInput(inFile);
         if (in == null) return; // zip on input
+        LobStore lobStore;
+        try {
+            lobStore = toLobStoreInput(inFile);
+        } catch (IOException | RuntimeException e) {
+            LoggedUtils.close(in);
+            throw e;
+        }
         PrintStream target;
         if (tool_out_file != null && !tool_out_file.isEmpty()) {
             File outFile = new File(tool_out_file);
@@ -86,7 +95,7 @@ public class TableFileDump extends MainToolBase {
             target = out;
         }
         try {
-            ResultProducerRunner runner = new ResultProducerRunner(new KryoResultProducer(in), new ResultConsumer<RowData>() {
+            ResultProducerRunner runner = new ResultProducerRunner(new KryoResultProducer(in, lobStore), new RowBatchConsumer() {
                 private ResultSetInfo info;
                 private long rows;
 
@@ -108,45 +117,97 @@ public class TableFileDump extends MainToolBase {
                     rows++;
                     if (!skipData) {
                         for (int i = 0; i < t.values.length; i++) {
-                            target.print(info.columns[i]);
-                            target.print(" ");
-                            Object value = t.values[i];
-                            if (value instanceof byte[]) value = new ByteArrayInputStream((byte[]) value);
-                            if (value instanceof InputStream) {
-                                InputStream in = (InputStream) value;
-                                target.flush();
-                                byte[] chunk = new byte[100];
-                                int count;
-                                try {
-                                    while ((count = in.read(chunk)) != -1) {
-                                        target.write(chunk, 0, count);
-                                    }
-                                    target.println();
-                                } catch (IOException e) {
-                                    throw new RuntimeException(e);
-                                } finally {
-                                    LoggedUtils.close(in);
+                            printValue(i, t.values[i]);
+                        }
+                        target.println("-------------------------");
+                    }
+                }
+
+                @Override
+                public void acceptBatch(RowBatch batch) {
+                    rows += batch.size;
+                    if (!skipData) {
+                        for (int row = 0; row < batch.size; row++) {
+                            for (int i = 0; i < batch.kinds.length; i++) {
+                                if (batch.isNull(i, row)) {
+                                    printValue(i, null);
+                                    continue;
                                 }
-                            } else if (value instanceof Reader) {
-                                Reader in = (Reader) value;
-                                target.flush();
-                                char[] chunk = new char[100];
-                                int count;
-                                try {
-                                    while ((count = in.read(chunk)) != -1) {
-                                        target.print(new String(chunk, 0, count));
-                                    }
-                                    target.println();
-                                } catch (IOException e) {
-                                    throw new RuntimeException(e);
-                                } finally {
-                                    LoggedUtils.close(in);
+                                // primitive values are printed without boxing
+                                switch (batch.kinds[i]) {
+                                    case RowBatch.KIND_LONG:
+                                        printColumn(i);
+                                        target.println(batch.longs[i][row]);
+                                        break;
+                                    case RowBatch.KIND_INT:
+                                        printColumn(i);
+                                        target.println(batch.ints[i][row]);
+                                        break;
+                                    case RowBatch.KIND_SHORT:
+                                        printColumn(i);
+                                        target.println(batch.shorts[i][row]);
+                                        break;
+                                    case RowBatch.KIND_DOUBLE:
+                                        printColumn(i);
+                                        target.println(batch.doubles[i][row]);
+                                        break;
+                                    case RowBatch.KIND_FLOAT:
+                                        printColumn(i);
+                                        target.println(batch.floats[i][row]);
+                                        break;
+                                    case RowBatch.KIND_BOOLEAN:
+                                        printColumn(i);
+                                        target.println(batch.booleans[i][row]);
+                                        break;
+                                    default:
+                                        printValue(i, batch.objects[i][row]);
                                 }
-                            } else {
-                                target.println(value);
                             }
+                            target.println("-------------------------");
                         }
-                        target.println("-------------------------");
+                    }
+                }
+
+                private void printColumn(int i) {
+                    target.print(info.columns[i]);
+                    target.print(" ");
+                }
+
+                private void printValue(int i, Object value) {
+                    printColumn(i);
+                    if (value instanceof byte[]) value = new ByteArrayInputStream((byte[]) value);
+                    if (value instanceof InputStream) {
+                        InputStream in = (InputStream) value;
+                        target.flush();
+                        byte[] chunk = new byte[100];
+                        int count;
+                        try {
+                            while ((count = in.read(chunk)) != -1) {
+                                target.write(chunk, 0, count);
+                            }
+                            target.println();
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        } finally {
+                            LoggedUtils.close(in);
+                        }
+                    } else if (value instanceof Reader) {
+                        Reader in = (Reader) value;
+                        target.flush();
+                        char[] chunk = new char[100];
+                        int count;
+                        try {
+                            while ((count = in.read(chunk)) != -1) {
+                                target.print(new String(chunk, 0, count));
+                            }
+                            target.println();
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        } finally {
+                            LoggedUtils.close(in);
+                        }
+                    } else {
+                        target.println(value);
                     }
                 }
 
@@ -159,6 +220,7 @@ public class TableFileDump extends MainToolBase {
             runner.run();
         } finally {
             LoggedUtils.close(in);
+            if (lobStore != null) LoggedUtils.close(lobStore);
             // close the file
             target.flush();
             if (target != out) {
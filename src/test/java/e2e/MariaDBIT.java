@@ -102,4 +102,31 @@ public class MariaDBIT {
         new ExampleTableData().ignoreUpdatedAtColumn().assertEquals(row);
     }
 
+    @Test
+    public void testBulkLoadImport() throws Exception {
+        toolSetup.execSqlFromResource(container, "/e2e/mariadb/example_table_drop.sql");
+        toolSetup.execSqlFromResource(container, "/e2e/mariadb/example_table_create.sql");
+
+        // import using LOAD DATA LOCAL INFILE
+        System.out.println("----- IMPORT -----");
+        File file = createFile("mariadb_bulk.zip");
+        TestUtils.copyResourceToFile("/e2e/mariadb/example_table.zip", file);
+        try {
+            toolSetup.execTool(container, "import", "-tool_bulkLoad=true", file.getPath());
+        } finally {
+            System.clearProperty("tool_bulkLoad");
+        }
+        System.out.println("-------------------");
+        System.out.println(toolSetup.getOutput());
+
+        // export
+        System.out.println("----- EXPORT -----");
+        File exportedFile = createFile("mariadb_bulk_export.zip");
+        toolSetup.execTool(container, "export", exportedFile.getPath());
+        System.out.println("-------------------");
+        System.out.println(toolSetup.getOutput());
+
+        byte[] expectedKryoBytes = TestUtils.getKryoDataFromZipResource("/e2e/mariadb/example_table.zip", "example_table");
+        assertArrayEquals(expectedKryoBytes, TestUtils.getKryoDataFromZipFile(exportedFile, "example_table"));
+    }
 }
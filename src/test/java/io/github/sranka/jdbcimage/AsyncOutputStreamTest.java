@@ -0,0 +1,65 @@
+package io.github.sranka.jdbcimage;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test of associated class.
+ */
+public class AsyncOutputStreamTest {
+    @Test
+    public void testWriteInOrder() throws IOException {
+        byte[] data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) i;
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        try (AsyncOutputStream out = new AsyncOutputStream(target, 1000, 3)) {
+            out.write(data, 0, 10);
+            for (int i = 10; i < 20; i++) {
+                out.write(data[i]);
+            }
+            out.flush();
+            out.write(data, 20, data.length - 20);
+        }
+        assertArrayEquals(data, target.toByteArray());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        new AsyncOutputStream(target).close();
+        assertEquals(0, target.size());
+    }
+
+    @Test
+    public void testWriteFailure() {
+        boolean[] closed = {false};
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        try (AsyncOutputStream out = new AsyncOutputStream(failing, 10, 2)) {
+            for (int i = 0; i < 1000; i++) {
+                out.write(new byte[10], 0, 10);
+            }
+            fail("exception expected");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        assertTrue(closed[0]);
+    }
+}
@@ -0,0 +1,120 @@
+package io.github.sranka.jdbcimage;
+
+import org.junit.Test;
+
+import java.sql.Types;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test of associated class.
+ */
+public class AsyncResultProducerTest {
+    /**
+     * Produces rows with a row number and its string, fails at the supplied row.
+     */
+    private static class TestProducer implements ResultProducer {
+        private final int rows;
+        private final int failAt;
+        private int row;
+        private boolean closed;
+
+        TestProducer(int rows, int failAt) {
+            this.rows = rows;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public RowData start() {
+            ResultSetInfo info = new ResultSetInfo();
+            info.columns = new String[]{"id", "name"};
+            info.types = new int[]{Types.BIGINT, Types.VARCHAR};
+            return new RowData(info);
+        }
+
+        @Override
+        public boolean fillData(RowData data) {
+            if (row == failAt) throw new IllegalStateException("failed at " + row);
+            if (row == rows) return false;
+            data.values[0] = (long) row;
+            data.values[1] = row % 3 == 0 ? null : String.valueOf(row);
+            row++;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static void checkRow(long id, Object name) {
+        assertEquals(id % 3 == 0 ? null : String.valueOf(id), name);
+    }
+
+    @Test
+    public void testFillBatch() {
+        int rows = RowBatch.DEFAULT_CAPACITY * 10 + 7;
+        TestProducer test = new TestProducer(rows, -1);
+        AsyncResultProducer producer = new AsyncResultProducer(test, 2);
+        RowData row = producer.start();
+        RowBatch batch = new RowBatch(row.info, RowBatch.DEFAULT_CAPACITY);
+        long expected = 0;
+        while (producer.fillBatch(batch)) {
+            for (int i = 0; i < batch.size; i++) {
+                assertFalse(batch.isNull(0, i));
+                assertEquals(expected, batch.longs[0][i]);
+                checkRow(expected, batch.getObject(1, i));
+                expected++;
+            }
+        }
+        assertEquals(rows, expected);
+        assertFalse(producer.fillBatch(batch));
+        producer.close();
+        assertTrue(test.closed);
+    }
+
+    @Test
+    public void testFillData() {
+        int rows = RowBatch.DEFAULT_CAPACITY * 3;
+        AsyncResultProducer producer = new AsyncResultProducer(new TestProducer(rows, -1));
+        RowData row = producer.start();
+        long expected = 0;
+        while (producer.fillData(row)) {
+            assertEquals(expected, row.values[0]);
+            checkRow(expected, row.values[1]);
+            expected++;
+        }
+        assertEquals(rows, expected);
+        producer.close();
+    }
+
+    @Test
+    public void testFailure() {
+        AsyncResultProducer producer = new AsyncResultProducer(new TestProducer(1000, 500));
+        RowData row = producer.start();
+        try {
+            int count = 0;
+            while (producer.fillData(row)) count++;
+            fail("failure expected after " + count + " rows");
+        } catch (RuntimeException e) {
+            assertEquals("failed at 500", e.getMessage());
+        }
+        producer.close();
+    }
+
+    @Test
+    public void testCloseUnfinished() {
+        TestProducer test = new TestProducer(RowBatch.DEFAULT_CAPACITY * 100, -1);
+        AsyncResultProducer producer = new AsyncResultProducer(test);
+        RowData row = producer.start();
+        assertTrue(producer.fillData(row));
+        assertNull(row.values[1]);
+        producer.close();
+        assertTrue(test.closed);
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.sranka.jdbcimage;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import io.github.sranka.jdbcimage.kryo.KryoInputStreamSerializer;
+import io.github.sranka.jdbcimage.kryo.KryoReaderSerializer;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of associated class, it measures bytes allocated by the current thread when LOBs are (de)serialized.
+ */
+public class ChunkPoolTest {
+    private static final int CELLS = 2000;
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static Output discardingOutput() {
+        return new Output(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+
+    private static void writeCells(Output out, byte[] blob, String clob) {
+        for (int i = 0; i < CELLS; i++) {
+            KryoInputStreamSerializer.INSTANCE.write(null, out, new ByteArrayInputStream(blob));
+            KryoReaderSerializer.INSTANCE.write(null, out, new StringReader(clob));
+        }
+    }
+
+    @Test
+    public void testWriteSmallValues() {
+        Output out = discardingOutput();
+        byte[] blob = new byte[100];
+        String clob = "text";
+        writeCells(out, blob, clob); // warm up
+        long start = allocatedBytes();
+        writeCells(out, blob, clob);
+        long allocated = allocatedBytes() - start;
+        // a buffer per value would take CELLS * 128KB
+        assertTrue("Allocated " + allocated + " bytes", allocated < (long) CELLS * 1024 * 8);
+    }
+
+    @Test
+    public void testReadLargeValues() throws IOException {
+        byte[] data = new byte[ChunkPool.BYTE_CHUNK_SIZE * 4];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) i;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Output out = new Output(bytes)) {
+            KryoInputStreamSerializer.INSTANCE.write(null, out, new ByteArrayInputStream(data));
+        }
+        byte[] serialized = bytes.toByteArray();
+        byte[] buffer = new byte[1024 * 8];
+
+        long start = 0;
+        for (int round = 0; round < 2; round++) { // warm up in the first round
+            if (round == 1) start = allocatedBytes();
+            for (int i = 0; i < 50; i++) {
+                Input in = new Input(serialized);
+                try (InputStream value = (InputStream) KryoInputStreamSerializer.INSTANCE.deserializeBlobChunks(in, null)) {
+                    assertTrue(value instanceof ChunkedInputStream);
+                    while (value.read(buffer) >= 0) {
+                        // consume the value, it releases its chunks
+                    }
+                }
+            }
+        }
+        long allocated = allocatedBytes() - start;
+        // chunks without a pool would take 50 * 256KB
+        assertTrue("Allocated " + allocated + " bytes", allocated < 50L * data.length / 4);
+    }
+
+    @Test
+    public void testReleasedChunks() throws IOException {
+        byte[] data = new byte[ChunkPool.BYTE_CHUNK_SIZE * 2 + 10];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i * 7);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Output out = new Output(bytes)) {
+            KryoInputStreamSerializer.INSTANCE.write(null, out, new ByteArrayInputStream(data));
+        }
+        // values that reuse released chunks are not affected by each other
+        for (int i = 0; i < 3; i++) {
+            InputStream value = (InputStream) KryoInputStreamSerializer.INSTANCE.deserializeBlobChunks(new Input(bytes.toByteArray()), null);
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            int b;
+            while ((b = value.read()) >= 0) read.write(b);
+            assertArrayEquals(data, read.toByteArray());
+            assertEquals(-1, value.read());
+        }
+    }
+}
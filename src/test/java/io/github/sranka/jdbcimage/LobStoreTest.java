@@ -0,0 +1,165 @@
+package io.github.sranka.jdbcimage;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import io.github.sranka.jdbcimage.codec.DeflateCodec;
+import io.github.sranka.jdbcimage.kryo.KryoInputStreamSerializer;
+import io.github.sranka.jdbcimage.kryo.KryoReaderSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of associated class.
+ */
+public class LobStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private long storeBytes;
+    private File file;
+
+    @Before
+    public void setUp() {
+        storeBytes = LobStore.STORE_BYTES;
+        LobStore.STORE_BYTES = 100_000;
+        file = new File(folder.getRoot(), "TABLE" + LobStore.SUFFIX);
+    }
+
+    @After
+    public void tearDown() {
+        LobStore.STORE_BYTES = storeBytes;
+    }
+
+    private static byte[] data(int length, int seed) {
+        byte[] retVal = new byte[length];
+        for (int i = 0; i < length; i++) retVal[i] = (byte) (i * seed);
+        return retVal;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream retVal = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int count;
+        try {
+            while ((count = in.read(buffer)) >= 0) retVal.write(buffer, 0, count);
+        } finally {
+            in.close();
+        }
+        return retVal.toByteArray();
+    }
+
+    @Test
+    public void testStoredBlobs() throws IOException {
+        byte[] large = data(300_000, 31);
+        byte[] other = data(300_000, 7);
+        byte[] small = data(90_000, 3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (LobStore store = LobStore.create(file, new DeflateCodec())) {
+            KryoInputStreamSerializer serializer = new KryoInputStreamSerializer(store);
+            try (Output out = new Output(bytes)) {
+                for (byte[] value : Arrays.asList(large, small, other, large)) {
+                    serializer.write(null, out, new ByteArrayInputStream(value));
+                }
+            }
+        }
+        // the repeated value is stored once and the small value is written inline
+        long storeLength = file.length();
+        try (LobStore store = LobStore.create(new File(folder.getRoot(), "OTHER" + LobStore.SUFFIX), new DeflateCodec())) {
+            KryoInputStreamSerializer serializer = new KryoInputStreamSerializer(store);
+            try (Output out = new Output(new ByteArrayOutputStream())) {
+                serializer.write(null, out, new ByteArrayInputStream(large));
+                serializer.write(null, out, new ByteArrayInputStream(other));
+            }
+            assertEquals(storeLength, store.getFile().length());
+        }
+
+        try (LobStore store = LobStore.open(file, false)) {
+            KryoInputStreamSerializer serializer = new KryoInputStreamSerializer(store);
+            Input in = new Input(bytes.toByteArray());
+            Object[] values = new Object[4];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = serializer.deserializeBlobChunks(in, null);
+            }
+            assertTrue(values[0] instanceof SpilledInputStream);
+            assertTrue(values[1] instanceof ChunkedInputStream);
+            assertEquals(large.length, ((SpilledInputStream) values[0]).length());
+            // values are read in any order
+            assertArrayEquals(large, readAll((InputStream) values[3]));
+            assertArrayEquals(other, readAll((InputStream) values[2]));
+            assertArrayEquals(small, readAll((InputStream) values[1]));
+            assertArrayEquals(large, readAll((InputStream) values[0]));
+        }
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void testStoredClob() throws IOException {
+        char[] chars = new char[150_000];
+        Arrays.fill(chars, '\u017E');
+        chars[0] = '\uD83D'; // surrogate pair
+        chars[1] = '\uDE00';
+        String value = new String(chars);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (LobStore store = LobStore.create(file, new DeflateCodec())) {
+            try (Output out = new Output(bytes)) {
+                new KryoReaderSerializer(true, store).write(null, out, new StringReader(value));
+            }
+        }
+        assertTrue(bytes.size() < 100);
+
+        try (LobStore store = LobStore.open(file, false)) {
+            Object read = new KryoReaderSerializer(true, store).deserializeClobChunks(new Input(bytes.toByteArray()), null);
+            assertTrue(read instanceof SpilledReader);
+            assertEquals(value.length(), ((SpilledReader) read).length());
+            assertEquals(value, ((SpilledReader) read).readAsString());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingStore() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (LobStore store = LobStore.create(file, new DeflateCodec())) {
+            try (Output out = new Output(bytes)) {
+                new KryoInputStreamSerializer(store).write(null, out, new ByteArrayInputStream(data(200_000, 5)));
+            }
+        }
+        KryoInputStreamSerializer.INSTANCE.deserializeBlobChunks(new Input(bytes.toByteArray()), null);
+    }
+
+    @Test
+    public void testExtract() throws IOException {
+        byte[] value = data(200_000, 13);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (LobStore store = LobStore.create(file, new DeflateCodec())) {
+            try (Output out = new Output(bytes)) {
+                new KryoInputStreamSerializer(store).write(null, out, new ByteArrayInputStream(value));
+            }
+        }
+        File directory = folder.newFolder();
+        LobStore store = LobStore.extract(new ByteArrayInputStream(readAll(new FileInputStream(file))), directory);
+        try {
+            assertEquals(1, directory.list().length);
+            Object read = new KryoInputStreamSerializer(store).deserializeBlobChunks(new Input(bytes.toByteArray()), null);
+            assertArrayEquals(value, readAll((InputStream) read));
+        } finally {
+            store.close();
+        }
+        // the extracted store is deleted
+        assertEquals(0, directory.list().length);
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.sranka.jdbcimage;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Unit test of associated class.
+ */
+public class ParallelDeflaterOutputStreamTest {
+    private static final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @AfterClass
+    public static void shutdown() {
+        executor.shutdown();
+    }
+
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        ByteArrayOutputStream retVal = new ByteArrayOutputStream();
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buf = new byte[4096];
+            int count;
+            while ((count = in.read(buf)) >= 0) {
+                retVal.write(buf, 0, count);
+            }
+        }
+        return retVal.toByteArray();
+    }
+
+    private static void assertRoundTrip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelDeflaterOutputStream out = new ParallelDeflaterOutputStream(compressed, executor, 3, 6, 1024 * 32)) {
+            out.write(data, 0, data.length / 3);
+            out.flush();
+            for (int i = data.length / 3; i < data.length / 2; i++) {
+                out.write(data[i]);
+            }
+            out.write(data, data.length / 2, data.length - data.length / 2);
+        }
+        assertArrayEquals(data, inflate(compressed.toByteArray()));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        assertRoundTrip(new byte[0]);
+    }
+
+    @Test
+    public void testManyBlocks() throws IOException {
+        Random random = new Random(1);
+        byte[] data = new byte[1024 * 1024 + 17];
+        for (int i = 0; i < data.length; i++) {
+            // repeating text with some noise
+            data[i] = (byte) (random.nextInt(10) == 0 ? random.nextInt() : 'a' + (i % 13));
+        }
+        assertRoundTrip(data);
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.sranka.jdbcimage;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import io.github.sranka.jdbcimage.kryo.KryoInputStreamSerializer;
+import io.github.sranka.jdbcimage.kryo.KryoReaderSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of associated class.
+ */
+public class SpilledInputStreamTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private long spillBytes;
+
+    @Before
+    public void setUp() {
+        spillBytes = SpilledInputStream.SPILL_BYTES;
+        SpilledInputStream.SPILL_BYTES = 100_000;
+        SpilledInputStream.DIRECTORY = folder.getRoot();
+    }
+
+    @After
+    public void tearDown() {
+        SpilledInputStream.SPILL_BYTES = spillBytes;
+        SpilledInputStream.DIRECTORY = null;
+    }
+
+    private static byte[] data(int length) {
+        byte[] retVal = new byte[length];
+        for (int i = 0; i < length; i++) retVal[i] = (byte) (i * 31);
+        return retVal;
+    }
+
+    private static Input serialize(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Output out = new Output(bytes)) {
+            if (value instanceof byte[]) {
+                KryoInputStreamSerializer.INSTANCE.write(null, out, new ByteArrayInputStream((byte[]) value));
+            } else {
+                KryoReaderSerializer.INSTANCE.write(null, out, new StringReader((String) value));
+            }
+        }
+        return new Input(bytes.toByteArray());
+    }
+
+    @Test
+    public void testSpilledBlob() throws IOException {
+        byte[] data = data(300_000);
+        Object value = KryoInputStreamSerializer.INSTANCE.deserializeBlobChunks(serialize(data), null);
+        assertTrue(value instanceof SpilledInputStream);
+        assertEquals(data.length, ((SpilledInputStream) value).length());
+        assertEquals(1, folder.getRoot().list().length);
+
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int count;
+        try (InputStream in = (InputStream) value) {
+            while ((count = in.read(buffer)) >= 0) read.write(buffer, 0, count);
+        }
+        assertArrayEquals(data, read.toByteArray());
+        // the file is deleted when read
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testBlobInMemory() {
+        byte[] data = data(90_000);
+        Object value = KryoInputStreamSerializer.INSTANCE.deserializeBlobChunks(serialize(data), null);
+        assertTrue(value instanceof ChunkedInputStream);
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testSpilledClob() {
+        char[] chars = new char[100_000];
+        Arrays.fill(chars, 'ž');
+        chars[0] = '\uD83D'; // surrogate pair
+        chars[1] = '\uDE00';
+        String data = new String(chars);
+        Object value = KryoReaderSerializer.INSTANCE.deserializeClobChunks(serialize(data), null);
+        assertTrue(value instanceof SpilledReader);
+        assertEquals(data.length(), ((SpilledReader) value).length());
+        assertEquals(data, ((SpilledReader) value).readAsString());
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        Object value = KryoInputStreamSerializer.INSTANCE.deserializeBlobChunks(serialize(data(200_000)), null);
+        ((InputStream) value).read();
+        ((InputStream) value).close();
+        assertEquals(0, folder.getRoot().list().length);
+        assertEquals(-1, ((InputStream) value).read());
+    }
+}
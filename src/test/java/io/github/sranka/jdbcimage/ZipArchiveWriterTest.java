@@ -0,0 +1,129 @@
+package io.github.sranka.jdbcimage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit test of associated class.
+ */
+public class ZipArchiveWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] data(int length, int seed) {
+        byte[] retVal = new byte[length];
+        for (int i = 0; i < length; i++) {
+            retVal[i] = (byte) (i * seed);
+        }
+        return retVal;
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws IOException {
+        ByteArrayOutputStream retVal = new ByteArrayOutputStream();
+        try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+            byte[] buf = new byte[4096];
+            int count;
+            while ((count = in.read(buf)) >= 0) {
+                retVal.write(buf, 0, count);
+            }
+        }
+        return retVal.toByteArray();
+    }
+
+    @Test
+    public void testConcurrentEntries() throws Exception {
+        File zipFile = new File(folder.getRoot(), "test.zip");
+        File spill = folder.newFolder("spill");
+        // the first entries that exceed the limit are streamed and spilled
+        byte[] streamed = data(5000, 3);
+        byte[] spilled = data(7000, 5);
+        byte[] small = data(100, 7);
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(zipFile, spill, 1000)) {
+            OutputStream first = writer.newEntry("first");
+            OutputStream second = writer.newEntry("second");
+            OutputStream third = writer.newEntry("third");
+            OutputStream empty = writer.newEntry("empty");
+            first.write(streamed, 0, 2000);
+            second.write(spilled, 0, 3000);
+            third.write(small);
+            writer.discard("empty");
+            empty.close();
+            third.close();
+            first.write(streamed, 2000, 3000);
+            second.write(spilled, 3000, 4000);
+            second.close();
+            first.close();
+        }
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            List<String> names = new ArrayList<>();
+            Collections.list(zip.entries()).forEach(x -> names.add(x.getName()));
+            assertEquals(Arrays.asList("first", "third", "second"), names);
+            assertArrayEquals(streamed, read(zip, "first"));
+            assertArrayEquals(spilled, read(zip, "second"));
+            assertArrayEquals(small, read(zip, "third"));
+            assertNull(zip.getEntry("empty"));
+        }
+        assertEquals(0, spill.list().length);
+    }
+
+    @Test
+    public void testQueuedEntriesSpilled() throws Exception {
+        File zipFile = new File(folder.getRoot(), "test.zip");
+        File spill = folder.newFolder("spill");
+        byte[] large = data(5000, 3);
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(zipFile, spill, 1000)) {
+            OutputStream first = writer.newEntry("large");
+            first.write(large);
+            // the archive is owned by the large entry, small entries wait in memory up to the limit
+            for (int i = 0; i < 10; i++) {
+                try (OutputStream out = writer.newEntry("small" + i)) {
+                    out.write(data(300, i));
+                }
+            }
+            assertEquals(7, spill.list().length);
+            first.close();
+        }
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            assertEquals(11, zip.size());
+            assertArrayEquals(large, read(zip, "large"));
+            for (int i = 0; i < 10; i++) {
+                assertArrayEquals(data(300, i), read(zip, "small" + i));
+            }
+        }
+        assertEquals(0, spill.list().length);
+    }
+
+    @Test
+    public void testAbort() throws IOException {
+        File zipFile = new File(folder.getRoot(), "test.zip");
+        File spill = folder.newFolder("spill");
+        ZipArchiveWriter writer = new ZipArchiveWriter(zipFile, spill, 1000);
+        // the large entry is streamed into the archive and fails, the second one is spilled
+        OutputStream first = writer.newEntry("large");
+        first.write(data(2000, 1));
+        try (OutputStream out = writer.newEntry("second")) {
+            out.write(data(2000, 2));
+        }
+        assertEquals(1, spill.list().length);
+        writer.abort();
+        assertFalse(zipFile.exists());
+        assertEquals(0, spill.list().length);
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.sranka.jdbcimage.codec;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test of associated class.
+ */
+public class CodecsTest {
+    private static final byte[] DATA = new byte[100_000];
+
+    static {
+        for (int i = 0; i < DATA.length; i++) {
+            DATA[i] = (byte) (i % 251);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream retVal = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int count;
+        while ((count = in.read(buf)) >= 0) {
+            retVal.write(buf, 0, count);
+        }
+        in.close();
+        return retVal.toByteArray();
+    }
+
+    private static void assertRoundTrip(String spec, byte[] data) throws IOException {
+        Codec codec = Codecs.getCodec(spec);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Codecs.writeHeader(compressed, codec);
+        try (OutputStream out = codec.compress(compressed, null, 0)) {
+            out.write(data);
+        }
+        assertArrayEquals(spec, data, readAll(Codecs.decompress(new ByteArrayInputStream(compressed.toByteArray()))));
+    }
+
+    @Test
+    public void testCodecs() throws IOException {
+        for (String spec : new String[]{"none", "deflate", "deflate:1", "DEFLATE:9", "lz4"}) {
+            assertRoundTrip(spec, DATA);
+            assertRoundTrip(spec, new byte[0]);
+        }
+        assertEquals(1, ((DeflateCodec) Codecs.getCodec("deflate:1")).getLevel());
+    }
+
+    @Test
+    public void testLegacyZlib() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(compressed)) {
+            out.write(DATA);
+        }
+        assertArrayEquals(DATA, readAll(Codecs.decompress(new ByteArrayInputStream(compressed.toByteArray()))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCodec() {
+        Codecs.getCodec("zstd");
+    }
+}
@@ -0,0 +1,270 @@
+package io.github.sranka.jdbcimage.db;
+
+import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowData;
+import io.github.sranka.jdbcimage.main.DBFacade;
+import io.github.sranka.jdbcimage.main.DBFacade.ColumnInfo;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of associated class.
+ */
+public class DbImportResultConsumerTest {
+    private final List<Integer> batches = new ArrayList<>();
+    private final List<String> statements = new ArrayList<>();
+    private final Map<Integer, Object> boundIds = new HashMap<>();
+    private int commits;
+    private int rollbacks;
+    private int clearedBatches;
+    // number of the executed batch that fails, 0 when batches do not fail
+    private int failingBatch;
+    private int batchSize;
+    private long batchBytes;
+    private long commitRows;
+    private long commitBytes;
+    private int insertRows;
+    private String directPathHint;
+    private int maxBindParameters;
+    private ResultSetInfo info;
+
+    @Before
+    public void saveSettings() {
+        batchSize = DbImportResultConsumer.BATCH_SIZE;
+        batchBytes = DbImportResultConsumer.BATCH_BYTES;
+        commitRows = DbImportResultConsumer.COMMIT_ROWS;
+        commitBytes = DbImportResultConsumer.COMMIT_BYTES;
+        insertRows = DbImportResultConsumer.INSERT_ROWS;
+    }
+
+    @After
+    public void restoreSettings() {
+        DbImportResultConsumer.BATCH_SIZE = batchSize;
+        DbImportResultConsumer.BATCH_BYTES = batchBytes;
+        DbImportResultConsumer.COMMIT_ROWS = commitRows;
+        DbImportResultConsumer.COMMIT_BYTES = commitBytes;
+        DbImportResultConsumer.INSERT_ROWS = insertRows;
+    }
+
+    private PreparedStatement createStatement(String sql) {
+        statements.add(sql);
+        int rows = sql.split("\\(\\?").length - 1;
+        int[] rowsInBatch = new int[1];
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setLong":
+                            boundIds.put((Integer) args[0], args[1]);
+                            return null;
+                        case "addBatch":
+                            rowsInBatch[0] += rows;
+                            return null;
+                        case "clearBatch":
+                            clearedBatches++;
+                            rowsInBatch[0] = 0;
+                            return null;
+                        case "executeBatch":
+                            if (batches.size() + 1 == failingBatch) {
+                                throw new SQLException("Batch failed");
+                            }
+                            batches.add(rowsInBatch[0]);
+                            rowsInBatch[0] = 0;
+                            return new int[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private Connection createConnection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "prepareStatement":
+                            return createStatement((String) args[0]);
+                        case "commit":
+                            commits++;
+                            return null;
+                        case "rollback":
+                            rollbacks++;
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private DbImportResultConsumer createConsumer() {
+        DBFacade db = new DBFacade() {
+            @Override
+            public void setupDataSource(BasicDataSource bds) {
+            }
+
+            @Override
+            protected List<String> getDbUserTables(Connection con) {
+                return null;
+            }
+
+            @Override
+            public void modifyConstraints(boolean enable) {
+            }
+
+            @Override
+            public void modifyIndexes(boolean enable) {
+            }
+
+            @Override
+            public String getDirectPathInsertHint() {
+                return directPathHint;
+            }
+
+            @Override
+            public int getMaxBindParameters() {
+                return maxBindParameters;
+            }
+        };
+        Map<String, ColumnInfo> columns = new HashMap<>();
+        columns.put("id", new ColumnInfo("id", "bigint"));
+        columns.put("val", new ColumnInfo("val", "varchar"));
+        DbImportResultConsumer consumer = new DbImportResultConsumer("t", createConnection(), db, columns);
+        info = new ResultSetInfo();
+        info.columns = new String[]{"id", "val"};
+        info.types = new int[]{Types.BIGINT, Types.VARCHAR};
+        consumer.onStart(info);
+        return consumer;
+    }
+
+    private DbImportResultConsumer importRows(int count, Object value) {
+        DbImportResultConsumer consumer = createConsumer();
+        RowData row = new RowData(info);
+        for (int i = 0; i < count; i++) {
+            row.values[0] = (long) i;
+            row.values[1] = value;
+            consumer.accept(row);
+        }
+        assertEquals(count, consumer.onFinish());
+        assertEquals(count, batches.stream().mapToInt(x -> x).sum());
+        return consumer;
+    }
+
+    @Test
+    public void testFixedBatchSize() {
+        DbImportResultConsumer.BATCH_SIZE = 7;
+        DbImportResultConsumer.COMMIT_ROWS = 20;
+        DbImportResultConsumer consumer = importRows(30, "x");
+        assertEquals(Arrays.asList(7, 7, 7, 7, 2), batches);
+        // after 21 rows and at the end
+        assertEquals(2, commits);
+        assertEquals(2, consumer.getCommits());
+        assertEquals(7, consumer.getBatchSize());
+    }
+
+    @Test
+    public void testGrowingBatches() {
+        DbImportResultConsumer.BATCH_SIZE = 0;
+        DbImportResultConsumer.COMMIT_ROWS = Long.MAX_VALUE;
+        DbImportResultConsumer consumer = importRows(100_000, null);
+        assertEquals(Arrays.asList(100, 200, 400, 800, 1600, 3200, 6400, 10000), batches.subList(0, 8));
+        assertEquals(1, commits);
+        assertEquals(DbImportResultConsumer.MAX_BATCH_SIZE, consumer.getBatchSize());
+    }
+
+    @Test
+    public void testLargeRows() {
+        DbImportResultConsumer.BATCH_SIZE = 0;
+        DbImportResultConsumer.BATCH_BYTES = 1024 * 1024;
+        DbImportResultConsumer.COMMIT_ROWS = Long.MAX_VALUE;
+        DbImportResultConsumer.COMMIT_BYTES = 4 * 1024 * 1024;
+        char[] chars = new char[100_000];
+        Arrays.fill(chars, 'x');
+        DbImportResultConsumer consumer = importRows(200, new String(chars));
+        // a batch ends once it exceeds the bytes
+        assertEquals(11, (int) batches.get(0));
+        assertTrue(consumer.getBatchSize() <= 11);
+        // after every 4MB and at the end
+        assertEquals(4, commits);
+    }
+
+    @Test
+    public void testDirectPathInsert() {
+        DbImportResultConsumer.BATCH_SIZE = 0;
+        DbImportResultConsumer.COMMIT_ROWS = Long.MAX_VALUE;
+        directPathHint = "/*+ APPEND_VALUES */";
+        DbImportResultConsumer consumer = importRows(25_000, "x");
+        assertEquals(Collections.singletonList("INSERT /*+ APPEND_VALUES */ INTO t (id,val) VALUES (?,?)"), statements);
+        // batches of a fixed size, every batch is committed
+        assertEquals(Arrays.asList(10000, 10000, 5000), batches);
+        assertEquals(3, commits);
+        assertEquals(DbImportResultConsumer.MAX_BATCH_SIZE, consumer.getBatchSize());
+    }
+
+    @Test
+    public void testMultiRowInsert() {
+        DbImportResultConsumer.BATCH_SIZE = 8;
+        DbImportResultConsumer.COMMIT_ROWS = Long.MAX_VALUE;
+        DbImportResultConsumer.INSERT_ROWS = 100;
+        // 3 rows of 2 columns fit into the parameter limit
+        maxBindParameters = 7;
+        importRows(20, "x");
+        assertEquals(Arrays.asList("INSERT INTO t (id,val) VALUES (?,?),(?,?),(?,?)", "INSERT INTO t (id,val) VALUES (?,?)"),
+                statements);
+        // statements of 3 rows are batched until they exceed the batch size, the tail is inserted row by row
+        assertEquals(Arrays.asList(9, 9, 2), batches);
+        assertEquals(1, commits);
+        // the last multi-row statement bound rows 15, 16, 17
+        assertEquals(17L, boundIds.get(5));
+    }
+
+    @Test
+    public void testMultiRowInsertUnsupported() {
+        DbImportResultConsumer.BATCH_SIZE = 8;
+        DbImportResultConsumer.INSERT_ROWS = 100;
+        importRows(20, "x");
+        assertEquals(Collections.singletonList("INSERT INTO t (id,val) VALUES (?,?)"), statements);
+        assertEquals(Arrays.asList(8, 8, 4), batches);
+    }
+
+    @Test
+    public void testFailedBatch() {
+        DbImportResultConsumer.BATCH_SIZE = 5;
+        DbImportResultConsumer.COMMIT_ROWS = 100;
+        failingBatch = 3;
+        DbImportResultConsumer consumer = createConsumer();
+        RowData row = new RowData(info);
+        RuntimeException failure = null;
+        for (int i = 0; i < 20 && failure == null; i++) {
+            row.values[0] = (long) i;
+            row.values[1] = "x";
+            try {
+                consumer.accept(row);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        assertNotNull(failure);
+        consumer.onFailure(failure);
+        // the failed batch is not executed again and the transaction is rolled back, not committed
+        assertEquals(Arrays.asList(5, 5), batches);
+        assertEquals(0, commits);
+        assertEquals(1, rollbacks);
+        assertEquals(1, clearedBatches);
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.sranka.jdbcimage.db;
+
+import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowData;
+import io.github.sranka.jdbcimage.main.DBFacade.ColumnInfo;
+import io.github.sranka.jdbcimage.main.MariaDB;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test of associated class.
+ */
+public class MariaDbLoadDataResultConsumerTest {
+    private final List<String> executed = new ArrayList<>();
+    private final List<String> loaded = new ArrayList<>();
+    private int commits;
+
+    private Connection createConnection() {
+        Statement stmt = (Statement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Statement.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("execute")) {
+                        executed.add((String) args[0]);
+                        return false;
+                    }
+                    return null;
+                });
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "createStatement":
+                            return stmt;
+                        case "commit":
+                            commits++;
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    public void testLoadData() {
+        Map<String, ColumnInfo> columns = new HashMap<>();
+        columns.put("id", new ColumnInfo("id", "BIGINT"));
+        columns.put("name", new ColumnInfo("name", "VARCHAR"));
+        columns.put("data", new ColumnInfo("data", "BLOB"));
+        columns.put("flag", new ColumnInfo("flag", "BIT"));
+        columns.put("price", new ColumnInfo("price", "DECIMAL"));
+        columns.put("day", new ColumnInfo("day", "DATE"));
+        columns.put("created", new ColumnInfo("created", "DATETIME"));
+        MariaDbLoadDataResultConsumer consumer = new MariaDbLoadDataResultConsumer("t", createConnection(), new MariaDB(), columns, info -> {
+        }) {
+            @Override
+            void loadData(InputStream data, long rows) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                int b;
+                while ((b = ((ByteArrayInputStream) data).read()) >= 0) bytes.write(b);
+                loaded.add(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+            }
+        };
+        ResultSetInfo info = new ResultSetInfo();
+        info.columns = new String[]{"id", "name", "ignored", "data", "flag", "price", "day", "created"};
+        info.types = new int[]{Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.VARBINARY, Types.BIT, Types.DECIMAL,
+                Types.DATE, Types.TIMESTAMP};
+        consumer.onStart(info);
+        assertEquals("LOAD DATA LOCAL INFILE 'jdbcimage.tsv' INTO TABLE `t` CHARACTER SET utf8mb4"
+                + " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n'"
+                + " (`id`,`name`,@v2,@v3,`price`,`day`,`created`) SET `data`=UNHEX(@v2),`flag`=CAST(@v3 AS UNSIGNED)",
+                consumer.getLoadSql());
+        assertEquals("SET unique_checks=0", executed.get(0));
+
+        RowData row = new RowData(info);
+        row.values = new Object[]{1L, "a\tb\nc\\d\u0000ž", "x", new byte[]{0, (byte) 0xAB}, true, new BigDecimal("1E+2"),
+                Date.valueOf("2020-01-02"), Timestamp.valueOf("2020-01-02 03:04:05.5")};
+        consumer.accept(row);
+        row.values = new Object[]{2L, "", null, new ByteArrayInputStream(new byte[]{1}), null, null, null, null};
+        consumer.accept(row);
+        assertEquals(2, consumer.onFinish());
+
+        assertEquals(1, loaded.size());
+        assertEquals("1\ta\\tb\\nc\\\\d\\0ž\t00AB\t1\t100\t2020-01-02\t2020-01-02 03:04:05.5\n"
+                + "2\t\t01\t\\N\t\\N\t\\N\t\\N\n", loaded.get(0));
+        assertEquals(1, commits);
+        assertEquals("SET unique_checks=1", executed.get(2));
+    }
+}
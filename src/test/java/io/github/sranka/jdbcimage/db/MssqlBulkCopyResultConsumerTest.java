@@ -0,0 +1,56 @@
+package io.github.sranka.jdbcimage.db;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+import io.github.sranka.jdbcimage.main.DBFacade.ColumnInfo;
+import io.github.sranka.jdbcimage.main.Mssql;
+import org.junit.Test;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of associated class.
+ */
+public class MssqlBulkCopyResultConsumerTest {
+    @Test
+    public void testBulkData() throws Exception {
+        List<Object[]> rows = Arrays.asList(new Object[]{1L, "a"}, new Object[]{2L, null});
+        ISQLServerBulkData data = (ISQLServerBulkData) MssqlBulkCopyResultConsumer.createBulkData(new String[]{"id", "name"},
+                new int[]{Types.BIGINT, Types.NVARCHAR}, new int[]{19, 50}, new int[]{0, 0}, rows);
+        assertEquals(Arrays.asList(1, 2), Arrays.asList(data.getColumnOrdinals().toArray()));
+        assertEquals("name", data.getColumnName(2));
+        assertEquals(Types.NVARCHAR, data.getColumnType(2));
+        assertEquals(50, data.getPrecision(2));
+        assertTrue(data.next());
+        assertArrayEquals(rows.get(0), data.getRowData());
+        assertTrue(data.next());
+        assertArrayEquals(rows.get(1), data.getRowData());
+        assertFalse(data.next());
+    }
+
+    @Test
+    public void testSourceTypes() {
+        assertEquals(Types.VARBINARY, MssqlBulkCopyResultConsumer.toSourceType(Types.BLOB, "VARBINARY"));
+        assertEquals(Types.NVARCHAR, MssqlBulkCopyResultConsumer.toSourceType(Types.NCLOB, "NVARCHAR"));
+        assertEquals(Types.SMALLINT, MssqlBulkCopyResultConsumer.toSourceType(Types.TINYINT, "TINYINT"));
+        assertEquals(Types.TIMESTAMP, MssqlBulkCopyResultConsumer.toSourceType(Types.TIMESTAMP, "DATETIME2"));
+        // converted to a string with offset
+        assertEquals(Mssql.Types.DATETIMEOFFSET, MssqlBulkCopyResultConsumer.toSourceType(Types.TIMESTAMP, "DATETIMEOFFSET"));
+        assertEquals(Mssql.Types.DATETIMEOFFSET, MssqlBulkCopyResultConsumer.toSourceType(Mssql.Types.DATETIMEOFFSET, "DATETIMEOFFSET"));
+    }
+
+    @Test
+    public void testUnsupportedColumn() {
+        ColumnInfo id = new ColumnInfo("id", "int identity");
+        ColumnInfo variant = new ColumnInfo("v", "sql_variant");
+        assertNull(MssqlBulkCopyResultConsumer.getUnsupportedColumn(Arrays.asList(id, new ColumnInfo("t", "datetimeoffset"))));
+        assertEquals(variant, MssqlBulkCopyResultConsumer.getUnsupportedColumn(Arrays.asList(id, variant)));
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.sranka.jdbcimage.db;
+
+import io.github.sranka.jdbcimage.main.DBFacade.ColumnInfo;
+import org.junit.Test;
+import org.postgresql.util.ByteConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test of associated class.
+ */
+public class PgCopyImportResultConsumerTest {
+    private static byte[] encode(String dbType, Object value) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        PgCopyImportResultConsumer.createEncoder(dbType).encode(value, out);
+        out.flush();
+        byte[] retVal = bytes.toByteArray();
+        // field length precedes the field data
+        assertEquals(retVal.length - 4, ByteConverter.int4(retVal, 0));
+        return Arrays.copyOfRange(retVal, 4, retVal.length);
+    }
+
+    @Test
+    public void testNumeric() throws Exception {
+        for (String val : new String[]{"0", "0.00", "7.25", "-7.25", "12345.678", "-0.001", "1E+8", "100000000", "0.00010001",
+                "123456789012345678901234567890.123456789", "9999", "10000"}) {
+            BigDecimal value = new BigDecimal(val);
+            // numeric has no negative scale
+            BigDecimal expected = value.setScale(Math.max(value.scale(), 0));
+            assertEquals(val, expected, ByteConverter.numeric(encode("NUMERIC", value)));
+        }
+        assertEquals(new BigDecimal("42"), ByteConverter.numeric(encode("NUMERIC", 42L)));
+        assertEquals(new BigDecimal("2.5"), ByteConverter.numeric(encode("NUMERIC", 2.5)));
+        assertEquals(Double.NaN, ByteConverter.numeric(encode("NUMERIC", Double.NaN)));
+    }
+
+    @Test
+    public void testIntegers() throws Exception {
+        assertEquals(-2, ByteConverter.int2(encode("INT2", (short) -2), 0));
+        assertEquals(123456, ByteConverter.int4(encode("INT4", 123456), 0));
+        assertEquals(Long.MIN_VALUE, ByteConverter.int8(encode("INT8", Long.MIN_VALUE), 0));
+        assertEquals(42, ByteConverter.int4(encode("SERIAL", new BigDecimal("42")), 0));
+        try {
+            encode("INT2", 100_000);
+            fail("out of range");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testTemporal() throws Exception {
+        // days and microseconds since 2000-01-01
+        assertEquals(0, ByteConverter.int4(encode("DATE", Date.valueOf("2000-01-01")), 0));
+        assertEquals(-1, ByteConverter.int4(encode("DATE", Date.valueOf("1999-12-31")), 0));
+        assertEquals(366, ByteConverter.int4(encode("DATE", Date.valueOf("2001-01-01")), 0));
+        assertEquals(3_723_000_000L, ByteConverter.int8(encode("TIME", Time.valueOf("01:02:03")), 0));
+        assertEquals(86_400_000_001L, ByteConverter.int8(encode("TIMESTAMP", Timestamp.valueOf("2000-01-02 00:00:00.000001")), 0));
+        Timestamp exact = Timestamp.from(Instant.parse("1999-12-31T23:59:59.5Z"));
+        assertEquals(-500_000L, ByteConverter.int8(encode("TIMESTAMPTZ", exact), 0));
+    }
+
+    @Test
+    public void testOthers() throws Exception {
+        assertArrayEquals("žluť".getBytes("UTF-8"), encode("VARCHAR", "žluť"));
+        assertArrayEquals(new byte[]{1, '{', '}'}, encode("JSONB", "{}"));
+        assertArrayEquals(new byte[]{1}, encode("BOOL", true));
+        assertArrayEquals(new byte[]{3, 4}, encode("BYTEA", new byte[]{3, 4}));
+        UUID uuid = UUID.randomUUID();
+        byte[] bytes = encode("UUID", uuid.toString());
+        assertEquals(uuid, new UUID(ByteConverter.int8(bytes, 0), ByteConverter.int8(bytes, 8)));
+        assertEquals(1.5, ByteConverter.float8(encode("FLOAT8", 1.5), 0), 0);
+    }
+
+    @Test
+    public void testUnsupportedColumn() {
+        ColumnInfo id = new ColumnInfo("id", "int8");
+        ColumnInfo geometry = new ColumnInfo("shape", "geometry");
+        assertNull(PgCopyImportResultConsumer.getUnsupportedColumn(Arrays.asList(id, new ColumnInfo("t", "timestamptz"))));
+        assertEquals(geometry, PgCopyImportResultConsumer.getUnsupportedColumn(Arrays.asList(id, geometry)));
+    }
+}
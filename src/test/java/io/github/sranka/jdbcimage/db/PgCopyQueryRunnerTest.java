@@ -0,0 +1,146 @@
+package io.github.sranka.jdbcimage.db;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of associated class.
+ */
+public class PgCopyQueryRunnerTest {
+    private static final String[] TYPE_NAMES = {"int8", "int4", "int2", "float8", "float4", "bool", "numeric", "varchar",
+            "jsonb", "uuid", "bytea", "date", "time", "timestamp", "timestamptz"};
+
+    /**
+     * Encodes rows into the binary COPY format, the same way as COPY TO STDOUT does.
+     */
+    private static byte[] copyData(Object[]... rows) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[]{'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0});
+        out.writeInt(0);
+        out.writeInt(0);
+        for (Object[] row : rows) {
+            out.writeShort(row.length);
+            for (int i = 0; i < row.length; i++) {
+                if (row[i] == null) {
+                    out.writeInt(-1);
+                } else {
+                    PgCopyImportResultConsumer.createEncoder(TYPE_NAMES[i].toUpperCase()).encode(row[i], out);
+                }
+            }
+        }
+        out.writeShort(-1);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static ResultSet createResultSet(byte[] data) {
+        ResultSetMetaData meta = (ResultSetMetaData) Proxy.newProxyInstance(PgCopyQueryRunnerTest.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return PgCopyQueryRunner.createResultSet(new ByteArrayInputStream(data), meta, TYPE_NAMES);
+    }
+
+    @Test
+    public void testValues() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        Timestamp local = Timestamp.valueOf("2021-03-04 05:06:07.123456");
+        Timestamp exact = Timestamp.from(Instant.parse("1999-12-31T23:59:59.999999Z"));
+        ResultSet rs = createResultSet(copyData(
+                new Object[]{Long.MAX_VALUE, -5, (short) 7, 1.25, 2.5f, true, new BigDecimal("-12345.6780"), "žluť",
+                        "{\"a\": 1}", uuid, new byte[]{1, 2}, Date.valueOf("1970-01-01"), Time.valueOf("23:59:58"), local, exact},
+                new Object[TYPE_NAMES.length]));
+
+        assertTrue(rs.next());
+        assertEquals(Long.MAX_VALUE, rs.getLong(1));
+        assertFalse(rs.wasNull());
+        assertEquals(-5, rs.getInt(2));
+        assertEquals(7, rs.getShort(3));
+        assertEquals(1.25, rs.getDouble(4), 0);
+        assertEquals(2.5f, rs.getFloat(5), 0);
+        assertTrue(rs.getBoolean(6));
+        assertEquals(new BigDecimal("-12345.6780"), rs.getBigDecimal(7));
+        assertEquals("žluť", rs.getString(8));
+        assertEquals("{\"a\": 1}", rs.getObject(9).toString());
+        assertEquals("org.postgresql.util.PGobject", rs.getObject(9).getClass().getName());
+        assertEquals(uuid, rs.getObject(10));
+        assertArrayEquals(new byte[]{1, 2}, rs.getBytes(11));
+        assertEquals("1970-01-01", rs.getDate(12).toString());
+        assertEquals("23:59:58", rs.getTime(13).toString());
+        // a local date time depends on the calendar, an exact time does not
+        Calendar other = Calendar.getInstance(TimeZone.getTimeZone("GMT+0130"));
+        assertEquals(local, rs.getTimestamp(14, Calendar.getInstance()));
+        assertNotEquals(local.getTime(), rs.getTimestamp(14, other).getTime());
+        assertEquals(exact, rs.getTimestamp(15, Calendar.getInstance()));
+        assertEquals(exact, rs.getTimestamp(15, other));
+
+        assertTrue(rs.next());
+        assertEquals(0, rs.getLong(1));
+        assertTrue(rs.wasNull());
+        assertNull(rs.getBigDecimal(7));
+        assertNull(rs.getTimestamp(15, other));
+        assertFalse(rs.next());
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    @Test
+    public void testNumeric() throws Exception {
+        for (String val : new String[]{"0", "0.00", "7.25", "-7.25", "-0.001", "100000000", "0.00010001", "9999", "10000",
+                "123456789012345678901234567890.123456789"}) {
+            Object[] row = new Object[TYPE_NAMES.length];
+            row[6] = new BigDecimal(val);
+            ResultSet rs = createResultSet(copyData(row));
+            assertTrue(rs.next());
+            // the same scale as the text representation of the value
+            assertEquals(val, rs.getBigDecimal(7).toPlainString());
+        }
+    }
+
+    @Test
+    public void testEndOfDayTime() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[]{'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0});
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeShort(TYPE_NAMES.length);
+        for (int i = 0; i < TYPE_NAMES.length; i++) {
+            if ("time".equals(TYPE_NAMES[i])) {
+                // '24:00:00'::time
+                out.writeInt(8);
+                out.writeLong(24L * 3600 * 1_000_000);
+            } else {
+                out.writeInt(-1);
+            }
+        }
+        out.writeShort(-1);
+        out.flush();
+        ResultSet rs = createResultSet(bytes.toByteArray());
+        assertTrue(rs.next());
+        assertEquals(Timestamp.valueOf("1970-01-02 00:00:00").getTime(), rs.getTime(13).getTime());
+        assertFalse(rs.next());
+    }
+}
@@ -0,0 +1,193 @@
+package io.github.sranka.jdbcimage.db;
+
+import io.github.sranka.jdbcimage.ResultConsumer;
+import io.github.sranka.jdbcimage.ResultSetInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test of associated class.
+ */
+public class QueryRunnerTest {
+    // fetch sizes set to the statement and to the result set
+    private final List<Integer> statementFetchSizes = new ArrayList<>();
+    private final List<Integer> fetchSizes = new ArrayList<>();
+    private boolean fetchSizeFails;
+    private int fetchSize;
+    private int fixedFetchSize;
+    private long fetchMemory;
+
+    @Before
+    public void saveSettings() {
+        fetchSize = QueryRunner.FETCH_SIZE;
+        fixedFetchSize = QueryRunner.FIXED_FETCH_SIZE;
+        fetchMemory = QueryRunner.FETCH_MEMORY;
+    }
+
+    @After
+    public void restoreSettings() {
+        QueryRunner.FETCH_SIZE = fetchSize;
+        QueryRunner.FIXED_FETCH_SIZE = fixedFetchSize;
+        QueryRunner.FETCH_MEMORY = fetchMemory;
+    }
+
+    private static ResultSetMetaData createMetaData(int[] types, int[] precisions) {
+        return (ResultSetMetaData) Proxy.newProxyInstance(QueryRunnerTest.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount":
+                            return types.length;
+                        case "getColumnName":
+                            return "c" + args[0];
+                        case "getColumnType":
+                            return types[(Integer) args[0] - 1];
+                        case "getPrecision":
+                            return precisions[(Integer) args[0] - 1];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private ResultSet createResultSet(ResultSetMetaData metaData, int rows) {
+        int[] row = {0};
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMetaData":
+                            return metaData;
+                        case "next":
+                            return ++row[0] <= rows;
+                        case "setFetchSize":
+                            if (fetchSizeFails) {
+                                throw new SQLException("Fetch size cannot be changed");
+                            }
+                            fetchSizes.add((Integer) args[0]);
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private Connection createConnection(ResultSet rs) {
+        Statement stmt = (Statement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Statement.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setFetchSize":
+                            statementFetchSizes.add((Integer) args[0]);
+                            return null;
+                        case "executeQuery":
+                            return rs;
+                        default:
+                            return null;
+                    }
+                });
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("createStatement")) {
+                        return stmt;
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Runs a query of BIGINT rows, the consumer produces the supplied bytes per row.
+     */
+    private QueryRunner run(int rows, long rowBytes) {
+        ResultSet rs = createResultSet(createMetaData(new int[]{Types.BIGINT}, new int[]{19}), rows);
+        long[] consumed = {0};
+        QueryRunner runner = new QueryRunner(createConnection(rs), "SELECT", new ResultConsumer<ResultSet>() {
+            @Override
+            public void onStart(ResultSetInfo info) {
+            }
+
+            @Override
+            public void accept(ResultSet resultSet) {
+                consumed[0]++;
+            }
+
+            @Override
+            public long onFinish() {
+                return consumed[0];
+            }
+        });
+        runner.setBytesCounter(() -> consumed[0] * rowBytes);
+        runner.run();
+        assertEquals(rows, runner.getProcessedRows());
+        assertEquals(rows, consumed[0]);
+        return runner;
+    }
+
+    @Test
+    public void testEstimateFetchSize() throws SQLException {
+        QueryRunner.FETCH_MEMORY = 132_000;
+        // 16 bytes of a row, 16 bytes of a number and 100 bytes of a string
+        assertEquals(1000, QueryRunner.estimateFetchSize(
+                createMetaData(new int[]{Types.BIGINT, Types.VARCHAR}, new int[]{19, 100})));
+        // an unlimited string counts 4KB
+        assertEquals(31, QueryRunner.estimateFetchSize(
+                createMetaData(new int[]{Types.BIGINT, Types.VARCHAR}, new int[]{19, Integer.MAX_VALUE})));
+        // the estimate is limited by MIN_FETCH_SIZE and MAX_FETCH_SIZE
+        assertEquals(QueryRunner.MIN_FETCH_SIZE, QueryRunner.estimateFetchSize(
+                createMetaData(new int[]{Types.BLOB, Types.CLOB, Types.VARBINARY}, new int[]{0, 0, 0})));
+        QueryRunner.FETCH_MEMORY = 1024L * 1024 * 1024;
+        assertEquals(QueryRunner.MAX_FETCH_SIZE, QueryRunner.estimateFetchSize(
+                createMetaData(new int[]{Types.INTEGER}, new int[]{10})));
+    }
+
+    @Test
+    public void testAdjustFetchSize() {
+        QueryRunner.FETCH_MEMORY = 100_000;
+        // estimated 32 bytes per row, actual 100 bytes per row
+        QueryRunner runner = run(20_000, 100);
+        assertEquals(Collections.singletonList(QueryRunner.FETCH_SIZE), statementFetchSizes);
+        assertEquals(Arrays.asList(3125, 1000), fetchSizes);
+        assertEquals(1000, runner.getFetchSize());
+    }
+
+    @Test
+    public void testSmallChangeIgnored() {
+        QueryRunner.FETCH_MEMORY = 100_000;
+        // 2777 rows of 36 bytes differ from 3125 rows by less than 25%
+        QueryRunner runner = run(20_000, 36);
+        assertEquals(Collections.singletonList(3125), fetchSizes);
+        assertEquals(3125, runner.getFetchSize());
+    }
+
+    @Test
+    public void testFixedFetchSize() {
+        QueryRunner.FIXED_FETCH_SIZE = 500;
+        QueryRunner runner = run(2000, 100);
+        assertEquals(Collections.singletonList(500), statementFetchSizes);
+        assertEquals(Collections.emptyList(), fetchSizes);
+        assertEquals(500, runner.getFetchSize());
+    }
+
+    @Test
+    public void testFetchSizeUnsupported() {
+        QueryRunner.FETCH_MEMORY = 100_000;
+        fetchSizeFails = true;
+        // the statement fetch size is kept and the rows are not checked anymore
+        QueryRunner runner = run(2000, 100);
+        assertEquals(Collections.singletonList(QueryRunner.FETCH_SIZE), statementFetchSizes);
+        assertEquals(Collections.emptyList(), fetchSizes);
+        assertEquals(QueryRunner.FETCH_SIZE, runner.getFetchSize());
+    }
+}
@@ -0,0 +1,228 @@
+package io.github.sranka.jdbcimage.kryo;
+
+import com.esotericsoftware.kryo.io.Output;
+import io.github.sranka.jdbcimage.ResultConsumer;
+import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowBatch;
+import io.github.sranka.jdbcimage.RowData;
+import io.github.sranka.jdbcimage.SpilledInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.sql.rowset.serial.SerialClob;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of associated class.
+ */
+public class KryoColumnarResultSetConsumerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private static final String[] COLUMNS = {"id", "i", "s", "d", "f", "b", "str", "dt", "tm", "ts", "dec", "bin", "vbin", "clob"};
+    private static final int[] TYPES = {Types.BIGINT, Types.INTEGER, Types.SMALLINT, Types.DOUBLE, Types.REAL, Types.BIT,
+            Types.VARCHAR, Types.DATE, Types.TIME, Types.TIMESTAMP, Types.DECIMAL, Types.BINARY, Types.VARBINARY, Types.CLOB};
+
+    private static List<Object[]> createRows(int count) throws Exception {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (i % 7 == 3) {
+                rows.add(new Object[]{(long) i, null, null, null, null, null, null, null, null, null, null, null, null, null});
+            } else {
+                byte[] large = new byte[i == 5 ? 100_000 : i];
+                for (int j = 0; j < large.length; j++) large[j] = (byte) (i + j);
+                rows.add(new Object[]{(long) i, i * 3, (short) i, i / 3.0, i / 7f, i % 2 == 0, "row " + i,
+                        Date.valueOf("2020-01-" + (10 + i % 20)), Time.valueOf("12:34:" + (10 + i % 40)),
+                        new Timestamp(1_600_000_000_000L + i * 1000L), new BigDecimal(i + ".25"), new byte[]{(byte) i, 2},
+                        large, new SerialClob(("clob " + i).toCharArray())});
+            }
+        }
+        return rows;
+    }
+
+    private static List<Object[]> readRows(byte[] data) throws Exception {
+        KryoResultProducer producer = new KryoResultProducer(new ByteArrayInputStream(data));
+        RowData row = producer.start();
+        assertArrayEquals(COLUMNS, row.info.columns);
+        List<Object[]> retVal = new ArrayList<>();
+        while (producer.fillData(row)) {
+            retVal.add(materialize(row.values.clone()));
+        }
+        assertFalse(producer.fillData(row));
+        return retVal;
+    }
+
+    private static List<Object[]> readBatches(byte[] data, int capacity) throws Exception {
+        KryoResultProducer producer = new KryoResultProducer(new ByteArrayInputStream(data));
+        RowData row = producer.start();
+        RowBatch batch = new RowBatch(row.info, capacity);
+        List<Object[]> retVal = new ArrayList<>();
+        while (producer.fillBatch(batch)) {
+            assertTrue(batch.size > 0);
+            for (int i = 0; i < batch.size; i++) {
+                batch.getRow(i, row);
+                retVal.add(materialize(row.values.clone()));
+            }
+        }
+        assertFalse(producer.fillBatch(batch));
+        return retVal;
+    }
+
+    private static Object[] materialize(Object[] values) throws Exception {
+        for (int i = 0; i < values.length; i++) {
+            // materialize streams
+            if (values[i] instanceof InputStream) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                int b;
+                while ((b = ((InputStream) values[i]).read()) >= 0) bytes.write(b);
+                values[i] = bytes.toByteArray();
+            } else if (values[i] instanceof Reader) {
+                StringBuilder sb = new StringBuilder();
+                int c;
+                while ((c = ((Reader) values[i]).read()) >= 0) sb.append((char) c);
+                values[i] = sb.toString();
+            }
+        }
+        return values;
+    }
+
+    private static byte[] write(ResultConsumer<ResultSet> consumer, ByteArrayOutputStream data, int count) throws Exception {
+        ResultSet rs = TestResultSet.create(COLUMNS, TYPES, createRows(count));
+        consumer.onStart(new ResultSetInfo(rs.getMetaData()));
+        while (rs.next()) consumer.accept(rs);
+        assertEquals(count, consumer.onFinish());
+        return data.toByteArray();
+    }
+
+    @Test
+    public void testSameValuesAsVersion1_1() throws Exception {
+        int count = 50;
+        ByteArrayOutputStream rowData = new ByteArrayOutputStream();
+        KryoResultSetConsumer rowConsumer = new KryoResultSetConsumer(rowData);
+        ResultSet rs = TestResultSet.create(COLUMNS, TYPES, createRows(count));
+        rowConsumer.onStart(new ResultSetInfo(rs.getMetaData()));
+        while (rs.next()) rowConsumer.accept(rs);
+        assertEquals(count, rowConsumer.onFinish());
+
+        // several row groups
+        int groupRows = KryoColumnarResultSetConsumer.GROUP_ROWS;
+        KryoColumnarResultSetConsumer.GROUP_ROWS = 16;
+        ByteArrayOutputStream columnarData = new ByteArrayOutputStream();
+        KryoColumnarResultSetConsumer columnarConsumer = new KryoColumnarResultSetConsumer(columnarData);
+        try {
+            rs = TestResultSet.create(COLUMNS, TYPES, createRows(count));
+            columnarConsumer.onStart(new ResultSetInfo(rs.getMetaData()));
+            while (rs.next()) columnarConsumer.accept(rs);
+            assertEquals(count, columnarConsumer.onFinish());
+        } finally {
+            KryoColumnarResultSetConsumer.GROUP_ROWS = groupRows;
+        }
+        assertTrue(columnarConsumer.getWrittenBytes() > 0);
+
+        List<Object[]> expected = readRows(rowData.toByteArray());
+        List<Object[]> actual = readRows(columnarData.toByteArray());
+        assertEquals(count, actual.size());
+        for (int i = 0; i < count; i++) {
+            assertArrayEquals("row " + i, expected.get(i), actual.get(i));
+        }
+        assertNull(actual.get(3)[1]);
+        assertEquals("clob 5", actual.get(5)[13]);
+    }
+
+    @Test
+    public void testFillBatch() throws Exception {
+        int count = 50;
+        ByteArrayOutputStream rowData = new ByteArrayOutputStream();
+        byte[] rowBytes = write(new KryoResultSetConsumer(rowData), rowData, count);
+        int groupRows = KryoColumnarResultSetConsumer.GROUP_ROWS;
+        KryoColumnarResultSetConsumer.GROUP_ROWS = 16;
+        byte[] columnarBytes;
+        try {
+            ByteArrayOutputStream columnarData = new ByteArrayOutputStream();
+            columnarBytes = write(new KryoColumnarResultSetConsumer(columnarData), columnarData, count);
+        } finally {
+            KryoColumnarResultSetConsumer.GROUP_ROWS = groupRows;
+        }
+
+        List<Object[]> expected = readRows(rowBytes);
+        // batches that do not align with row groups
+        for (byte[] data : new byte[][]{rowBytes, columnarBytes}) {
+            List<Object[]> actual = readBatches(data, 7);
+            assertEquals(count, actual.size());
+            for (int i = 0; i < count; i++) {
+                assertArrayEquals("row " + i, expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        ByteArrayOutputStream columnarData = new ByteArrayOutputStream();
+        KryoColumnarResultSetConsumer columnarConsumer = new KryoColumnarResultSetConsumer(columnarData);
+        ResultSet rs = TestResultSet.create(COLUMNS, TYPES, new ArrayList<>());
+        columnarConsumer.onStart(new ResultSetInfo(rs.getMetaData()));
+        assertEquals(0, columnarConsumer.onFinish());
+        assertEquals(0, readRows(columnarData.toByteArray()).size());
+    }
+
+    @Test
+    public void testSpilledColumnData() throws Exception {
+        File directory = SpilledInputStream.DIRECTORY;
+        int groupBytes = KryoColumnarResultSetConsumer.GROUP_BYTES;
+        SpilledInputStream.DIRECTORY = folder.getRoot();
+        try {
+            byte[] value = new byte[100_000];
+            for (int i = 0; i < value.length; i++) value[i] = (byte) (i * 7);
+            SpillingOutput column = new SpillingOutput(1024, 10_000);
+            for (int i = 0; i < value.length; i += 1000) {
+                column.writeBytes(value, i, 1000);
+            }
+            // data over the limit are kept in a file
+            assertEquals(1, folder.getRoot().list().length);
+            assertTrue(column.getBuffer().length <= 16 * 1024);
+            assertEquals(value.length, column.total());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (Output out = new Output(bytes)) {
+                column.writeTo(out);
+            }
+            assertArrayEquals(value, bytes.toByteArray());
+            assertEquals(0, column.total());
+            assertEquals(0, folder.getRoot().list().length);
+
+            // row groups with large LOBs
+            int count = 10;
+            ByteArrayOutputStream rowData = new ByteArrayOutputStream();
+            byte[] rowBytes = write(new KryoResultSetConsumer(rowData), rowData, count);
+            KryoColumnarResultSetConsumer.GROUP_BYTES = 10_000;
+            ByteArrayOutputStream columnarData = new ByteArrayOutputStream();
+            byte[] columnarBytes = write(new KryoColumnarResultSetConsumer(columnarData), columnarData, count);
+            List<Object[]> expected = readRows(rowBytes);
+            List<Object[]> actual = readRows(columnarBytes);
+            for (int i = 0; i < count; i++) {
+                assertArrayEquals("row " + i, expected.get(i), actual.get(i));
+            }
+            assertEquals(0, folder.getRoot().list().length);
+        } finally {
+            SpilledInputStream.DIRECTORY = directory;
+            KryoColumnarResultSetConsumer.GROUP_BYTES = groupBytes;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.sranka.jdbcimage.kryo;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import io.github.sranka.jdbcimage.ChunkPool;
+import io.github.sranka.jdbcimage.ChunkedReader;
+import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowData;
+import org.junit.Test;
+
+import javax.sql.rowset.serial.SerialClob;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of associated class.
+ */
+public class KryoReaderSerializerTest {
+    private static String text(int length) {
+        StringBuilder retVal = new StringBuilder(length);
+        String chars = "ab\u017E\u20AC\uD83D\uDE00c\u0000";
+        while (retVal.length() < length) retVal.append(chars);
+        retVal.setLength(length);
+        return retVal.toString();
+    }
+
+    private static byte[] write(KryoReaderSerializer serializer, String value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Output out = new Output(bytes)) {
+            serializer.write(null, out, new StringReader(value));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String read(KryoReaderSerializer serializer, byte[] data) {
+        Object value = serializer.deserializeClobChunks(new Input(data), null);
+        assertTrue(value instanceof ChunkedReader);
+        return ((ChunkedReader) value).readAsString();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        List<String> values = Arrays.asList(
+                "",
+                "ascii only",
+                text(100),
+                text(ChunkPool.CHAR_CHUNK_SIZE),
+                // the surrogate pair is split between chunks
+                text(ChunkPool.CHAR_CHUNK_SIZE - 4) + "\uD83D\uDE00" + text(10),
+                text(ChunkPool.CHAR_CHUNK_SIZE * 3 + 17)
+        );
+        for (String value : values) {
+            assertEquals(value, read(KryoReaderSerializer.UTF8_INSTANCE, write(KryoReaderSerializer.UTF8_INSTANCE, value)));
+            assertEquals(value, read(KryoReaderSerializer.INSTANCE, write(KryoReaderSerializer.INSTANCE, value)));
+        }
+    }
+
+    @Test
+    public void testEncodedSize() {
+        String ascii = "x" + text(1000).replaceAll("[^a-c]", "y");
+        // a chunk header takes 4 bytes of the char count, 2 bytes of the varint length and 4 bytes of the tail marker
+        assertEquals(ascii.length() + 10, write(KryoReaderSerializer.UTF8_INSTANCE, ascii).length);
+        assertEquals(ascii.length() * 2 + 8, write(KryoReaderSerializer.INSTANCE, ascii).length);
+    }
+
+    @Test
+    public void testResultSetFormats() throws Exception {
+        String value = text(ChunkPool.CHAR_CHUNK_SIZE + 100);
+        for (String version : Arrays.asList(KryoResultSetConsumer.VERSION_1_2, KryoResultSetConsumer.VERSION_1_1,
+                KryoColumnarResultSetConsumer.VERSION_2_0)) {
+            List<Object[]> rows = Collections.singletonList(new Object[]{new SerialClob(value.toCharArray())});
+            ResultSet rs = TestResultSet.create(new String[]{"c"}, new int[]{Types.CLOB}, rows);
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            if (KryoColumnarResultSetConsumer.VERSION_2_0.equals(version)) {
+                KryoColumnarResultSetConsumer consumer = new KryoColumnarResultSetConsumer(data);
+                consumer.onStart(new ResultSetInfo(rs.getMetaData()));
+                while (rs.next()) consumer.accept(rs);
+                consumer.onFinish();
+            } else {
+                KryoResultSetConsumer consumer = new KryoResultSetConsumer(data, version);
+                consumer.onStart(new ResultSetInfo(rs.getMetaData()));
+                while (rs.next()) consumer.accept(rs);
+                consumer.onFinish();
+            }
+
+            KryoResultProducer producer = new KryoResultProducer(new ByteArrayInputStream(data.toByteArray()));
+            RowData row = producer.start();
+            assertTrue(version, producer.fillData(row));
+            assertEquals(version, value, ((ChunkedReader) row.values[0]).readAsString());
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package io.github.sranka.jdbcimage.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.FastOutput;
+import io.github.sranka.jdbcimage.ChunkedReader;
+import io.github.sranka.jdbcimage.LobStore;
+import io.github.sranka.jdbcimage.ResultSetInfo;
+import io.github.sranka.jdbcimage.RowData;
+import io.github.sranka.jdbcimage.SpilledInputStream;
+import io.github.sranka.jdbcimage.SpilledReader;
+import io.github.sranka.jdbcimage.codec.DeflateCodec;
+import org.junit.Test;
+
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of associated class.
+ */
+public class KryoResultSetConsumerTest {
+    private static final String[] COLUMNS = {"id", "i", "s", "d", "f", "b", "str", "dec", "bin"};
+    private static final int[] TYPES = {Types.BIGINT, Types.INTEGER, Types.SMALLINT, Types.DOUBLE, Types.REAL, Types.BIT,
+            Types.VARCHAR, Types.DECIMAL, Types.BINARY};
+    private static final Class<?>[] CLASSES = {Long.class, Integer.class, Short.class, Double.class, Float.class, Boolean.class,
+            String.class, BigDecimal.class, byte[].class};
+
+    private static List<Object[]> createRows() {
+        return Arrays.asList(
+                new Object[]{1L, 2, (short) 3, 4.5, 5.5f, true, "row", new BigDecimal("7.25"), new byte[]{8, 9}},
+                new Object[]{2L, null, null, null, null, null, null, null, null},
+                new Object[]{Long.MIN_VALUE, -1, Short.MAX_VALUE, -0.0, Float.NaN, false, "", BigDecimal.ZERO, new byte[0]}
+        );
+    }
+
+    private static byte[] write(List<Object[]> rows) throws Exception {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        KryoResultSetConsumer consumer = new KryoResultSetConsumer(data);
+        ResultSet rs = TestResultSet.create(COLUMNS, TYPES, rows);
+        consumer.onStart(new ResultSetInfo(rs.getMetaData()));
+        while (rs.next()) consumer.accept(rs);
+        assertEquals(rows.size(), consumer.onFinish());
+        return data.toByteArray();
+    }
+
+    @Test
+    public void testSameBytesAsKryoObjects() throws Exception {
+        List<Object[]> rows = createRows();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        Kryo kryo = KryoSetup.getKryo();
+        FastOutput out = new FastOutput(expected);
+        kryo.writeObject(out, KryoResultSetConsumer.VERSION_1_2);
+        out.writeVarInt(KryoResultSetConsumer.FEATURES, true);
+        kryo.writeObject(out, new ResultSetInfo(TestResultSet.create(COLUMNS, TYPES, rows).getMetaData()));
+        for (Object[] row : rows) {
+            out.writeBoolean(true);
+            for (int i = 0; i < row.length; i++) {
+                kryo.writeObjectOrNull(out, row[i], CLASSES[i]);
+            }
+        }
+        out.writeBoolean(false);
+        out.flush();
+
+        assertArrayEquals(expected.toByteArray(), write(rows));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<Object[]> rows = createRows();
+        KryoResultProducer producer = new KryoResultProducer(new ByteArrayInputStream(write(rows)));
+        RowData row = producer.start();
+        assertArrayEquals(COLUMNS, row.info.columns);
+        List<Object[]> actual = new ArrayList<>();
+        while (producer.fillData(row)) {
+            actual.add(row.values.clone());
+        }
+        assertFalse(producer.fillData(row));
+        assertEquals(rows.size(), actual.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertArrayEquals("row " + i, rows.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testTemporalValues() throws Exception {
+        String[] columns = {"dt", "tm", "ts", "local"};
+        int[] types = {Types.DATE, Types.TIME, Types.TIMESTAMP, Types.TIMESTAMP};
+        Timestamp exact = new Timestamp(-1_234_567_890_123L);
+        exact.setNanos(123_456_789);
+        LocalDateTime local = LocalDateTime.of(2021, 3, 28, 14, 30, 15, 5000);
+        List<Object[]> rows = Arrays.asList(
+                new Object[]{Date.valueOf("2020-02-29"), Time.valueOf("23:59:59"), exact, local},
+                new Object[]{null, null, null, null},
+                new Object[]{Date.valueOf("1900-01-01"), Time.valueOf("00:00:00"), new Timestamp(0), LocalDateTime.of(1970, 1, 1, 0, 0)}
+        );
+        Object[][] expected = {
+                {Date.valueOf("2020-02-29"), Time.valueOf("23:59:59"), exact, Timestamp.valueOf(local)},
+                {null, null, null, null},
+                {Date.valueOf("1900-01-01"), Time.valueOf("00:00:00"), new Timestamp(0), Timestamp.valueOf("1970-01-01 00:00:00")}
+        };
+        for (String version : Arrays.asList(KryoResultSetConsumer.VERSION_1_2, KryoResultSetConsumer.VERSION_1_1,
+                KryoColumnarResultSetConsumer.VERSION_2_0)) {
+            ResultSet rs = TestResultSet.create(columns, types, rows);
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            if (KryoColumnarResultSetConsumer.VERSION_2_0.equals(version)) {
+                KryoColumnarResultSetConsumer consumer = new KryoColumnarResultSetConsumer(data);
+                consumer.onStart(new ResultSetInfo(rs.getMetaData()));
+                while (rs.next()) consumer.accept(rs);
+                consumer.onFinish();
+            } else {
+                KryoResultSetConsumer consumer = new KryoResultSetConsumer(data, version);
+                consumer.onStart(new ResultSetInfo(rs.getMetaData()));
+                while (rs.next()) consumer.accept(rs);
+                consumer.onFinish();
+            }
+
+            KryoResultProducer producer = new KryoResultProducer(new ByteArrayInputStream(data.toByteArray()));
+            RowData row = producer.start();
+            for (Object[] values : expected) {
+                assertTrue(version, producer.fillData(row));
+                assertArrayEquals(version, values, row.values);
+            }
+            assertFalse(version, producer.fillData(row));
+        }
+    }
+
+    @Test
+    public void testLobStore() throws Exception {
+        long storeBytes = LobStore.STORE_BYTES;
+        LobStore.STORE_BYTES = 1000;
+        File file = File.createTempFile("table", LobStore.SUFFIX);
+        try {
+            byte[] large = new byte[5000];
+            Arrays.fill(large, (byte) 7);
+            String text = String.join("", Collections.nCopies(1000, "text"));
+            List<Object[]> rows = Arrays.asList(
+                    new Object[]{1L, new SerialBlob(large), new SerialClob(text.toCharArray())},
+                    new Object[]{2L, new SerialBlob(new byte[]{1, 2}), new SerialClob("small".toCharArray())},
+                    new Object[]{3L, new SerialBlob(large), null}
+            );
+            String[] columns = {"id", "b", "c"};
+            ResultSet rs = TestResultSet.create(columns, new int[]{Types.BIGINT, Types.BLOB, Types.CLOB}, rows);
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            try (LobStore store = LobStore.create(file, new DeflateCodec())) {
+                KryoResultSetConsumer consumer = new KryoResultSetConsumer(data);
+                consumer.setLobStore(store);
+                consumer.onStart(new ResultSetInfo(rs.getMetaData()));
+                while (rs.next()) consumer.accept(rs);
+                assertEquals(rows.size(), consumer.onFinish());
+            }
+            assertTrue(data.size() < 200);
+
+            try (LobStore store = LobStore.open(file, false)) {
+                KryoResultProducer producer = new KryoResultProducer(new ByteArrayInputStream(data.toByteArray()), store);
+                RowData row = producer.start();
+                assertTrue(producer.fillData(row));
+                assertTrue(row.values[1] instanceof SpilledInputStream);
+                assertArrayEquals(large, readBytes((InputStream) row.values[1]));
+                assertEquals(text, ((SpilledReader) row.values[2]).readAsString());
+                assertTrue(producer.fillData(row));
+                assertArrayEquals(new byte[]{1, 2}, (byte[]) row.values[1]);
+                assertEquals("small", ((ChunkedReader) row.values[2]).readAsString());
+                assertTrue(producer.fillData(row));
+                assertArrayEquals(large, readBytes((InputStream) row.values[1]));
+                assertNull(row.values[2]);
+                assertFalse(producer.fillData(row));
+            }
+        } finally {
+            LobStore.STORE_BYTES = storeBytes;
+            assertTrue(file.delete());
+        }
+    }
+
+    private static byte[] readBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream retVal = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0) retVal.write(b);
+        return retVal.toByteArray();
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.sranka.jdbcimage.kryo;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Creates an in-memory result set that returns the supplied rows.
+ */
+class TestResultSet {
+    static ResultSet create(String[] columns, int[] types, List<Object[]> rows) {
+        ResultSetMetaData meta = (ResultSetMetaData) Proxy.newProxyInstance(TestResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount":
+                            return columns.length;
+                        case "getColumnName":
+                            return columns[(Integer) args[0] - 1];
+                        case "getColumnType":
+                            return types[(Integer) args[0] - 1];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        int[] row = {-1};
+        boolean[] wasNull = {false};
+        return (ResultSet) Proxy.newProxyInstance(TestResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMetaData":
+                            return meta;
+                        case "next":
+                            return ++row[0] < rows.size();
+                        case "wasNull":
+                            return wasNull[0];
+                        case "close":
+                            return null;
+                        default:
+                            if (!method.getName().startsWith("get")) {
+                                throw new UnsupportedOperationException(method.getName());
+                            }
+                    }
+                    Object val = rows.get(row[0])[(Integer) args[0] - 1];
+                    wasNull[0] = val == null;
+                    Class<?> type = method.getReturnType();
+                    if (val == null) {
+                        if (type == long.class) return 0L;
+                        if (type == int.class) return 0;
+                        if (type == short.class) return (short) 0;
+                        if (type == double.class) return 0d;
+                        if (type == float.class) return 0f;
+                        if (type == boolean.class) return false;
+                        return null;
+                    }
+                    if (method.getName().equals("getBinaryStream")) {
+                        return new ByteArrayInputStream((byte[]) val);
+                    }
+                    if (method.getName().equals("getTimestamp") && val instanceof LocalDateTime) {
+                        // a local timestamp is interpreted in the time zone of the calendar
+                        Calendar calendar = args.length > 1 ? (Calendar) args[1] : Calendar.getInstance();
+                        Timestamp retVal = new Timestamp(((LocalDateTime) val).atZone(calendar.getTimeZone().toZoneId())
+                                .toInstant().toEpochMilli());
+                        retVal.setNanos(((LocalDateTime) val).getNano());
+                        return retVal;
+                    }
+                    if (method.getName().equals("getTimestamp")) {
+                        // an exact timestamp does not depend on calendar
+                        Timestamp retVal = new Timestamp(((Timestamp) val).getTime());
+                        retVal.setNanos(((Timestamp) val).getNanos());
+                        return retVal;
+                    }
+                    return val;
+                });
+    }
+}
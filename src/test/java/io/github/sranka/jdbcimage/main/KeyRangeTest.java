@@ -0,0 +1,65 @@
+package io.github.sranka.jdbcimage.main;
+
+import io.github.sranka.jdbcimage.main.SingleTableExport.KeyRange;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of associated class.
+ */
+public class KeyRangeTest {
+
+    @Test
+    public void testSplit() {
+        List<KeyRange> ranges = KeyRange.split("id", 1, 100, 3);
+        assertEquals(3, ranges.size());
+        assertEquals("(id IS NULL OR id<35)", ranges.get(0).getCondition());
+        assertEquals("id>=35 AND id<69", ranges.get(1).getCondition());
+        assertEquals("id>=69", ranges.get(2).getCondition());
+        assertEquals(2, ranges.get(2).getIndex());
+    }
+
+    @Test
+    public void testIntegralTypes() {
+        assertTrue(SingleTableExport.isIntegralType(Types.BIGINT, 19, 0));
+        assertTrue(SingleTableExport.isIntegralType(Types.NUMERIC, 18, 0));
+        assertFalse(SingleTableExport.isIntegralType(Types.NUMERIC, 38, 0));
+        assertFalse(SingleTableExport.isIntegralType(Types.DECIMAL, 10, 2));
+        // Oracle NUMBER
+        assertTrue(SingleTableExport.isIntegralType(Types.NUMERIC, 0, -127));
+        assertFalse(SingleTableExport.isIntegralType(Types.VARCHAR, 10, 0));
+    }
+
+    @Test
+    public void testSplitKeyRanges() {
+        List<KeyRange> ranges = SingleTableExport.splitKeyRanges("id", new BigDecimal("1"), new BigDecimal("99.5"), 3, 10);
+        assertEquals(3, ranges.size());
+        assertEquals("(id IS NULL OR id<35)", ranges.get(0).getCondition());
+        assertEquals("id>=69", ranges.get(2).getCondition());
+        // empty table, small span
+        assertNull(SingleTableExport.splitKeyRanges("id", null, null, 3, 10));
+        assertNull(SingleTableExport.splitKeyRanges("id", BigDecimal.ONE, BigDecimal.TEN, 3, 10));
+        // values beyond the long range, span overflow
+        assertNull(SingleTableExport.splitKeyRanges("id", BigDecimal.ONE, new BigDecimal("1e20"), 3, 10));
+        assertNull(SingleTableExport.splitKeyRanges("id", BigDecimal.valueOf(Long.MIN_VALUE),
+                BigDecimal.valueOf(Long.MAX_VALUE), 3, 10));
+        assertNull(SingleTableExport.splitKeyRanges("id", BigDecimal.ZERO, BigDecimal.valueOf(Long.MAX_VALUE), 3, 10));
+    }
+
+    @Test
+    public void testSegmentFileNames() {
+        assertEquals("users~2", MainToolBase.toSegmentFileName("users", 2));
+        assertEquals("users", MainToolBase.toTableFileName("users~2"));
+        assertEquals("users", MainToolBase.toTableFileName("users"));
+        assertEquals("users~", MainToolBase.toTableFileName("users~"));
+        assertEquals("users~lobs", MainToolBase.toTableFileName("users~lobs"));
+    }
+}
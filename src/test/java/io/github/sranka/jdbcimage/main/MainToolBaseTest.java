@@ -0,0 +1,46 @@
+package io.github.sranka.jdbcimage.main;
+
+import io.github.sranka.jdbcimage.main.MainToolBase.PlannedTask;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test of associated class.
+ */
+public class MainToolBaseTest {
+    @Test
+    public void testPlanTasks() throws Exception {
+        List<String> executed = new ArrayList<>();
+        List<PlannedTask> tasks = new ArrayList<>();
+        for (Object[] t : new Object[][]{{"a", -1L}, {"b", 10L}, {"c", 300L}, {"d", -1L}, {"e", 10L}, {"f", 0L}}) {
+            String name = (String) t[0];
+            tasks.add(new PlannedTask(name, (Long) t[1], () -> executed.add(name)));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        List<Callable<?>> plan = MainToolBase.planTasks(tasks, "rows", out);
+        for (Callable<?> task : plan) {
+            task.call();
+        }
+        // the largest first, tasks of the same or unknown cost keep their order
+        assertEquals(Arrays.asList("c", "b", "e", "f", "a", "d"), executed);
+        String nl = System.lineSeparator();
+        assertEquals("Task plan, largest first:" + nl
+                        + "  c - 300 rows" + nl
+                        + "  b - 10 rows" + nl
+                        + "  e - 10 rows" + nl
+                        + "  f - 0 rows" + nl
+                        + "  a - unknown" + nl
+                        + "  d - unknown" + nl,
+                new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+}